@@ -0,0 +1,129 @@
+package com.gatopeich.urlvinegar.data;
+
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.gatopeich.urlvinegar.util.UrlBatch;
+
+import java.util.List;
+
+/**
+ * Requirement 2.4: Batch Cleaning API
+ * Lets other apps clean many URLs with the user's transforms in a single call, without UI:
+ * <pre>
+ * Bundle extras = new Bundle();
+ * extras.putStringArray("urls", urls);
+ * Bundle result = resolver.call(Uri.parse("content://com.gatopeich.urlvinegar.clean"),
+ *     "cleanUrls", null, extras);
+ * String[] cleaned = result.getStringArray("urls");
+ * </pre>
+ * Callers need PERMISSION, which the user grants at runtime: the provider is exported, and
+ * every call runs the user's private rules and adds to their stats and param name table.
+ * Batches over UrlBatch.MAX_BATCH_BYTES are rejected, cleanUrls() splits them.
+ * There are no tables: query, insert, update and delete do nothing.
+ */
+public class CleaningProvider extends ContentProvider {
+    public static final String AUTHORITY = "com.gatopeich.urlvinegar.clean";
+    public static final String PERMISSION = "com.gatopeich.urlvinegar.permission.CLEAN_URLS";
+    public static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY);
+    public static final String METHOD_CLEAN_URLS = "cleanUrls";
+    public static final String EXTRA_URLS = "urls"; // String[] in the request and the result
+
+    /**
+     * Clean any number of URLs through the provider, one call per chunk that fits
+     * a Binder transaction. Results are in the same order as the URLs.
+     */
+    public static String[] cleanUrls(ContentResolver resolver, List<String> urls) {
+        String[] cleaned = new String[urls.size()];
+        int n = 0;
+        for (String[] chunk : UrlBatch.split(urls, UrlBatch.MAX_BATCH_BYTES)) {
+            Bundle extras = new Bundle();
+            extras.putStringArray(EXTRA_URLS, chunk);
+            Bundle result = resolver.call(CONTENT_URI, METHOD_CLEAN_URLS, null, extras);
+            if (result == null) {
+                throw new IllegalStateException("No result from " + CONTENT_URI);
+            }
+            String[] part = result.getStringArray(EXTRA_URLS);
+            System.arraycopy(part, 0, cleaned, n, part.length);
+            n += part.length;
+        }
+        return cleaned;
+    }
+
+    @Override
+    public boolean onCreate() {
+        // Runs on every app start: rules are loaded on the first call instead
+        return true;
+    }
+
+    /**
+     * Runs on a Binder thread; concurrent calls share the compiled rule snapshot.
+     * The manifest permission only covers query and the like, so call() checks it itself.
+     */
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        getContext().enforceCallingOrSelfPermission(PERMISSION, "Cleaning URLs needs " + PERMISSION);
+        if (!METHOD_CLEAN_URLS.equals(method)) {
+            return super.call(method, arg, extras);
+        }
+        String[] urls = extras != null ? extras.getStringArray(EXTRA_URLS) : null;
+        if (urls == null) {
+            throw new IllegalArgumentException("Missing string array extra: " + EXTRA_URLS);
+        }
+        checkBatchSize(urls);
+
+        String[] cleaned = UrlBatch.clean(urls,
+            ConfigRepository.getInstance(getContext()).getCompiledRules());
+        // Transforms may lengthen URLs: the reply must fit as well
+        checkBatchSize(cleaned);
+
+        Bundle result = new Bundle();
+        result.putStringArray(EXTRA_URLS, cleaned);
+        return result;
+    }
+
+    private static void checkBatchSize(String[] urls) {
+        if (urls.length > 1 && UrlBatch.parcelSize(urls) > UrlBatch.MAX_BATCH_BYTES) {
+            throw new IllegalArgumentException("Batch over " + UrlBatch.MAX_BATCH_BYTES
+                + " bytes, send smaller chunks");
+        }
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
+            @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection,
+            @Nullable String[] selectionArgs) {
+        return 0;
+    }
+}
@@ -2,13 +2,32 @@ package com.gatopeich.urlvinegar.data;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Trace;
+
+import com.gatopeich.urlvinegar.util.CompiledRules;
+import com.gatopeich.urlvinegar.util.HistoryLog;
+import com.gatopeich.urlvinegar.util.LiveRules;
+import com.gatopeich.urlvinegar.util.RuleChange;
+import com.gatopeich.urlvinegar.util.ShareLatency;
+import com.gatopeich.urlvinegar.util.Spans;
+import com.gatopeich.urlvinegar.util.TransformStats;
+import com.gatopeich.urlvinegar.util.UrlProcessor;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Repository for persisting and loading configuration.
@@ -17,12 +36,53 @@ import java.util.List;
 public class ConfigRepository {
     private static final String PREFS_NAME = "url_vinegar_config";
     private static final String KEY_TRANSFORMS = "transforms";
+    private static final String KEY_TRANSFORM_STATS = "transform_stats";
+    private static final String KEY_RESULT_CACHE = "result_cache_enabled";
+    private static final String KEY_INSTANT_SHARE = "instant_share_enabled";
+    private static final String KEY_SHARE_LATENCY = "share_latency";
+    private static final String LEGACY_CORPUS_FILE = "url_corpus.txt";
+    private static final String KEY_HISTORY_LOG = "history_log_enabled";
+    private static final String HISTORY_FILE = "history.log";
 
     private final SharedPreferences prefs;
     private static ConfigRepository instance;
+    private volatile List<Transform> rulesSnapshot; // Parsed once, then replaced on each save
+    private final List<RuleChange.Listener> ruleListeners = new CopyOnWriteArrayList<>();
+    private LiveRules liveRules; // Compiled on first use, then kept up to date by the change feed
+    private final File historyFile;
+    private volatile HistoryLog historyLog; // Opened on historyExecutor while enabled
+    private final ExecutorService historyExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "HistoryLog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        // Requirement 7.5: span sections show in systrace and Perfetto
+        Spans.setTracer(new Spans.Tracer() {
+            @Override
+            public void beginSection(String name) {
+                Trace.beginSection(name);
+            }
+
+            @Override
+            public void endSection() {
+                Trace.endSection();
+            }
+        });
+    }
 
     private ConfigRepository(Context context) {
         prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        File filesDir = context.getApplicationContext().getFilesDir();
+        historyFile = new File(filesDir, HISTORY_FILE);
+        loadTransformStats();
+        UrlProcessor.getResultCache().setEnabled(isResultCacheEnabled());
+        historyExecutor.execute(() -> {
+            // URLs kept without asking by earlier versions; past URLs now come from the history log only
+            new File(filesDir, LEGACY_CORPUS_FILE).delete();
+            openHistoryLog();
+        });
     }
 
     public static synchronized ConfigRepository getInstance(Context context) {
@@ -37,19 +97,41 @@ public class ConfigRepository {
      * Returns default transforms if none are stored.
      */
     public List<Transform> loadTransforms() {
-        String json = prefs.getString(KEY_TRANSFORMS, null);
-        if (json == null) {
-            return getDefaultTransforms();
-        }
+        long span = Spans.begin(Spans.LOAD_TRANSFORMS);
         try {
-            return parseTransforms(json);
-        } catch (JSONException e) {
-            return getDefaultTransforms();
+            String json = prefs.getString(KEY_TRANSFORMS, null);
+            if (json == null) {
+                return DefaultTransforms.create();
+            }
+            try {
+                return parseTransforms(json);
+            } catch (JSONException e) {
+                return DefaultTransforms.create();
+            }
+        } finally {
+            Spans.end(Spans.LOAD_TRANSFORMS, span);
+        }
+    }
+
+    /**
+     * Read-only transforms for background cleaning, parsed once and shared until the
+     * next save. Callers must not modify the list or its transforms: editors use
+     * loadTransforms(), which returns a private copy.
+     */
+    public List<Transform> getRulesSnapshot() {
+        List<Transform> snapshot = rulesSnapshot;
+        if (snapshot == null) {
+            snapshot = Collections.unmodifiableList(loadTransforms());
+            rulesSnapshot = snapshot;
         }
+        return snapshot;
     }
 
     /**
      * Save transforms to SharedPreferences.
+     * Requirement 5.7: listeners get the edit from the previous save, so compiled rules
+     * are updated without a full reload. Cached results are keyed by rule-set hash, so
+     * they need no clearing: those of the old rules just stop matching.
      */
     public void saveTransforms(List<Transform> transforms) {
         try {
@@ -58,88 +140,219 @@ public class ConfigRepository {
         } catch (JSONException e) {
             // Ignore save errors
         }
+        List<Transform> saved = new ArrayList<>(transforms.size());
+        for (Transform t : transforms) {
+            saved.add(t.copy());
+        }
+        saved = Collections.unmodifiableList(saved);
+        // Locked so that getCompiledRules() starts from one save or the next, never between
+        synchronized (this) {
+            RuleChange change = RuleChange.between(getRulesSnapshot(), saved);
+            rulesSnapshot = saved;
+            for (RuleChange.Listener listener : ruleListeners) {
+                listener.onRulesChanged(change, saved);
+            }
+        }
     }
 
     /**
-     * Requirement 5.3: Default Configuration
-     * Default transforms for common tracking parameters.
+     * Requirement 5.7: the change feed, one call per saveTransforms().
      */
-    private List<Transform> getDefaultTransforms() {
-        List<Transform> transforms = new ArrayList<>();
-        
-        // YouTube URL shortener - convert to youtu.be format (preserves timestamp with &t=)
-        transforms.add(new Transform(
-            "Shorten YouTube URL",
-            "https?://(?:www\\.)?youtube\\.com/watch\\?v=([a-zA-Z0-9_-]+)(?:&t=([0-9]+)s?)?.*",
-            "https://youtu.be/$1?t=$2",
-            true
-        ));
-        
-        // Clean up youtu.be URLs with empty timestamp
-        transforms.add(new Transform(
-            "Clean YouTube timestamp",
-            "(https://youtu\\.be/[a-zA-Z0-9_-]+)\\?t=$",
-            "$1",
-            true
-        ));
-        
-        // UTM parameters removal
-        transforms.add(new Transform(
-            "Remove UTM parameters",
-            "[?&](utm_[a-z_]+)=[^&]*",
-            "",
-            true
-        ));
-        
-        // Facebook click ID
-        transforms.add(new Transform(
-            "Remove Facebook click ID",
-            "[?&]fbclid=[^&]*",
-            "",
-            true
-        ));
-        
-        // Google click ID
-        transforms.add(new Transform(
-            "Remove Google click ID",
-            "[?&]gclid=[^&]*",
-            "",
-            true
-        ));
-        
-        // Amazon referral tag
-        transforms.add(new Transform(
-            "Remove Amazon referral tag",
-            "[?&]tag=[^&]*",
-            "",
-            true
-        ));
-        
-        // Generic affiliate/tracking parameters
-        transforms.add(new Transform(
-            "Remove affiliate tracking",
-            "[?&](ref|aff|affiliate|campaign|source|medium)=[^&]*",
-            "",
-            true
-        ));
-        
-        // Clean up double ? or & characters after removal
-        transforms.add(new Transform(
-            "Clean up query string",
-            "(\\?)&+|&+(?=&)|&+$",
-            "$1",
-            true
-        ));
-        
-        // Remove trailing ? if no parameters left
-        transforms.add(new Transform(
-            "Remove empty query string",
-            "\\?$",
-            "",
-            true
-        ));
-        
-        return transforms;
+    public void addRuleChangeListener(RuleChange.Listener listener) {
+        ruleListeners.add(listener);
+    }
+
+    public void removeRuleChangeListener(RuleChange.Listener listener) {
+        ruleListeners.remove(listener);
+    }
+
+    /**
+     * Compiled snapshot of the saved transforms for background cleaning, swapped whole
+     * on each save. Hold on to it for a consistent view of the rules.
+     */
+    public CompiledRules getCompiledRules() {
+        LiveRules rules;
+        synchronized (this) {
+            if (liveRules == null) {
+                liveRules = new LiveRules(getRulesSnapshot());
+                addRuleChangeListener(liveRules);
+            }
+            rules = liveRules;
+        }
+        return rules.get();
+    }
+
+    /**
+     * Requirement 5.5: past URLs to re-run edited rules against, from the history log.
+     * Empty while the log is off, so no URL is kept without consent.
+     * Reads the whole log: call off the UI thread.
+     */
+    public List<String> getPastUrls() {
+        HistoryLog log;
+        try {
+            // Queued behind any pending open
+            log = historyExecutor.submit(() -> historyLog).get();
+        } catch (ExecutionException e) {
+            log = null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log = null;
+        }
+        return log != null ? log.inputUrls() : Collections.<String>emptyList();
+    }
+
+    /**
+     * Requirement 3.9: keep a log of processed URLs. Off by default.
+     */
+    public boolean isHistoryLogEnabled() {
+        return prefs.getBoolean(KEY_HISTORY_LOG, false);
+    }
+
+    /**
+     * Turning the history log on opens it in the background; turning it off also deletes it.
+     */
+    public void setHistoryLogEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_HISTORY_LOG, enabled).apply();
+        historyExecutor.execute(enabled ? this::openHistoryLog : this::deleteHistoryLog);
+    }
+
+    /**
+     * Requirement 3.9: record a processed input, if the log is on. Once the log is open
+     * this is a copy into its mapping, cheap enough for the UI thread; until then the
+     * record waits on the background thread that opens it.
+     */
+    public void logHistory(String input, String output, List<String> fired, long nanos) {
+        HistoryLog log = historyLog;
+        if (log != null) {
+            log.append(input, output, fired, nanos);
+        } else if (isHistoryLogEnabled()) {
+            historyExecutor.execute(() -> {
+                HistoryLog opened = historyLog;
+                if (opened != null) {
+                    opened.append(input, output, fired, nanos);
+                }
+            });
+        }
+    }
+
+    /**
+     * Records in the history log, or -1 while it is off or still opening. Never blocks,
+     * so the options menu can show it.
+     */
+    public long getHistoryLogCount() {
+        HistoryLog log = historyLog;
+        return log != null ? log.getCount() : -1;
+    }
+
+    private void openHistoryLog() {
+        if (historyLog != null || !isHistoryLogEnabled()) {
+            return;
+        }
+        try {
+            historyLog = HistoryLog.open(historyFile, HistoryLog.DEFAULT_CAPACITY);
+        } catch (IOException e) {
+            // Stays closed: nothing is logged
+        }
+    }
+
+    private void deleteHistoryLog() {
+        HistoryLog log = historyLog;
+        historyLog = null;
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                // Deleted anyway
+            }
+        }
+        historyFile.delete();
+    }
+
+    public boolean isResultCacheEnabled() {
+        return prefs.getBoolean(KEY_RESULT_CACHE, true);
+    }
+
+    /**
+     * Turn the processing result cache on or off, persisted across restarts.
+     */
+    public void setResultCacheEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_RESULT_CACHE, enabled).apply();
+        UrlProcessor.getResultCache().setEnabled(enabled);
+    }
+
+    /**
+     * Requirement 2.3: share without the dialog when no interaction is needed. Off by default.
+     */
+    public boolean isInstantShareEnabled() {
+        return prefs.getBoolean(KEY_INSTANT_SHARE, false);
+    }
+
+    public void setInstantShareEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_INSTANT_SHARE, enabled).apply();
+    }
+
+    /**
+     * Persist the per-transform statistics collected by UrlProcessor, and share latencies.
+     * Stored as {name: [evaluations, matches, totalNanos, maxNanos, cachedEvaluations]}.
+     */
+    public void saveTransformStats() {
+        try {
+            JSONObject obj = new JSONObject();
+            for (Map.Entry<String, TransformStats.Entry> e : TransformStats.snapshot().entrySet()) {
+                obj.put(e.getKey(), toJson(e.getValue()));
+            }
+            JSONObject latency = new JSONObject();
+            latency.put("instant", toJson(ShareLatency.INSTANT));
+            latency.put("dialog", toJson(ShareLatency.DIALOG));
+            prefs.edit()
+                .putString(KEY_TRANSFORM_STATS, obj.toString())
+                .putString(KEY_SHARE_LATENCY, latency.toString())
+                .apply();
+        } catch (JSONException e) {
+            // Ignore save errors
+        }
+    }
+
+    private static JSONArray toJson(TransformStats.Entry stats) {
+        JSONArray counters = new JSONArray();
+        counters.put(stats.getEvaluations());
+        counters.put(stats.getMatches());
+        counters.put(stats.getTotalNanos());
+        counters.put(stats.getMaxNanos());
+        counters.put(stats.getCachedEvaluations());
+        return counters;
+    }
+
+    private static void restore(TransformStats.Entry stats, JSONArray counters) throws JSONException {
+        // Stats saved before cached runs were counted have four counters
+        stats.restore(counters.getLong(0), counters.getLong(1), counters.getLong(2), counters.getLong(3),
+            counters.optLong(4, 0));
+    }
+
+    /**
+     * Restore persisted statistics into TransformStats, once per process.
+     */
+    private void loadTransformStats() {
+        try {
+            String json = prefs.getString(KEY_TRANSFORM_STATS, null);
+            if (json != null) {
+                JSONObject obj = new JSONObject(json);
+                Iterator<String> names = obj.keys();
+                while (names.hasNext()) {
+                    String name = names.next();
+                    restore(TransformStats.get(name), obj.getJSONArray(name));
+                }
+            }
+            json = prefs.getString(KEY_SHARE_LATENCY, null);
+            if (json != null) {
+                JSONObject latency = new JSONObject(json);
+                restore(ShareLatency.INSTANT, latency.getJSONArray("instant"));
+                restore(ShareLatency.DIALOG, latency.getJSONArray("dialog"));
+            }
+        } catch (JSONException e) {
+            // Corrupt stats are not worth keeping
+            prefs.edit().remove(KEY_TRANSFORM_STATS).remove(KEY_SHARE_LATENCY).apply();
+        }
     }
 
     private String serializeTransforms(List<Transform> transforms) throws JSONException {
@@ -0,0 +1,96 @@
+package com.gatopeich.urlvinegar.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transforms a fresh install starts with, kept apart from ConfigRepository so that
+ * code without an Android Context, and the unit tests, use the very same list.
+ */
+public final class DefaultTransforms {
+
+    private DefaultTransforms() {
+    }
+
+    /**
+     * Requirement 5.3: Default Configuration
+     * Default transforms for common tracking parameters.
+     */
+    public static List<Transform> create() {
+        List<Transform> transforms = new ArrayList<>();
+        
+        // YouTube URL shortener - convert to youtu.be format (preserves timestamp with &t=)
+        transforms.add(new Transform(
+            "Shorten YouTube URL",
+            "https?://(?:www\\.)?youtube\\.com/watch\\?v=([a-zA-Z0-9_-]+)(?:&t=([0-9]+)s?)?.*",
+            "https://youtu.be/$1?t=$2",
+            true
+        ));
+        
+        // Clean up youtu.be URLs with empty timestamp
+        transforms.add(new Transform(
+            "Clean YouTube timestamp",
+            "(https://youtu\\.be/[a-zA-Z0-9_-]+)\\?t=$",
+            "$1",
+            true
+        ));
+        
+        // UTM parameters removal
+        transforms.add(new Transform(
+            "Remove UTM parameters",
+            "[?&](utm_[a-z_]+)=[^&]*",
+            "",
+            true
+        ));
+        
+        // Facebook click ID
+        transforms.add(new Transform(
+            "Remove Facebook click ID",
+            "[?&]fbclid=[^&]*",
+            "",
+            true
+        ));
+        
+        // Google click ID
+        transforms.add(new Transform(
+            "Remove Google click ID",
+            "[?&]gclid=[^&]*",
+            "",
+            true
+        ));
+        
+        // Amazon referral tag
+        transforms.add(new Transform(
+            "Remove Amazon referral tag",
+            "[?&]tag=[^&]*",
+            "",
+            true
+        ));
+        
+        // Generic affiliate/tracking parameters
+        transforms.add(new Transform(
+            "Remove affiliate tracking",
+            "[?&](ref|aff|affiliate|campaign|source|medium)=[^&]*",
+            "",
+            true
+        ));
+        
+        // Clean up double ? or & characters after removal
+        transforms.add(new Transform(
+            "Clean up query string",
+            "(\\?)&+|&+(?=&)|&+$",
+            "$1",
+            true
+        ));
+        
+        // Remove trailing ? if no parameters left
+        transforms.add(new Transform(
+            "Remove empty query string",
+            "\\?$",
+            "",
+            true
+        ));
+        
+        return transforms;
+    }
+}
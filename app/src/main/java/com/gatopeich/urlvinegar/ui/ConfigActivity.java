@@ -1,7 +1,14 @@
 package com.gatopeich.urlvinegar.ui;
 
+import android.content.Intent;
+import android.graphics.Typeface;
+import android.net.Uri;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
@@ -9,12 +16,15 @@ import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.ImageView;
+import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.FileProvider;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -22,10 +32,30 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.gatopeich.urlvinegar.R;
 import com.gatopeich.urlvinegar.data.ConfigRepository;
 import com.gatopeich.urlvinegar.data.Transform;
+import com.gatopeich.urlvinegar.util.LatencyHistogram;
+import com.gatopeich.urlvinegar.util.ResultCache;
+import com.gatopeich.urlvinegar.util.RuleAnalyzer;
+import com.gatopeich.urlvinegar.util.RuleRegression;
+import com.gatopeich.urlvinegar.util.ShareLatency;
+import com.gatopeich.urlvinegar.util.Spans;
+import com.gatopeich.urlvinegar.util.TransformStats;
 import com.gatopeich.urlvinegar.util.UrlProcessor;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Configuration Activity - Manage transforms.
@@ -50,11 +80,191 @@ public class ConfigActivity extends AppCompatActivity {
         setupViews();
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // Refresh statistics recorded while processing URLs; only rows whose stats changed rebind
+        transformAdapter.refresh();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_config, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        MenuItem cacheItem = menu.findItem(R.id.cacheResultsItem);
+        ResultCache cache = UrlProcessor.getResultCache();
+        cacheItem.setChecked(configRepository.isResultCacheEnabled());
+        cacheItem.setTitle(getString(R.string.cache_results_hit_rate,
+            Math.round(cache.getHitRate() * 100), cache.getHits() + cache.getMisses()));
+
+        MenuItem instantItem = menu.findItem(R.id.instantShareItem);
+        instantItem.setChecked(configRepository.isInstantShareEnabled());
+        if (ShareLatency.INSTANT.getEvaluations() > 0 || ShareLatency.DIALOG.getEvaluations() > 0) {
+            instantItem.setTitle(getString(R.string.instant_share_latency,
+                TransformStats.formatNanos(ShareLatency.INSTANT.getMeanNanos()),
+                TransformStats.formatNanos(ShareLatency.DIALOG.getMeanNanos())));
+        }
+
+        MenuItem historyItem = menu.findItem(R.id.historyLogItem);
+        long historyCount = configRepository.getHistoryLogCount();
+        historyItem.setChecked(configRepository.isHistoryLogEnabled());
+        historyItem.setTitle(historyCount >= 0
+            ? getString(R.string.history_log_count, historyCount)
+            : getString(R.string.history_log));
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.cacheResultsItem) {
+            configRepository.setResultCacheEnabled(!item.isChecked());
+            invalidateOptionsMenu();
+            return true;
+        }
+        if (item.getItemId() == R.id.instantShareItem) {
+            InstantShareActivity.setEnabled(this, !item.isChecked());
+            invalidateOptionsMenu();
+            return true;
+        }
+        if (item.getItemId() == R.id.historyLogItem) {
+            configRepository.setHistoryLogEnabled(!item.isChecked());
+            invalidateOptionsMenu();
+            return true;
+        }
+        if (item.getItemId() == R.id.diagnosticsItem) {
+            showDiagnostics();
+            return true;
+        }
+        if (item.getItemId() == R.id.analyzeRulesItem) {
+            analyzeRules();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Requirement 7.5: latency percentiles of every span measured in this process.
+     */
+    private void showDiagnostics() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram> e : Spans.snapshot().entrySet()) {
+            LatencyHistogram h = e.getValue();
+            if (h.getCount() > 0) {
+                sb.append(getString(R.string.diagnostics_span, e.getKey(), h.getCount(),
+                    TransformStats.formatNanos(h.getPercentileNanos(0.5)),
+                    TransformStats.formatNanos(h.getPercentileNanos(0.9)),
+                    TransformStats.formatNanos(h.getPercentileNanos(0.99)),
+                    TransformStats.formatNanos(h.getMaxNanos())));
+            }
+        }
+        TextView text = new TextView(this);
+        text.setTypeface(Typeface.MONOSPACE);
+        text.setTextSize(12);
+        int padding = Math.round(16 * getResources().getDisplayMetrics().density);
+        text.setPadding(padding, padding, padding, 0);
+        text.setText(sb.length() > 0 ? sb : getString(R.string.diagnostics_empty));
+        ScrollView scroll = new ScrollView(this);
+        scroll.addView(text);
+
+        new AlertDialog.Builder(this)
+            .setTitle(R.string.diagnostics)
+            .setView(scroll)
+            .setPositiveButton(R.string.export_trace, (dialog, which) -> exportTrace())
+            .setNeutralButton(R.string.reset, (dialog, which) -> Spans.clear())
+            .setNegativeButton(R.string.close, null)
+            .show();
+    }
+
+    /**
+     * Share the latest spans as a Chrome-trace JSON file, for chrome://tracing or Perfetto.
+     */
+    private void exportTrace() {
+        File dir = new File(getCacheDir(), "diagnostics");
+        dir.mkdirs();
+        File file = new File(dir, "trace-" + System.currentTimeMillis() + ".json");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(Spans.chromeTraceJson().getBytes(Charset.forName("UTF-8")));
+        } catch (IOException e) {
+            Toast.makeText(this, R.string.export_failed, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        Uri uri = FileProvider.getUriForFile(this, getPackageName() + ".files", file);
+        Intent shareIntent = new Intent(Intent.ACTION_SEND);
+        shareIntent.setType("application/json");
+        shareIntent.putExtra(Intent.EXTRA_STREAM, uri);
+        shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        startActivity(Intent.createChooser(shareIntent, getString(R.string.share_via)));
+    }
+
+    /**
+     * Requirement 5.6: analyze the rules over past URLs in the background, then offer to
+     * prune the flagged transforms. Only findings that hold for every URL start selected.
+     */
+    private void analyzeRules() {
+        Toast.makeText(this, R.string.analyzing_rules, Toast.LENGTH_SHORT).show();
+        List<Transform> analyzed = new ArrayList<>(transforms);
+        List<Transform> copies = new ArrayList<>();
+        for (Transform t : analyzed) {
+            copies.add(t.copy());
+        }
+        new Thread(() -> {
+            RuleAnalyzer.Report report = RuleAnalyzer.analyze(copies, configRepository.getPastUrls());
+            runOnUiThread(() -> {
+                if (!isFinishing()) {
+                    showAnalysis(report, analyzed);
+                }
+            });
+        }, "RuleAnalyzer").start();
+    }
+
+    private void showAnalysis(RuleAnalyzer.Report report, List<Transform> analyzed) {
+        if (report.findings.isEmpty()) {
+            Toast.makeText(this, getString(R.string.analysis_none, report.corpusSize), Toast.LENGTH_LONG).show();
+            return;
+        }
+        String[] labels = new String[report.findings.size()];
+        boolean[] selected = new boolean[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            RuleAnalyzer.Finding finding = report.findings.get(i);
+            switch (finding.kind) {
+                case DUPLICATE:
+                    labels[i] = getString(R.string.finding_duplicate, finding.name, finding.coveringName);
+                    break;
+                case SHADOWED:
+                    labels[i] = getString(R.string.finding_shadowed, finding.name, finding.coveringName);
+                    break;
+                default:
+                    labels[i] = getString(R.string.finding_never_fires, finding.name, report.corpusSize);
+            }
+            selected[i] = finding.isSafeToPrune();
+        }
+        new AlertDialog.Builder(this)
+            .setTitle(getString(R.string.analysis_title, TransformStats.formatNanos(report.getSavedNanosPerUrl())))
+            .setMultiChoiceItems(labels, selected, (dialog, which, checked) -> selected[which] = checked)
+            .setPositiveButton(R.string.prune, (dialog, which) -> {
+                for (int i = 0; i < selected.length; i++) {
+                    if (selected[i]) {
+                        // By identity: the list may have changed since the analysis
+                        transforms.remove(analyzed.get(report.findings.get(i).index));
+                    }
+                }
+                configRepository.saveTransforms(transforms);
+                transformAdapter.refresh();
+            })
+            .setNegativeButton(R.string.cancel, null)
+            .show();
+    }
+
     private void setupViews() {
         transformsRecyclerView = findViewById(R.id.transformsRecyclerView);
 
         // Setup transforms RecyclerView with drag-and-drop
         transformAdapter = new TransformConfigAdapter();
+        transformAdapter.setHasStableIds(true);
         transformsRecyclerView.setLayoutManager(new LinearLayoutManager(this));
         transformsRecyclerView.setAdapter(transformAdapter);
 
@@ -68,7 +278,7 @@ public class ConfigActivity extends AppCompatActivity {
                 int from = viewHolder.getAdapterPosition();
                 int to = target.getAdapterPosition();
                 Collections.swap(transforms, from, to);
-                transformAdapter.notifyItemMoved(from, to);
+                transformAdapter.move(from, to);
                 configRepository.saveTransforms(transforms);
                 return true;
             }
@@ -114,7 +324,7 @@ public class ConfigActivity extends AppCompatActivity {
 
                 transforms.add(new Transform(name, pattern, replacement, true));
                 configRepository.saveTransforms(transforms);
-                transformAdapter.notifyItemInserted(transforms.size() - 1);
+                transformAdapter.refresh();
             })
             .setNegativeButton(R.string.cancel, null)
             .show();
@@ -123,9 +333,8 @@ public class ConfigActivity extends AppCompatActivity {
     /**
      * Requirement 5.2: Edit existing transforms
      */
-    private void showEditTransformDialog(int position) {
-        Transform transform = transforms.get(position);
-        
+    private void showEditTransformDialog(Transform transform) {
+
         View dialogView = LayoutInflater.from(this).inflate(R.layout.dialog_transform, null);
         EditText nameEdit = dialogView.findViewById(R.id.transformName);
         EditText patternEdit = dialogView.findViewById(R.id.transformPattern);
@@ -135,7 +344,7 @@ public class ConfigActivity extends AppCompatActivity {
         patternEdit.setText(transform.getPattern());
         replacementEdit.setText(transform.getReplacement());
 
-        new AlertDialog.Builder(this)
+        AlertDialog editDialog = new AlertDialog.Builder(this)
             .setTitle(R.string.edit_transform)
             .setView(dialogView)
             .setPositiveButton(R.string.save, (dialog, which) -> {
@@ -157,38 +366,234 @@ public class ConfigActivity extends AppCompatActivity {
                 transform.setPattern(pattern);
                 transform.setReplacement(replacement);
                 configRepository.saveTransforms(transforms);
-                transformAdapter.notifyItemChanged(position);
+                transformAdapter.refresh();
             })
             .setNegativeButton(R.string.cancel, null)
-            .show();
+            .create();
+        watchRegression(editDialog, dialogView.findViewById(R.id.regressionResult),
+            transform, patternEdit, replacementEdit);
+        editDialog.show();
+    }
+
+    // Regression runs: comparisons in parallel on the pool, each run coordinated by its own thread
+    private static final int REGRESSION_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final ExecutorService REGRESSION_POOL = Executors.newFixedThreadPool(REGRESSION_THREADS);
+    private static final long REGRESSION_DELAY_MILLIS = 300;
+
+    /**
+     * Requirement 5.5: whenever the pattern or replacement of an edited transform changes,
+     * re-run past URLs through the current and the edited rules and show what would change.
+     * A newer edit or closing the dialog cancels the run in progress.
+     */
+    private void watchRegression(AlertDialog dialog, TextView resultView, Transform transform,
+            EditText patternEdit, EditText replacementEdit) {
+        AtomicInteger generation = new AtomicInteger();
+        AtomicReference<RuleRegression> running = new AtomicReference<>();
+        Runnable start = () -> {
+            int run = generation.incrementAndGet();
+            RuleRegression previous = running.getAndSet(null);
+            if (previous != null) {
+                previous.cancel();
+            }
+            String pattern = patternEdit.getText().toString();
+            resultView.setVisibility(View.VISIBLE);
+            if (!UrlProcessor.isValidPattern(pattern)) {
+                resultView.setText(R.string.invalid_regex);
+                return;
+            }
+            // Copies, so later saves cannot change the rules under the run
+            List<Transform> before = new ArrayList<>();
+            List<Transform> after = new ArrayList<>();
+            for (Transform t : transforms) {
+                before.add(t.copy());
+                after.add(t != transform ? t.copy()
+                    : new Transform(t.getName(), pattern, replacementEdit.getText().toString(), t.isEnabled()));
+            }
+            resultView.setText(R.string.regression_running);
+            new Thread(() -> {
+                List<String> corpus = configRepository.getPastUrls();
+                RuleRegression regression = new RuleRegression(before, after, corpus);
+                running.set(regression);
+                if (generation.get() != run) {
+                    regression.cancel();
+                    return;
+                }
+                RuleRegression.Report report = regression.run(REGRESSION_POOL, REGRESSION_THREADS);
+                runOnUiThread(() -> {
+                    if (generation.get() == run && !report.cancelled) {
+                        resultView.setText(formatRegression(report));
+                    }
+                });
+            }, "RuleRegression").start();
+        };
+        TextWatcher watcher = new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                resultView.removeCallbacks(start);
+                resultView.postDelayed(start, REGRESSION_DELAY_MILLIS);
+            }
+        };
+        patternEdit.addTextChangedListener(watcher);
+        replacementEdit.addTextChangedListener(watcher);
+        dialog.setOnDismissListener(d -> {
+            resultView.removeCallbacks(start);
+            generation.incrementAndGet();
+            RuleRegression last = running.getAndSet(null);
+            if (last != null) {
+                last.cancel();
+            }
+        });
+    }
+
+    private String formatRegression(RuleRegression.Report report) {
+        if (report.total == 0) {
+            return getString(R.string.regression_empty);
+        }
+        StringBuilder sb = new StringBuilder(getString(R.string.regression_result,
+            report.changed, report.total, TransformStats.formatNanos(report.elapsedNanos)));
+        for (RuleRegression.Change change : report.samples) {
+            sb.append(getString(R.string.regression_sample, change.before, change.after));
+        }
+        return sb.toString();
     }
 
     /**
      * Requirement 5.2: Delete existing transforms
      */
-    private void showDeleteTransformDialog(int position) {
+    private void showDeleteTransformDialog(Transform transform) {
         new AlertDialog.Builder(this)
             .setTitle(R.string.delete_transform)
             .setMessage(R.string.delete_transform_confirm)
             .setPositiveButton(R.string.delete, (dialog, which) -> {
-                transforms.remove(position);
+                transforms.remove(transform);
                 configRepository.saveTransforms(transforms);
-                transformAdapter.notifyItemRemoved(position);
+                transformAdapter.refresh();
             })
             .setNegativeButton(R.string.cancel, null)
             .show();
     }
 
+    // Row changes that need only part of the row rebound
+    private static final int CHANGED_ENABLED = 1;
+    private static final int CHANGED_STATS = 2;
+
+    // Diffs of the transform list, computed off the main thread
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /**
+     * Immutable snapshot of a transform row, so rows can be diffed off the main thread
+     * while the transforms themselves are edited in place.
+     */
+    private static final class Row {
+        final Transform transform;
+        final String name;
+        final String pattern;
+        final boolean enabled;
+        final long evaluations;
+        final long matches;
+        final long meanNanos;
+        final long maxNanos;
+
+        Row(Transform transform) {
+            this.transform = transform;
+            name = transform.getName();
+            pattern = transform.getPattern();
+            enabled = transform.isEnabled();
+            TransformStats.Entry stats = TransformStats.peek(name);
+            evaluations = stats != null ? stats.getEvaluations() : 0;
+            matches = stats != null ? stats.getMatches() : 0;
+            meanNanos = stats != null ? stats.getMeanNanos() : 0;
+            maxNanos = stats != null ? stats.getMaxNanos() : 0;
+        }
+
+        /**
+         * CHANGED_* flags of what differs from the other snapshot of the same transform,
+         * or -1 if the name or pattern changed and the whole row needs rebinding.
+         */
+        int changes(Row other) {
+            if (!name.equals(other.name) || !pattern.equals(other.pattern)) {
+                return -1;
+            }
+            int changed = enabled != other.enabled ? CHANGED_ENABLED : 0;
+            if (evaluations != other.evaluations || matches != other.matches
+                    || meanNanos != other.meanNanos || maxNanos != other.maxNanos) {
+                changed |= CHANGED_STATS;
+            }
+            return changed;
+        }
+    }
+
     /**
      * Adapter for transform configuration list.
+     * Binds snapshots of the transforms: refresh() diffs a new snapshot in the background
+     * and dispatches only the changes, with payloads for enable and stats updates.
+     * Drags move rows synchronously and discard any diff in flight.
      */
     private class TransformConfigAdapter extends RecyclerView.Adapter<TransformConfigAdapter.ViewHolder> {
         private ItemTouchHelper touchHelper;
+        private List<Row> rows;
+        private int generation; // Bumped by every refresh and move
+        private int latestRefresh;
+        // Stable ids: transforms are edited in place, so identity is the row's identity
+        private final Map<Transform, Long> ids = new IdentityHashMap<>();
+
+        TransformConfigAdapter() {
+            rows = snapshot();
+        }
 
         void setTouchHelper(ItemTouchHelper helper) {
             this.touchHelper = helper;
         }
 
+        /**
+         * Snapshot the transforms and apply the differences from the shown rows.
+         */
+        void refresh() {
+            List<Row> newRows = snapshot();
+            List<Row> oldRows = rows;
+            int submitted = ++generation;
+            latestRefresh = submitted;
+            DIFF_EXECUTOR.execute(() -> {
+                DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new RowDiff(oldRows, newRows));
+                transformsRecyclerView.post(() -> {
+                    if (submitted == generation) {
+                        rows = newRows;
+                        diff.dispatchUpdatesTo(this);
+                    } else if (submitted == latestRefresh && !isDestroyed()) {
+                        // Rows were moved while diffing: start over from the moved rows
+                        refresh();
+                    }
+                });
+            });
+        }
+
+        private List<Row> snapshot() {
+            List<Row> snapshot = new ArrayList<>(transforms.size());
+            for (Transform transform : transforms) {
+                snapshot.add(new Row(transform));
+            }
+            return snapshot;
+        }
+
+        /**
+         * Requirement 5.2: reorder in place while dragging, without waiting for a diff.
+         */
+        void move(int from, int to) {
+            List<Row> moved = new ArrayList<>(rows);
+            Collections.swap(moved, from, to);
+            rows = moved;
+            generation++;
+            notifyItemMoved(from, to);
+        }
+
         @NonNull
         @Override
         public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -199,42 +604,67 @@ public class ConfigActivity extends AppCompatActivity {
 
         @Override
         public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-            Transform transform = transforms.get(position);
+            Row row = rows.get(position);
 
-            holder.name.setText(transform.getName());
-            holder.pattern.setText(transform.getPattern());
-
-            // Enable/disable checkbox
-            holder.checkbox.setOnCheckedChangeListener(null);
-            holder.checkbox.setChecked(transform.isEnabled());
-            holder.checkbox.setOnCheckedChangeListener((buttonView, isChecked) -> {
-                transform.setEnabled(isChecked);
-                configRepository.saveTransforms(transforms);
-            });
+            holder.name.setText(row.name);
+            holder.pattern.setText(row.pattern);
+            bindStats(holder.stats, row);
+            holder.checkbox.setChecked(row.enabled);
+        }
 
-            // Edit button
-            holder.editButton.setOnClickListener(v -> showEditTransformDialog(position));
+        @Override
+        public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+            int changed = 0;
+            for (Object payload : payloads) {
+                changed |= (Integer) payload;
+            }
+            if (payloads.isEmpty() || changed < 0) {
+                onBindViewHolder(holder, position);
+                return;
+            }
+            Row row = rows.get(position);
+            if ((changed & CHANGED_ENABLED) != 0) {
+                holder.checkbox.setChecked(row.enabled);
+            }
+            if ((changed & CHANGED_STATS) != 0) {
+                bindStats(holder.stats, row);
+            }
+        }
 
-            // Delete button
-            holder.deleteButton.setOnClickListener(v -> showDeleteTransformDialog(position));
+        /**
+         * Show hit rate and latency so dead or expensive transforms stand out.
+         */
+        private void bindStats(TextView view, Row row) {
+            if (row.evaluations == 0) {
+                view.setText(R.string.transform_stats_none);
+                return;
+            }
+            view.setText(getString(R.string.transform_stats,
+                row.matches, row.evaluations,
+                TransformStats.formatNanos(row.meanNanos),
+                TransformStats.formatNanos(row.maxNanos)));
+        }
 
-            // Drag handle
-            holder.dragHandle.setOnTouchListener((v, event) -> {
-                if (event.getAction() == MotionEvent.ACTION_DOWN) {
-                    touchHelper.startDrag(holder);
-                }
-                return false;
-            });
+        @Override
+        public long getItemId(int position) {
+            Transform transform = rows.get(position).transform;
+            Long id = ids.get(transform);
+            if (id == null) {
+                id = (long) ids.size();
+                ids.put(transform, id);
+            }
+            return id;
         }
 
         @Override
         public int getItemCount() {
-            return transforms.size();
+            return rows.size();
         }
 
         class ViewHolder extends RecyclerView.ViewHolder {
             TextView name;
             TextView pattern;
+            TextView stats;
             CheckBox checkbox;
             ImageButton editButton;
             ImageButton deleteButton;
@@ -244,11 +674,91 @@ public class ConfigActivity extends AppCompatActivity {
                 super(itemView);
                 name = itemView.findViewById(R.id.transformName);
                 pattern = itemView.findViewById(R.id.transformPattern);
+                stats = itemView.findViewById(R.id.transformStats);
                 checkbox = itemView.findViewById(R.id.transformCheckbox);
                 editButton = itemView.findViewById(R.id.editButton);
                 deleteButton = itemView.findViewById(R.id.deleteButton);
                 dragHandle = itemView.findViewById(R.id.dragHandle);
+
+                // Listeners resolve the row's current position on use, so they are set once
+
+                // Enable/disable checkbox; clicks, unlike setChecked, come only from the user
+                checkbox.setOnClickListener(v -> {
+                    Transform transform = currentTransform();
+                    if (transform != null) {
+                        transform.setEnabled(checkbox.isChecked());
+                        configRepository.saveTransforms(transforms);
+                        refresh();
+                    }
+                });
+
+                // Edit button
+                editButton.setOnClickListener(v -> {
+                    Transform transform = currentTransform();
+                    if (transform != null) {
+                        showEditTransformDialog(transform);
+                    }
+                });
+
+                // Delete button
+                deleteButton.setOnClickListener(v -> {
+                    Transform transform = currentTransform();
+                    if (transform != null) {
+                        showDeleteTransformDialog(transform);
+                    }
+                });
+
+                // Drag handle
+                dragHandle.setOnTouchListener((v, event) -> {
+                    if (event.getAction() == MotionEvent.ACTION_DOWN) {
+                        touchHelper.startDrag(this);
+                    }
+                    return false;
+                });
+            }
+
+            private Transform currentTransform() {
+                int position = getBindingAdapterPosition();
+                return position != RecyclerView.NO_POSITION ? rows.get(position).transform : null;
             }
         }
     }
+
+    /**
+     * Rows are the same item when they snapshot the same transform.
+     */
+    private static final class RowDiff extends DiffUtil.Callback {
+        private final List<Row> oldRows;
+        private final List<Row> newRows;
+
+        RowDiff(List<Row> oldRows, List<Row> newRows) {
+            this.oldRows = oldRows;
+            this.newRows = newRows;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldRows.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newRows.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return oldRows.get(oldPosition).transform == newRows.get(newPosition).transform;
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            return oldRows.get(oldPosition).changes(newRows.get(newPosition)) == 0;
+        }
+
+        @Override
+        public Object getChangePayload(int oldPosition, int newPosition) {
+            return oldRows.get(oldPosition).changes(newRows.get(newPosition));
+        }
+    }
 }
@@ -0,0 +1,118 @@
+package com.gatopeich.urlvinegar.ui;
+
+import android.app.Activity;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+
+import com.gatopeich.urlvinegar.R;
+import com.gatopeich.urlvinegar.data.ConfigRepository;
+import com.gatopeich.urlvinegar.util.ShareLatency;
+import com.gatopeich.urlvinegar.util.UrlProcessor;
+
+import java.util.Collections;
+
+/**
+ * Instant Share Activity - Translucent entry point without UI for shared text.
+ * Requirement 2.3: with instant share enabled, content that needs no interaction is
+ * cleaned and handed on directly; anything else goes to ProcessingActivity.
+ * Extends plain Activity: nothing is ever inflated here.
+ */
+public class InstantShareActivity extends Activity {
+
+    // Share and text-selection entry points of each path, declared in AndroidManifest.xml
+    private static final String[] DIALOG_ENTRY_POINTS = {
+        "com.gatopeich.urlvinegar.ui.ShareActivity",
+        "com.gatopeich.urlvinegar.ui.ProcessTextActivity",
+    };
+    private static final String[] INSTANT_ENTRY_POINTS = {
+        "com.gatopeich.urlvinegar.ui.InstantShare",
+        "com.gatopeich.urlvinegar.ui.InstantProcessText",
+    };
+
+    /**
+     * Turn instant share on or off: persist the setting and route share and
+     * text-selection intents to this activity or directly to the dialog, so the
+     * default path pays for no extra activity start.
+     */
+    static void setEnabled(Context context, boolean enabled) {
+        ConfigRepository.getInstance(context).setInstantShareEnabled(enabled);
+        PackageManager pm = context.getPackageManager();
+        for (String name : DIALOG_ENTRY_POINTS) {
+            setComponentEnabled(context, pm, name, !enabled);
+        }
+        for (String name : INSTANT_ENTRY_POINTS) {
+            setComponentEnabled(context, pm, name, enabled);
+        }
+    }
+
+    private static void setComponentEnabled(Context context, PackageManager pm, String name, boolean enabled) {
+        pm.setComponentEnabledSetting(new ComponentName(context, name),
+            enabled ? PackageManager.COMPONENT_ENABLED_STATE_ENABLED
+                : PackageManager.COMPONENT_ENABLED_STATE_DISABLED,
+            PackageManager.DONT_KILL_APP);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        long start = System.nanoTime();
+        super.onCreate(savedInstanceState);
+        if (!shareInstantly(this, start)) {
+            Intent dialog = new Intent(getIntent());
+            dialog.setClass(this, ProcessingActivity.class);
+            // PROCESS_TEXT callers get their result from the dialog
+            dialog.addFlags(Intent.FLAG_ACTIVITY_FORWARD_RESULT | Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            startActivity(dialog);
+        }
+        finish();
+        overridePendingTransition(0, 0);
+    }
+
+    /**
+     * Clean the activity's intent and fire the share chooser or PROCESS_TEXT result.
+     * Returns false, doing nothing, when instant share is off or the dialog is needed:
+     * no URL, a shared file, or a read-only text selection.
+     */
+    static boolean shareInstantly(Activity activity, long startNanos) {
+        ConfigRepository configRepository = ConfigRepository.getInstance(activity);
+        if (!configRepository.isInstantShareEnabled()) {
+            return false;
+        }
+        Intent intent = activity.getIntent();
+        String action = intent.getAction();
+        boolean processText = Intent.ACTION_PROCESS_TEXT.equals(action);
+        String text = null;
+        if (Intent.ACTION_SEND.equals(action)) {
+            text = intent.getStringExtra(Intent.EXTRA_TEXT);
+        } else if (processText) {
+            CharSequence selected = intent.getCharSequenceExtra(Intent.EXTRA_PROCESS_TEXT);
+            if (!intent.getBooleanExtra(Intent.EXTRA_PROCESS_TEXT_READONLY, false) && selected != null) {
+                text = selected.toString();
+            }
+        } else if (Intent.ACTION_VIEW.equals(action) && intent.getData() != null) {
+            text = intent.getData().toString();
+        }
+
+        String cleaned = UrlProcessor.cleanShared(text, !processText, configRepository.loadTransforms());
+        if (cleaned == null || cleaned.isEmpty()) {
+            return false;
+        }
+        if (processText) {
+            Intent result = new Intent();
+            result.putExtra(Intent.EXTRA_PROCESS_TEXT, cleaned);
+            activity.setResult(RESULT_OK, result);
+        } else {
+            Intent shareIntent = new Intent(Intent.ACTION_SEND);
+            shareIntent.setType("text/plain");
+            shareIntent.putExtra(Intent.EXTRA_TEXT, cleaned);
+            activity.startActivity(Intent.createChooser(shareIntent, activity.getString(R.string.share_via)));
+        }
+        ShareLatency.recordInstant(startNanos);
+        // Requirement 3.9: logged like dialog shares, without the transforms that fired
+        configRepository.logHistory(text, cleaned, Collections.<String>emptyList(), System.nanoTime() - startNanos);
+        configRepository.saveTransformStats();
+        return true;
+    }
+}
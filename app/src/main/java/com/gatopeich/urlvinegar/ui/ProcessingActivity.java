@@ -4,15 +4,19 @@ import android.content.ClipData;
 import android.content.ClipboardManager;
 import android.content.Context;
 import android.content.Intent;
+import android.database.Cursor;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.provider.OpenableColumns;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
 import android.widget.CheckBox;
 import android.widget.EditText;
@@ -20,21 +24,38 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.ContextCompat;
+import androidx.core.content.FileProvider;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.gatopeich.urlvinegar.R;
 import com.gatopeich.urlvinegar.data.ConfigRepository;
 import com.gatopeich.urlvinegar.data.Transform;
+import com.gatopeich.urlvinegar.util.CleaningEngine;
+import com.gatopeich.urlvinegar.util.CleaningEngines;
+import com.gatopeich.urlvinegar.util.CompiledRules;
+import com.gatopeich.urlvinegar.util.ShareLatency;
+import com.gatopeich.urlvinegar.util.Spans;
 import com.gatopeich.urlvinegar.util.UrlProcessor;
 
-import java.util.HashSet;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -47,38 +68,67 @@ import java.util.regex.PatternSyntaxException;
 public class ProcessingActivity extends AppCompatActivity {
 
     private ConfigRepository configRepository;
-    private List<Transform> transforms;
-    private List<UrlProcessor.QueryParam> queryParams;
-
-    private String originalUrl;
-    private String originalText; // Full text in text mode (non-URL input), null in URL mode
-    private String currentUrl;
-    private String urlHost;
-    private boolean isProcessTextIntent;
-    private Set<String> userRemovedParams; // Track params the user explicitly unchecked
-    private Set<String> userRestoredParams; // Track params the user explicitly re-checked (override transform removal)
+    private ProcessingViewModel state; // Survives configuration changes
 
     private TextView urlPreview;
     private RecyclerView paramsRecyclerView;
     private LinearLayout paramsSection;
     private QueryParamAdapter paramAdapter;
 
+    // Shared file outputs are cleaned up once the chooser returns
+    private final ActivityResultLauncher<Intent> shareFileLauncher = registerForActivityResult(
+        new ActivityResultContracts.StartActivityForResult(), result -> onCleanedFileShared());
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long start = System.nanoTime();
         super.onCreate(savedInstanceState);
+        // Links opened with us as browser skip the dialog too when instant share applies
+        if (savedInstanceState == null && Intent.ACTION_VIEW.equals(getIntent().getAction())
+                && InstantShareActivity.shareInstantly(this, start)) {
+            finish();
+            return;
+        }
         setContentView(R.layout.activity_processing);
-
         configRepository = ConfigRepository.getInstance(this);
-        transforms = configRepository.loadTransforms();
-        userRemovedParams = new HashSet<>();
-        userRestoredParams = new HashSet<>();
+        state = new ViewModelProvider(this).get(ProcessingViewModel.class);
+        if (!state.initialized) {
+            state.createdNanos = start;
+        }
+
+        if (state.initialized) {
+            // Recreated after a configuration change: re-render only
+            setupViews();
+            if (state.streamCleaner != null) {
+                showStreamProgress();
+            } else {
+                renderResult();
+            }
+            return;
+        }
+        state.transforms = configRepository.loadTransforms();
+
+        // Shared text file: clean it in the background without loading it in memory
+        Uri stream = extractStreamFromIntent(getIntent());
+        if (stream != null) {
+            state.initialized = true;
+            setupViews();
+            File dir = new File(getCacheDir(), ProcessingViewModel.CLEANED_DIR);
+            dir.mkdirs();
+            // Earlier outputs have been shared or abandoned by now
+            ProcessingViewModel.deleteCleanedFiles(dir, null);
+            state.startStreamCleaning(getApplicationContext().getContentResolver(), stream,
+                querySize(stream), new File(dir, "cleaned-" + System.currentTimeMillis() + ".txt"));
+            showStreamProgress();
+            return;
+        }
 
         // Extract URL from intent
-        isProcessTextIntent = Intent.ACTION_PROCESS_TEXT.equals(getIntent().getAction());
-        originalUrl = extractUrlFromIntent(getIntent());
-        if (originalUrl == null) {
+        state.isProcessTextIntent = Intent.ACTION_PROCESS_TEXT.equals(getIntent().getAction());
+        state.originalUrl = extractUrlFromIntent(getIntent());
+        if (state.originalUrl == null) {
             // For PROCESS_TEXT with no URL, silently finish
-            if (isProcessTextIntent) {
+            if (state.isProcessTextIntent) {
                 finish();
                 return;
             }
@@ -88,24 +138,130 @@ public class ProcessingActivity extends AppCompatActivity {
             return;
         }
         
-        // Extract host for display in default transform names
+        // Registrable domain for display in default transform names, from the redirect target if any
         try {
-            Uri uri = Uri.parse(originalUrl);
-            urlHost = uri.getHost();
-            if (urlHost != null && urlHost.startsWith("www.")) {
-                urlHost = urlHost.substring(4);
-            }
+            UrlProcessor.Unwrapped target = UrlProcessor.unwrapRedirects(state.originalUrl);
+            Uri uri = Uri.parse(target != null ? target.url : state.originalUrl);
+            state.urlHost = UrlProcessor.registrableDomain(uri.getHost());
         } catch (Exception e) {
-            urlHost = "URL";
+            state.urlHost = "URL";
         }
+        state.initialized = true;
 
         setupViews();
         processUrl();
+
+        // Dialog path latency: until the first frame with the cleaned URL
+        urlPreview.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                urlPreview.getViewTreeObserver().removeOnPreDrawListener(this);
+                ShareLatency.recordDialog(start);
+                Spans.record(Spans.FIRST_DRAW, start, System.nanoTime());
+                return true;
+            }
+        });
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Persist transform statistics for ConfigActivity, once per dialog
+        configRepository.saveTransformStats();
+    }
+
+    /**
+     * Requirement 2.2: shared text files arrive as ACTION_SEND with EXTRA_STREAM.
+     */
+    private Uri extractStreamFromIntent(Intent intent) {
+        if (intent == null || !Intent.ACTION_SEND.equals(intent.getAction())
+                || intent.getStringExtra(Intent.EXTRA_TEXT) != null) {
+            return null;
+        }
+        String type = intent.getType();
+        if (type == null || !type.startsWith("text/")) {
+            return null;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            return intent.getParcelableExtra(Intent.EXTRA_STREAM, Uri.class);
+        }
+        return legacyStreamExtra(intent);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Uri legacyStreamExtra(Intent intent) {
+        return intent.getParcelableExtra(Intent.EXTRA_STREAM);
+    }
+
+    /**
+     * Show the progress of the stream cleaning job held by the view model.
+     */
+    private void showStreamProgress() {
+        findViewById(R.id.copyButton).setVisibility(View.GONE);
+        paramsSection.setVisibility(View.GONE);
+        Button shareButton = findViewById(R.id.shareButton);
+        shareButton.setEnabled(false);
+        shareButton.setOnClickListener(v -> shareCleanedFile());
+
+        state.streamProgress.observe(this, percent -> {
+            if (state.streamResult.getValue() == null) {
+                urlPreview.setText(getString(R.string.cleaning_file_progress, percent));
+            }
+        });
+        state.streamResult.observe(this, this::onStreamCleaned);
+    }
+
+    private void onStreamCleaned(boolean success) {
+        if (!success) {
+            urlPreview.setText(R.string.cleaning_file_failed);
+            return;
+        }
+        urlPreview.setText(getString(R.string.cleaning_file_done, state.streamCleaner.getUrlsCleaned()));
+        findViewById(R.id.shareButton).setEnabled(true);
+    }
+
+    /**
+     * Size of shared content in bytes, or -1 when the provider does not report it.
+     */
+    private long querySize(Uri uri) {
+        try (Cursor cursor = getContentResolver().query(
+                uri, new String[] {OpenableColumns.SIZE}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        } catch (RuntimeException e) {
+            // Size is only used for progress
+        }
+        return -1;
+    }
+
+    /**
+     * Requirement 6.1: share the cleaned file through FileProvider.
+     */
+    private void shareCleanedFile() {
+        Uri uri = FileProvider.getUriForFile(this, getPackageName() + ".files", state.cleanedFile);
+        Intent shareIntent = new Intent(Intent.ACTION_SEND);
+        shareIntent.setType("text/plain");
+        shareIntent.putExtra(Intent.EXTRA_STREAM, uri);
+        shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        state.cleanedFileShared = true;
+        shareFileLauncher.launch(Intent.createChooser(shareIntent, getString(R.string.share_via)));
+    }
+
+    /**
+     * The chooser is back: delete every output but the one just shared, which a target
+     * in another task may still be reading. That one goes when the next file job starts.
+     */
+    private void onCleanedFileShared() {
+        if (state.cleanedFile != null) {
+            ProcessingViewModel.deleteCleanedFiles(state.cleanedFile.getParentFile(), state.cleanedFile);
+        }
+        finish();
     }
 
     /**
      * Requirement 2.2: URL Reception
-     * Accepts URLs directly, or multiline text when any transform matches.
+     * Accepts URLs directly, text with several URLs, or multiline text when any transform matches.
      */
     private String extractUrlFromIntent(Intent intent) {
         if (intent == null) {
@@ -125,11 +281,16 @@ public class ProcessingActivity extends AppCompatActivity {
         if (Intent.ACTION_SEND.equals(action)) {
             String text = intent.getStringExtra(Intent.EXTRA_TEXT);
             if (text == null) return null;
+            // Several links: keep the whole message and clean each of them
+            if (UrlProcessor.hasMultipleUrls(text)) {
+                state.originalText = text;
+                return text;
+            }
             String url = UrlProcessor.extractUrl(text);
             if (url != null) return url;
             // No URL found - check if any transform matches the text
-            if (UrlProcessor.anyTransformMatches(text, transforms)) {
-                originalText = text;
+            if (UrlProcessor.anyTransformMatches(text, state.transforms)) {
+                state.originalText = text;
                 return text;
             }
             return null;
@@ -140,12 +301,16 @@ public class ProcessingActivity extends AppCompatActivity {
             CharSequence text = intent.getCharSequenceExtra(Intent.EXTRA_PROCESS_TEXT);
             if (text == null) return null;
             String textStr = text.toString();
+            if (UrlProcessor.hasMultipleUrls(textStr)) {
+                state.originalText = textStr;
+                return textStr;
+            }
             if (UrlProcessor.looksLikeUrl(textStr)) {
                 return UrlProcessor.extractUrl(textStr);
             }
             // Accept multiline text when any transform matches
-            if (UrlProcessor.anyTransformMatches(textStr, transforms)) {
-                originalText = textStr;
+            if (UrlProcessor.anyTransformMatches(textStr, state.transforms)) {
+                state.originalText = textStr;
                 return textStr;
             }
         }
@@ -167,7 +332,7 @@ public class ProcessingActivity extends AppCompatActivity {
         // When launched via PROCESS_TEXT, the main button returns the cleaned URL
         // to the calling app; otherwise it opens the share chooser.
         Button mainButton = findViewById(R.id.shareButton);
-        if (isProcessTextIntent) {
+        if (state.isProcessTextIntent) {
             mainButton.setText(R.string.apply);
             mainButton.setOnClickListener(v -> returnProcessedText());
         } else {
@@ -178,50 +343,105 @@ public class ProcessingActivity extends AppCompatActivity {
         findViewById(R.id.settingsButton).setOnClickListener(v -> openSettings());
     }
 
+    /**
+     * Recompute the result from the original input and user overrides, then render it.
+     */
     private void processUrl() {
-        if (originalText != null) {
+        long start = Spans.begin(Spans.PROCESS_URL);
+        try {
+            processCurrent();
+        } finally {
+            Spans.end(Spans.PROCESS_URL, start);
+        }
+        state.processNanos = System.nanoTime() - start;
+
+        renderResult();
+    }
+
+    private void processCurrent() {
+        if (state.originalText != null && UrlProcessor.hasMultipleUrls(state.originalText)) {
+            // Several links: transform and clean each URL on its own. A whole-text pass
+            // would let URL rules run on across spaces and delete words and other links
+            state.currentUrl = UrlProcessor.cleanEachUrl(state.originalText, state.transforms, null);
+            state.queryParams = new ArrayList<>();
+        } else if (state.originalText != null) {
             // Text mode: apply transforms to full text
-            String transformed = UrlProcessor.applyTextTransforms(originalText, transforms, null);
+            String transformed = UrlProcessor.applyTextTransforms(state.originalText, state.transforms, null);
             // If result is just a URL, do URL-specific processing (params)
             String url = UrlProcessor.extractUrl(transformed);
             if (url != null && url.equals(transformed)) {
-                queryParams = UrlProcessor.parseParamsWithTracking(
-                    url, transforms, null, userRemovedParams);
-                for (UrlProcessor.QueryParam p : queryParams) {
-                    if (userRestoredParams.contains(p.name) && p.removedBy != null) {
-                        p.keep = true;
-                    }
-                }
-                currentUrl = UrlProcessor.reconstructUrl(url, queryParams);
+                state.currentUrl = processSingleUrl(url);
             } else {
-                // Result is text (not a URL)
-                currentUrl = transformed;
-                queryParams = new java.util.ArrayList<>();
+                // Result is text (not a URL): clean every URL in it with the param pipeline
+                state.currentUrl = UrlProcessor.cleanText(transformed, state.transforms, null);
+                state.queryParams = new ArrayList<>();
             }
         } else {
-            // URL mode: parse params with tracking, apply overrides, reconstruct
-            queryParams = UrlProcessor.parseParamsWithTracking(
-                originalUrl, transforms, null, userRemovedParams);
-
-            // Apply user overrides: if user restored a param that was removed by transform, mark as keep
-            for (UrlProcessor.QueryParam p : queryParams) {
-                if (userRestoredParams.contains(p.name) && p.removedBy != null) {
-                    p.keep = true;
-                }
-            }
-
-            // Reconstruct URL from original base + kept params only.
-            // We use originalUrl (not transform output) as the base to avoid
+            // URL mode: reconstruct from the original URL (not transform output) to avoid
             // params getting duplicated when transforms remove the '?' separator.
-            currentUrl = UrlProcessor.reconstructUrl(originalUrl, queryParams);
+            state.currentUrl = processSingleUrl(state.originalUrl);
+        }
+    }
+
+    /**
+     * Requirement 3.9: log the input and its result as it leaves the dialog, once per
+     * distinct result.
+     */
+    private void logHistory() {
+        if (!configRepository.isHistoryLogEnabled() || state.currentUrl == null
+                || state.currentUrl.equals(state.loggedOutput)) {
+            return;
         }
+        LinkedHashSet<String> fired = new LinkedHashSet<>();
+        for (UrlProcessor.QueryParam p : state.queryParams) {
+            if (!p.keep && p.removedBy != null) {
+                fired.add(p.removedBy);
+            }
+        }
+        String input = state.originalText != null ? state.originalText : state.originalUrl;
+        configRepository.logHistory(input, state.currentUrl, new ArrayList<>(fired), state.processNanos);
+        state.loggedOutput = state.currentUrl;
+    }
 
-        // Update UI
-        urlPreview.setText(currentUrl);
+    /**
+     * Show the current result; no processing, so it is cheap after recreation.
+     */
+    private void renderResult() {
+        urlPreview.setText(state.currentUrl);
         urlPreview.setTextColor(ContextCompat.getColor(this, R.color.text_dark));
         findViewById(R.id.shareButton).setEnabled(true);
         updateSectionVisibility();
-        paramAdapter.notifyDataSetChanged();
+        paramAdapter.submit(state.queryParams);
+    }
+
+    /**
+     * Requirement 4.4: unwrap redirects unless the user kept the wrapper, then parse params
+     * of the target with tracking, apply user overrides and reconstruct.
+     * The wrapper's own params are listed last, as removed by the redirect.
+     * Requirement 4.6: cleans through the CleaningEngine interface, as batch tooling does.
+     */
+    private String processSingleUrl(String url) {
+        CleaningEngine engine = CleaningEngines.get();
+        state.unwrapped = state.keepRedirect ? null : UrlProcessor.unwrapRedirects(url);
+        String targetUrl = state.unwrapped != null ? state.unwrapped.url : url;
+        state.queryParams = engine.parseParamsWithTracking(
+            targetUrl, CompiledRules.of(state.transforms), null, state.userRemovedParams);
+
+        // Apply user overrides: if user restored a param that was removed by transform, mark as keep
+        for (UrlProcessor.QueryParam p : state.queryParams) {
+            if (state.userRestoredParams.contains(p.getName()) && p.removedBy != null) {
+                p.keep = true;
+            }
+        }
+        String result = engine.reconstructUrl(targetUrl, state.queryParams);
+        if (state.unwrapped != null) {
+            state.queryParams.addAll(state.unwrapped.wrapperParams);
+        }
+        return result;
+    }
+
+    private boolean isWrapperParam(UrlProcessor.QueryParam param) {
+        return state.unwrapped != null && state.unwrapped.wrapperParams.contains(param);
     }
 
     /**
@@ -229,7 +449,7 @@ public class ProcessingActivity extends AppCompatActivity {
      */
     private void updateSectionVisibility() {
         // Show params section only if there are query params
-        if (queryParams == null || queryParams.isEmpty()) {
+        if (state.queryParams == null || state.queryParams.isEmpty()) {
             paramsSection.setVisibility(View.GONE);
         } else {
             paramsSection.setVisibility(View.VISIBLE);
@@ -240,8 +460,10 @@ public class ProcessingActivity extends AppCompatActivity {
      * Return the cleaned URL to the calling app via PROCESS_TEXT result.
      */
     private void returnProcessedText() {
+        logHistory();
+        Spans.record(Spans.TIME_TO_SHARE, state.createdNanos, System.nanoTime());
         Intent resultIntent = new Intent();
-        resultIntent.putExtra(Intent.EXTRA_PROCESS_TEXT, currentUrl);
+        resultIntent.putExtra(Intent.EXTRA_PROCESS_TEXT, state.currentUrl);
         setResult(RESULT_OK, resultIntent);
         finish();
     }
@@ -250,20 +472,23 @@ public class ProcessingActivity extends AppCompatActivity {
      * Requirement 6.1: Share Intent
      */
     private void shareUrl() {
+        logHistory();
         Intent shareIntent = new Intent(Intent.ACTION_SEND);
         shareIntent.setType("text/plain");
-        shareIntent.putExtra(Intent.EXTRA_TEXT, currentUrl);
+        shareIntent.putExtra(Intent.EXTRA_TEXT, state.currentUrl);
         
         // Requirement 6.1: Display system chooser
         startActivity(Intent.createChooser(shareIntent, getString(R.string.share_via)));
+        Spans.record(Spans.TIME_TO_SHARE, state.createdNanos, System.nanoTime());
         
         // Requirement 6.2: Finish after sharing
         finish();
     }
 
     private void copyUrl() {
+        logHistory();
         ClipboardManager clipboard = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
-        ClipData clip = ClipData.newPlainText("URL", currentUrl);
+        ClipData clip = ClipData.newPlainText("URL", state.currentUrl);
         clipboard.setPrimaryClip(clip);
         Toast.makeText(this, R.string.copied_to_clipboard, Toast.LENGTH_SHORT).show();
     }
@@ -346,13 +571,13 @@ public class ProcessingActivity extends AppCompatActivity {
                     .setTitle(R.string.save_transform)
                     .setMessage(R.string.save_transform_message)
                     .setPositiveButton(R.string.save, (d, w) -> {
-                        transforms.add(newTransform);
-                        configRepository.saveTransforms(transforms);
+                        state.transforms.add(newTransform);
+                        configRepository.saveTransforms(state.transforms);
                         processUrl();
                     })
                     .setNegativeButton(R.string.this_time_only, (d, w) -> {
                         // Add to transforms list but don't save
-                        transforms.add(newTransform);
+                        state.transforms.add(newTransform);
                         processUrl();
                     })
                     .show();
@@ -374,7 +599,7 @@ public class ProcessingActivity extends AppCompatActivity {
 
         try {
             Pattern regex = Pattern.compile(pattern);
-            Matcher matcher = regex.matcher(originalUrl);
+            Matcher matcher = regex.matcher(state.originalUrl);
             if (matcher.find()) {
                 String result = matcher.replaceAll(replacement);
                 previewLabel.setVisibility(View.VISIBLE);
@@ -407,7 +632,7 @@ public class ProcessingActivity extends AppCompatActivity {
         layout.setPadding(48, 32, 48, 16);
 
         AlertDialog dialog = new AlertDialog.Builder(this)
-            .setTitle(param.name)
+            .setTitle(param.getName())
             .setView(layout)
             .setNegativeButton(R.string.cancel, null)
             .create();
@@ -415,8 +640,8 @@ public class ProcessingActivity extends AppCompatActivity {
         if (param.keep) {
             // Param is currently kept - offer to remove
             addStyledButton(layout, getString(R.string.remove_this_time), v -> {
-                userRemovedParams.add(param.name);
-                userRestoredParams.remove(param.name);
+                state.userRemovedParams.add(param.getName());
+                state.userRestoredParams.remove(param.getName());
                 processUrl();
                 dialog.dismiss();
             });
@@ -427,12 +652,16 @@ public class ProcessingActivity extends AppCompatActivity {
         } else {
             // Param is currently removed - offer to allow
             addStyledButton(layout, getString(R.string.allow_this_time), v -> {
-                userRestoredParams.add(param.name);
-                userRemovedParams.remove(param.name);
+                if (isWrapperParam(param)) {
+                    state.keepRedirect = true;
+                } else {
+                    state.userRestoredParams.add(param.getName());
+                    state.userRemovedParams.remove(param.getName());
+                }
                 processUrl();
                 dialog.dismiss();
             });
-            if (param.removedBy != null) {
+            if (param.removedBy != null && !isWrapperParam(param)) {
                 addStyledButton(layout, getString(R.string.edit_removal_regex, param.removedBy), v -> {
                     openSettings();
                     dialog.dismiss();
@@ -466,8 +695,8 @@ public class ProcessingActivity extends AppCompatActivity {
      * Show dialog to add a transform that removes a specific parameter.
      */
     private void showAddParamRemovalTransform(UrlProcessor.QueryParam param) {
-        String name = getString(R.string.remove_param_transform, param.name, urlHost);
-        String pattern = "[?&]" + Pattern.quote(param.name) + "=[^&]*";
+        String name = getString(R.string.remove_param_transform, param.getName(), state.urlHost);
+        String pattern = "[?&]" + Pattern.quote(param.getName()) + "=[^&]*";
         String replacement = "";
         
         showAddTransformDialogWithDefaults(name, pattern, replacement);
@@ -477,8 +706,46 @@ public class ProcessingActivity extends AppCompatActivity {
      * Adapter for unified parameter list.
      * Shows kept params with values, removed params with transform name (reason).
      * Tapping a row opens the action dialog.
+     * Each processing pass yields fresh params: they are diffed off the main thread against
+     * the shown ones, so toggling one param only rebinds the state of the rows that changed.
      */
     private class QueryParamAdapter extends RecyclerView.Adapter<QueryParamAdapter.ViewHolder> {
+        private final AsyncListDiffer<UrlProcessor.QueryParam> differ =
+            new AsyncListDiffer<>(this, PARAM_DIFF);
+        // Stable ids: one per distinct name, value hash and occurrence seen in this dialog;
+        // hashing leaves values uncut until their row is bound
+        private final Map<String, Long> keyIds = new HashMap<>();
+        private Map<UrlProcessor.QueryParam, Long> rowIds = new IdentityHashMap<>();
+
+        QueryParamAdapter() {
+            setHasStableIds(true);
+        }
+
+        void submit(List<UrlProcessor.QueryParam> params) {
+            List<UrlProcessor.QueryParam> rows = params != null
+                ? new ArrayList<>(params) : Collections.<UrlProcessor.QueryParam>emptyList();
+            Map<String, Integer> occurrences = new HashMap<>();
+            for (UrlProcessor.QueryParam param : rows) {
+                String key = param.getName() + '=' + param.valueHashCode();
+                Integer seen = occurrences.get(key);
+                occurrences.put(key, seen == null ? 1 : seen + 1);
+                key += '#' + (seen == null ? 0 : seen);
+                Long id = keyIds.get(key);
+                if (id == null) {
+                    id = (long) keyIds.size();
+                    keyIds.put(key, id);
+                }
+                rowIds.put(param, id);
+            }
+            differ.submitList(rows, () -> {
+                // Forget rows of lists no longer shown
+                Map<UrlProcessor.QueryParam, Long> current = new IdentityHashMap<>();
+                for (UrlProcessor.QueryParam param : differ.getCurrentList()) {
+                    current.put(param, rowIds.get(param));
+                }
+                rowIds = current;
+            });
+        }
 
         @NonNull
         @Override
@@ -490,14 +757,27 @@ public class ProcessingActivity extends AppCompatActivity {
 
         @Override
         public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-            UrlProcessor.QueryParam param = queryParams.get(position);
+            UrlProcessor.QueryParam param = differ.getCurrentList().get(position);
 
             // Show param name
-            holder.name.setText(param.name);
+            holder.name.setText(param.getName());
+            bindState(holder, param);
+        }
 
+        @Override
+        public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+            if (payloads.isEmpty()) {
+                onBindViewHolder(holder, position);
+            } else {
+                // Same param, only keep/removal state changed
+                bindState(holder, differ.getCurrentList().get(position));
+            }
+        }
+
+        private void bindState(ViewHolder holder, UrlProcessor.QueryParam param) {
             if (param.keep) {
                 // Kept param: show value, no strikethrough
-                holder.value.setText(param.value);
+                holder.value.setText(param.getValue());
                 holder.name.setPaintFlags(holder.name.getPaintFlags() & ~Paint.STRIKE_THRU_TEXT_FLAG);
                 holder.value.setPaintFlags(holder.value.getPaintFlags() & ~Paint.STRIKE_THRU_TEXT_FLAG);
                 holder.name.setTextColor(ContextCompat.getColor(ProcessingActivity.this, R.color.text_dark));
@@ -515,27 +795,33 @@ public class ProcessingActivity extends AppCompatActivity {
                 holder.value.setTextColor(ContextCompat.getColor(ProcessingActivity.this, android.R.color.darker_gray));
             }
 
-            // Checkbox for keep/remove
-            holder.checkbox.setOnCheckedChangeListener(null);
+            // Checkbox for keep/remove; clicks, unlike setChecked, come only from the user
             holder.checkbox.setChecked(param.keep);
-            holder.checkbox.setOnCheckedChangeListener((buttonView, isChecked) -> {
-                if (isChecked) {
-                    userRestoredParams.add(param.name);
-                    userRemovedParams.remove(param.name);
-                } else {
-                    userRemovedParams.add(param.name);
-                    userRestoredParams.remove(param.name);
-                }
-                processUrl();
-            });
+        }
 
-            // Tap row to show action dialog
-            holder.itemView.setOnClickListener(v -> showParamActionDialog(param));
+        private void onParamChecked(UrlProcessor.QueryParam param, boolean isChecked) {
+            if (isWrapperParam(param)) {
+                // Re-checking any wrapper param keeps the whole redirect
+                state.keepRedirect = isChecked;
+            } else if (isChecked) {
+                state.userRestoredParams.add(param.getName());
+                state.userRemovedParams.remove(param.getName());
+            } else {
+                state.userRemovedParams.add(param.getName());
+                state.userRestoredParams.remove(param.getName());
+            }
+            processUrl();
+        }
+
+        @Override
+        public long getItemId(int position) {
+            Long id = rowIds.get(differ.getCurrentList().get(position));
+            return id != null ? id : RecyclerView.NO_ID;
         }
 
         @Override
         public int getItemCount() {
-            return queryParams != null ? queryParams.size() : 0;
+            return differ.getCurrentList().size();
         }
 
         class ViewHolder extends RecyclerView.ViewHolder {
@@ -548,7 +834,54 @@ public class ProcessingActivity extends AppCompatActivity {
                 name = itemView.findViewById(R.id.paramName);
                 value = itemView.findViewById(R.id.paramValue);
                 checkbox = itemView.findViewById(R.id.paramCheckbox);
+
+                // Listeners look the param up on use, so partial binds need not reset them
+                checkbox.setOnClickListener(v -> {
+                    UrlProcessor.QueryParam param = currentParam();
+                    if (param != null) {
+                        onParamChecked(param, checkbox.isChecked());
+                    }
+                });
+                // Tap row to show action dialog
+                itemView.setOnClickListener(v -> {
+                    UrlProcessor.QueryParam param = currentParam();
+                    if (param != null) {
+                        showParamActionDialog(param);
+                    }
+                });
+            }
+
+            private UrlProcessor.QueryParam currentParam() {
+                int position = getBindingAdapterPosition();
+                return position != RecyclerView.NO_POSITION ? differ.getCurrentList().get(position) : null;
             }
         }
     }
+
+    /**
+     * Params are the same row when name and value match; only keep/removal state changes
+     * between processing passes, which rebinds via PAYLOAD_STATE.
+     */
+    private static final Object PAYLOAD_STATE = new Object();
+
+    private static final DiffUtil.ItemCallback<UrlProcessor.QueryParam> PARAM_DIFF =
+        new DiffUtil.ItemCallback<UrlProcessor.QueryParam>() {
+            @Override
+            public boolean areItemsTheSame(@NonNull UrlProcessor.QueryParam oldParam,
+                    @NonNull UrlProcessor.QueryParam newParam) {
+                return oldParam.sameName(newParam) && oldParam.sameValue(newParam);
+            }
+
+            @Override
+            public boolean areContentsTheSame(@NonNull UrlProcessor.QueryParam oldParam,
+                    @NonNull UrlProcessor.QueryParam newParam) {
+                return oldParam.keep == newParam.keep && Objects.equals(oldParam.removedBy, newParam.removedBy);
+            }
+
+            @Override
+            public Object getChangePayload(@NonNull UrlProcessor.QueryParam oldParam,
+                    @NonNull UrlProcessor.QueryParam newParam) {
+                return PAYLOAD_STATE;
+            }
+        };
 }
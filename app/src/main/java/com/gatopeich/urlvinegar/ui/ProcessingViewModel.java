@@ -0,0 +1,122 @@
+package com.gatopeich.urlvinegar.ui;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.ViewModel;
+
+import com.gatopeich.urlvinegar.data.Transform;
+import com.gatopeich.urlvinegar.util.StreamCleaner;
+import com.gatopeich.urlvinegar.util.UrlProcessor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Processing state of ProcessingActivity, retained across configuration changes
+ * so that a recreated activity only re-renders: the intent is not parsed again,
+ * URLs are not reprocessed and user overrides are kept.
+ */
+public class ProcessingViewModel extends ViewModel {
+
+    static final String CLEANED_DIR = "cleaned"; // Under the cache dir, shared via FileProvider
+
+    boolean initialized;
+
+    List<Transform> transforms;
+    List<UrlProcessor.QueryParam> queryParams;
+
+    String originalUrl;
+    String originalText; // Full text in text mode (non-URL input), null in URL mode
+    String currentUrl;
+    String urlHost;
+    boolean isProcessTextIntent;
+    final Set<String> userRemovedParams = new HashSet<>(); // Track params the user explicitly unchecked
+    final Set<String> userRestoredParams = new HashSet<>(); // Track params the user explicitly re-checked (override transform removal)
+    UrlProcessor.Unwrapped unwrapped; // Redirect wrappers removed from the current URL, if any
+    boolean keepRedirect; // User chose to share the redirect wrapper as is
+    long processNanos; // Time taken by the last processUrl()
+    long createdNanos; // When the first activity instance was created, for time to share
+    String loggedOutput; // Last output written to the history log, to log each result once
+
+    // Stream mode (shared text file): the cleaning job outlives activity instances
+    StreamCleaner streamCleaner;
+    private final ExecutorService streamExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "StreamCleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+    File cleanedFile;
+    boolean cleanedFileShared; // Handed to the share chooser
+    final MutableLiveData<Integer> streamProgress = new MutableLiveData<>(); // Percent, while running
+    final MutableLiveData<Boolean> streamResult = new MutableLiveData<>(); // Set once finished
+
+    /**
+     * Clean a shared text file into cleanedFile on streamExecutor, once per view model.
+     */
+    void startStreamCleaning(ContentResolver resolver, Uri stream, long totalBytes, File output) {
+        cleanedFile = output;
+        streamCleaner = new StreamCleaner(transforms, null);
+        streamProgress.setValue(0);
+        streamExecutor.execute(() -> {
+            boolean ok;
+            try (InputStream in = resolver.openInputStream(stream);
+                 FileOutputStream out = new FileOutputStream(output)) {
+                if (in == null) {
+                    throw new IOException("No content for " + stream);
+                }
+                streamCleaner.clean(Channels.newChannel(in), out.getChannel(), (bytesRead, urls) -> {
+                    if (totalBytes > 0) {
+                        streamProgress.postValue((int) Math.min(100, bytesRead * 100 / totalBytes));
+                    }
+                });
+                ok = !streamCleaner.isCancelled();
+            } catch (IOException | SecurityException e) {
+                ok = false;
+            }
+            if (!ok) {
+                output.delete();
+            }
+            streamResult.postValue(ok);
+        });
+    }
+
+    /**
+     * Delete the cleaned file outputs in dir, except keep if not null.
+     */
+    static void deleteCleanedFiles(File dir, File keep) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.equals(keep)) {
+                file.delete();
+            }
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        // The dialog is gone for good
+        if (streamCleaner != null) {
+            streamCleaner.cancel();
+        }
+        // Lets a cancelled job wind down, then ends the thread
+        streamExecutor.shutdown();
+        // Nobody will ever read an output that was not shared. The job deletes its output
+        // itself if cancelled while writing it
+        if (cleanedFile != null && !cleanedFileShared) {
+            cleanedFile.delete();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.gatopeich.urlvinegar.util;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Requirement 4.6: Cleaning Engines
+ * The stages of the URL pipeline behind one interface, so that an implementation can be
+ * compared with the reference on the same input (see CleaningEngines).
+ * Every engine MUST return the same results as CleaningEngines.REFERENCE; engines
+ * differ only in how fast they get there. Rules come as a compiled snapshot,
+ * usually CompiledRules.of(transforms), and implementations must be thread-safe.
+ */
+public interface CleaningEngine {
+
+    /**
+     * Identifier for logs and test messages.
+     */
+    String getName();
+
+    /**
+     * Requirement 4.1: run all active transforms over a URL and validate its scheme.
+     */
+    UrlProcessor.ProcessResult applyTransforms(String url, CompiledRules rules, Set<Integer> disabledIndices);
+
+    /**
+     * Requirement 3.3: params of a URL attributed to the transform that removed them,
+     * kept first then removed, with user removals applied.
+     */
+    List<UrlProcessor.QueryParam> parseParamsWithTracking(String url, CompiledRules rules,
+        Set<Integer> disabledIndices, Set<String> userRemovedParams);
+
+    /**
+     * Requirement 4.2: params of a URL, kept when in allowedParams.
+     */
+    List<UrlProcessor.QueryParam> parseQueryParams(String url, Set<String> allowedParams);
+
+    /**
+     * Requirement 4.3: the URL with only the kept params.
+     */
+    String reconstructUrl(String url, List<UrlProcessor.QueryParam> params);
+
+    /**
+     * The full default pipeline: unwrap redirects, track removals and reconstruct.
+     */
+    String cleanUrl(String url, CompiledRules rules, Set<Integer> disabledIndices);
+}
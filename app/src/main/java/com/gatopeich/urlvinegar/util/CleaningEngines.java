@@ -0,0 +1,79 @@
+package com.gatopeich.urlvinegar.util;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Requirement 4.6: Cleaning Engines
+ * Registry of CleaningEngine implementations. There is no runtime selection: the only
+ * engine is REFERENCE, whose result cache is a configuration switch, not another engine.
+ */
+public final class CleaningEngines {
+
+    /**
+     * UrlProcessor's pipeline, through the result cache when it is enabled.
+     */
+    public static final CleaningEngine REFERENCE = new PipelineEngine("reference");
+
+    private CleaningEngines() {
+    }
+
+    /**
+     * The engine stages of UrlProcessor.
+     */
+    private static final class PipelineEngine implements CleaningEngine {
+        private final String name;
+
+        PipelineEngine(String name) {
+            this.name = name;
+        }
+
+        private static boolean useCache() {
+            return UrlProcessor.getResultCache().isEnabled();
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public UrlProcessor.ProcessResult applyTransforms(String url, CompiledRules rules,
+                Set<Integer> disabledIndices) {
+            return UrlProcessor.applyTransforms(url, rules, disabledIndices, useCache());
+        }
+
+        @Override
+        public List<UrlProcessor.QueryParam> parseParamsWithTracking(String url, CompiledRules rules,
+                Set<Integer> disabledIndices, Set<String> userRemovedParams) {
+            return UrlProcessor.parseParamsWithTracking(url, rules, disabledIndices, userRemovedParams, useCache());
+        }
+
+        @Override
+        public List<UrlProcessor.QueryParam> parseQueryParams(String url, Set<String> allowedParams) {
+            return UrlProcessor.parseQueryParams(url, allowedParams);
+        }
+
+        @Override
+        public String reconstructUrl(String url, List<UrlProcessor.QueryParam> params) {
+            return UrlProcessor.reconstructUrl(url, params);
+        }
+
+        @Override
+        public String cleanUrl(String url, CompiledRules rules, Set<Integer> disabledIndices) {
+            return UrlProcessor.cleanUrl(url, rules, disabledIndices, useCache());
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * The engine to clean with, always REFERENCE for now.
+     */
+    public static CleaningEngine get() {
+        return REFERENCE;
+    }
+}
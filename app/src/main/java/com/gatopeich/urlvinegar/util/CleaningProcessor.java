@@ -0,0 +1,282 @@
+package com.gatopeich.urlvinegar.util;
+
+import com.gatopeich.urlvinegar.data.Transform;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Requirement 4.5: Streaming API
+ * Reactive cleaning stage: consumes URLs (or text chunks) and emits their cleaned
+ * ProcessResults with backpressure. Up to parallelism items are cleaned at once on
+ * the given executor, all against one CompiledRules snapshot and the CleaningEngine
+ * in use at construction, which workers share without locking. Results come out in input order, or in
+ * completion order when ordered is false.
+ * <p>
+ * At most 4 * parallelism items are requested from upstream ahead of downstream
+ * demand. An item that fails to clean yields ProcessResult.error with the item
+ * unmodified (Requirement 9.2); it does not end the stream. Upstream errors are
+ * delivered after the results of the items received before them.
+ * Supports a single subscriber.
+ */
+public class CleaningProcessor implements ReactiveFlow.Processor<String, UrlProcessor.ProcessResult> {
+
+    private final CompiledRules rules;
+    private final CleaningEngine engine;
+    private final boolean textChunks;
+    private final Executor executor;
+    private final int parallelism;
+    private final int bufferSize;
+    private final boolean ordered;
+
+    private volatile ReactiveFlow.Subscription upstream;
+    private volatile ReactiveFlow.Subscriber<? super UrlProcessor.ProcessResult> downstream;
+    private final AtomicLong requested = new AtomicLong(); // Downstream demand not yet met
+    private volatile boolean cancelled;
+    private volatile boolean upstreamDone;
+    private volatile Throwable upstreamError;
+    private volatile long received; // Written only by onNext, which is serialized
+
+    private final Queue<Task> inputs = new ConcurrentLinkedQueue<>();
+    private final Queue<Task> finished = new ConcurrentLinkedQueue<>(); // Unordered mode
+    private final AtomicInteger running = new AtomicInteger();
+
+    // Drain loop state: only touched while holding wip
+    private final AtomicInteger wip = new AtomicInteger();
+    private final ArrayDeque<Task> started = new ArrayDeque<>(); // Ordered mode, input order
+    private long upstreamRequested;
+    private long emitted;
+    private boolean terminated;
+
+    private static final class Task {
+        final String item;
+        volatile UrlProcessor.ProcessResult result;
+
+        Task(String item) {
+            this.item = item;
+        }
+    }
+
+    /**
+     * @param textChunks Clean every URL within each item (UrlProcessor.cleanText) instead
+     *                   of cleaning each item as a single URL (UrlProcessor.cleanUrl)
+     */
+    public CleaningProcessor(List<Transform> transforms, boolean textChunks,
+            Executor executor, int parallelism, boolean ordered) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.rules = CompiledRules.of(transforms);
+        this.engine = CleaningEngines.get();
+        this.textChunks = textChunks;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.bufferSize = 4 * parallelism;
+        this.ordered = ordered;
+    }
+
+    @Override
+    public void subscribe(ReactiveFlow.Subscriber<? super UrlProcessor.ProcessResult> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        synchronized (this) {
+            if (downstream == null) {
+                downstream = subscriber;
+                subscriber.onSubscribe(new DownstreamSubscription());
+                drain();
+                return;
+            }
+        }
+        subscriber.onSubscribe(new ReactiveFlow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onError(new IllegalStateException("CleaningProcessor supports a single subscriber"));
+    }
+
+    private final class DownstreamSubscription implements ReactiveFlow.Subscription {
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                upstreamError = new IllegalArgumentException("Non-positive request: " + n);
+                cancelUpstream();
+                upstreamDone = true;
+            } else {
+                long current;
+                long next;
+                do {
+                    current = requested.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!requested.compareAndSet(current, next));
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            cancelUpstream();
+            drain();
+        }
+    }
+
+    private void cancelUpstream() {
+        ReactiveFlow.Subscription s = upstream;
+        if (s != null) {
+            s.cancel();
+        }
+    }
+
+    @Override
+    public void onSubscribe(ReactiveFlow.Subscription subscription) {
+        if (upstream != null || cancelled) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        drain();
+    }
+
+    @Override
+    public void onNext(String item) {
+        if (item == null) {
+            throw new NullPointerException("item");
+        }
+        inputs.add(new Task(item));
+        received++;
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        upstreamError = throwable;
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    private UrlProcessor.ProcessResult clean(String item) {
+        try {
+            return UrlProcessor.ProcessResult.success(textChunks
+                ? UrlProcessor.cleanText(item, rules, null)
+                : engine.cleanUrl(item, rules, null));
+        } catch (RuntimeException e) {
+            return UrlProcessor.ProcessResult.error(item, e.toString());
+        }
+    }
+
+    private void run(Task task) {
+        task.result = clean(task.item);
+        if (!ordered) {
+            finished.add(task);
+        }
+        running.decrementAndGet();
+        drain();
+    }
+
+    /**
+     * Serialized state machine: emit ready results, start queued items, top up
+     * upstream demand and signal termination. Any thread may call it; only one
+     * runs it at a time and the others leave their work to it.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            if (terminated) {
+                inputs.clear();
+            } else if (cancelled) {
+                terminated = true;
+                inputs.clear();
+                finished.clear();
+                started.clear();
+            } else {
+                drainOnce();
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drainOnce() {
+        ReactiveFlow.Subscriber<? super UrlProcessor.ProcessResult> subscriber = downstream;
+        if (subscriber != null) {
+            long demand = requested.get();
+            long sent = 0;
+            while (sent != demand && !cancelled) {
+                Task task;
+                if (ordered) {
+                    task = started.peek();
+                    if (task == null || task.result == null) {
+                        break;
+                    }
+                    started.poll();
+                } else {
+                    task = finished.poll();
+                    if (task == null) {
+                        break;
+                    }
+                }
+                subscriber.onNext(task.result);
+                sent++;
+            }
+            if (sent > 0) {
+                emitted += sent;
+                if (demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-sent);
+                }
+            }
+        }
+
+        while (running.get() < parallelism && !cancelled) {
+            Task task = inputs.poll();
+            if (task == null) {
+                break;
+            }
+            running.incrementAndGet();
+            if (ordered) {
+                started.add(task);
+            }
+            executor.execute(() -> run(task));
+        }
+
+        ReactiveFlow.Subscription s = upstream;
+        boolean done = upstreamDone;
+        if (s != null && !done && !cancelled) {
+            // Items requested or held but not yet emitted
+            long outstanding = upstreamRequested - emitted;
+            if (outstanding <= bufferSize / 2) {
+                long n = bufferSize - outstanding;
+                upstreamRequested += n;
+                s.request(n);
+            }
+        }
+
+        if (subscriber != null && done && emitted == received && !cancelled) {
+            terminated = true;
+            Throwable error = upstreamError;
+            if (error != null) {
+                subscriber.onError(error);
+            } else {
+                subscriber.onComplete();
+            }
+        }
+    }
+}
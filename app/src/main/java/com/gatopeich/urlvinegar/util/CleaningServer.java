@@ -0,0 +1,530 @@
+package com.gatopeich.urlvinegar.util;
+
+import com.gatopeich.urlvinegar.data.Transform;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Requirement 2.5: Local Cleaning Server
+ * Plain-Java HTTP endpoint that cleans URLs like the processing dialog does by default,
+ * with the CleaningEngine in use and rules from a JSON file in ConfigRepository's format:
+ * <ul>
+ * <li>GET /clean?url=... returns the cleaned URL.</li>
+ * <li>POST /clean with one URL per line returns one cleaned URL per line.</li>
+ * <li>GET /stats returns rule and latency statistics as JSON.</li>
+ * </ul>
+ * Listens on the loopback interface only. One NIO event loop does all socket I/O,
+ * cleaning runs on a worker pool. The rules file is reloaded when it changes; a file
+ * that fails to parse is ignored and the previous rules stay in use. A reload that edits
+ * one rule only recompiles that rule (Requirement 5.7).
+ * Supports HTTP/1.1 keep-alive and pipelining; request bodies need a Content-Length.
+ */
+public final class CleaningServer implements Closeable {
+    public static final int MAX_HEADER_BYTES = 8 * 1024;
+    public static final int MAX_BODY_BYTES = 8 * 1024 * 1024;
+    private static final long RELOAD_CHECK_MILLIS = 1000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final String TEXT = "text/plain; charset=utf-8";
+    private static final String JSON = "application/json";
+
+    private final File rulesFile;
+    private final LiveRules rules;
+    private long rulesModified;
+    private long rulesLength;
+    private final AtomicInteger reloads = new AtomicInteger();
+    private final AtomicInteger reloadErrors = new AtomicInteger();
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final ExecutorService workers;
+    private final Queue<Runnable> completions = new ConcurrentLinkedQueue<>();
+    private final Thread loop;
+    private volatile boolean closed;
+
+    // Server-side latency, from request parsed to response ready
+    private final LatencyHistogram singleLatency = new LatencyHistogram();
+    private final LatencyHistogram batchLatency = new LatencyHistogram();
+
+    /**
+     * Start serving on the given loopback port, 0 for any free port (see getPort()).
+     * Fails if the rules file cannot be read or parsed.
+     */
+    public CleaningServer(File rulesFile, int port, int workerThreads) throws IOException {
+        this.rulesFile = rulesFile;
+        rulesModified = rulesFile.lastModified();
+        rulesLength = rulesFile.length();
+        rules = new LiveRules(readRules(rulesFile));
+
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+
+        workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread thread = new Thread(r, "CleaningServer-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        loop = new Thread(this::runLoop, "CleaningServer");
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    public LatencyHistogram getSingleLatency() {
+        return singleLatency;
+    }
+
+    public LatencyHistogram getBatchLatency() {
+        return batchLatency;
+    }
+
+    public int getReloads() {
+        return reloads.get();
+    }
+
+    public int getReloadErrors() {
+        return reloadErrors.get();
+    }
+
+    public LiveRules getRules() {
+        return rules;
+    }
+
+    private static List<Transform> readRules(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, n);
+            }
+            return TransformJson.parse(new String(bytes.toByteArray(), UTF_8));
+        }
+    }
+
+    /**
+     * Reload the rules if the file's modification time or size changed.
+     * Called periodically by the event loop; returns true if new rules were loaded.
+     */
+    public synchronized boolean reloadIfChanged() {
+        long modified = rulesFile.lastModified();
+        long length = rulesFile.length();
+        if (modified == rulesModified && length == rulesLength) {
+            return false;
+        }
+        rulesModified = modified;
+        rulesLength = length;
+        try {
+            rules.update(readRules(rulesFile));
+            reloads.incrementAndGet();
+            return true;
+        } catch (IOException e) {
+            // Likely caught mid-write: keep the current rules until the file changes again
+            reloadErrors.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Connection state, only touched by the event loop thread.
+     */
+    private static final class Connection {
+        final SocketChannel channel;
+        ByteBuffer in = ByteBuffer.allocate(4096);
+        ByteBuffer out;
+        boolean busy; // A request is being handled by a worker; not read meanwhile
+        boolean closeAfterWrite;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private static final class Request {
+        final String method;
+        final String target;
+        final byte[] body;
+        final long startNanos;
+
+        Request(String method, String target, byte[] body) {
+            this.method = method;
+            this.target = target;
+            this.body = body;
+            startNanos = System.nanoTime();
+        }
+    }
+
+    private void runLoop() {
+        long nextReload = System.currentTimeMillis() + RELOAD_CHECK_MILLIS;
+        while (!closed) {
+            try {
+                selector.select(RELOAD_CHECK_MILLIS);
+            } catch (IOException e) {
+                break;
+            }
+            Runnable completion;
+            while ((completion = completions.poll()) != null) {
+                completion.run();
+            }
+            if (System.currentTimeMillis() >= nextReload) {
+                reloadIfChanged();
+                nextReload = System.currentTimeMillis() + RELOAD_CHECK_MILLIS;
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                try {
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        read((Connection) key.attachment());
+                    } else if (key.isWritable()) {
+                        write((Connection) key.attachment());
+                    }
+                } catch (IOException | CancelledKeyException e) {
+                    if (key.attachment() != null) {
+                        close((Connection) key.attachment());
+                    }
+                }
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() != null) {
+                close((Connection) key.attachment());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+        }
+    }
+
+    private void read(Connection conn) throws IOException {
+        if (!conn.in.hasRemaining()) {
+            grow(conn, conn.in.capacity() * 2);
+        }
+        if (conn.channel.read(conn.in) < 0) {
+            close(conn);
+            return;
+        }
+        parseRequest(conn);
+    }
+
+    private static void grow(Connection conn, int capacity) {
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        conn.in.flip();
+        bigger.put(conn.in);
+        conn.in = bigger;
+    }
+
+    /**
+     * Take the next complete request off the input buffer and hand it to a worker.
+     * Requests on a connection are answered in order, one at a time. The connection is
+     * not read until the answer is written, so a client pipelining without waiting for
+     * responses cannot grow the buffer past one request and what arrived with it.
+     */
+    private void parseRequest(Connection conn) {
+        if (conn.busy) {
+            return;
+        }
+        byte[] data = conn.in.array();
+        int length = conn.in.position();
+        int headerEnd = -1;
+        for (int i = 3; i < length; i++) {
+            if (data[i] == '\n' && data[i - 1] == '\r' && data[i - 2] == '\n' && data[i - 3] == '\r') {
+                headerEnd = i + 1;
+                break;
+            }
+        }
+        if (headerEnd < 0) {
+            if (length >= MAX_HEADER_BYTES) {
+                respondAndClose(conn, 431, "Request header too large");
+            }
+            return;
+        }
+
+        String[] lines = new String(data, 0, headerEnd - 4, ISO_8859_1).split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3) {
+            respondAndClose(conn, 400, "Bad request line");
+            return;
+        }
+        long contentLength = 0;
+        boolean keepAlive = requestLine[2].equals("HTTP/1.1");
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = lines[i].substring(colon + 1).trim();
+            if (name.equals("content-length")) {
+                try {
+                    contentLength = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    respondAndClose(conn, 400, "Bad Content-Length");
+                    return;
+                }
+            } else if (name.equals("transfer-encoding")) {
+                respondAndClose(conn, 411, "Content-Length required");
+                return;
+            } else if (name.equals("connection")) {
+                keepAlive = value.equalsIgnoreCase("keep-alive")
+                    || (keepAlive && !value.equalsIgnoreCase("close"));
+            }
+        }
+        if (contentLength < 0 || contentLength > MAX_BODY_BYTES) {
+            respondAndClose(conn, 413, "Body over " + MAX_BODY_BYTES + " bytes");
+            return;
+        }
+        int total = headerEnd + (int) contentLength;
+        if (length < total) {
+            if (conn.in.capacity() < total) {
+                grow(conn, total);
+            }
+            return;
+        }
+
+        byte[] body = new byte[(int) contentLength];
+        System.arraycopy(data, headerEnd, body, 0, body.length);
+        // Keep pipelined bytes for the next request
+        conn.in.flip();
+        conn.in.position(total);
+        conn.in.compact();
+
+        Request request = new Request(requestLine[0], requestLine[1], body);
+        conn.busy = true;
+        // write() turns reading back on
+        conn.channel.keyFor(selector).interestOps(0);
+        conn.closeAfterWrite = !keepAlive;
+        workers.execute(() -> {
+            byte[] response = handleSafely(request);
+            completions.add(() -> send(conn, response));
+            selector.wakeup();
+        });
+    }
+
+    private void send(Connection conn, byte[] response) {
+        if (!conn.channel.isOpen()) {
+            return;
+        }
+        conn.out = ByteBuffer.wrap(response);
+        try {
+            write(conn);
+        } catch (IOException | CancelledKeyException e) {
+            close(conn);
+        }
+    }
+
+    private void write(Connection conn) throws IOException {
+        conn.channel.write(conn.out);
+        SelectionKey key = conn.channel.keyFor(selector);
+        if (conn.out.hasRemaining()) {
+            key.interestOps(SelectionKey.OP_WRITE);
+            return;
+        }
+        conn.out = null;
+        if (conn.closeAfterWrite) {
+            close(conn);
+            return;
+        }
+        conn.busy = false;
+        key.interestOps(SelectionKey.OP_READ);
+        parseRequest(conn);
+    }
+
+    private void respondAndClose(Connection conn, int status, String message) {
+        conn.busy = true;
+        conn.closeAfterWrite = true;
+        send(conn, response(status, TEXT, message + "\n"));
+    }
+
+    private void close(Connection conn) {
+        try {
+            conn.channel.close();
+        } catch (IOException e) {
+            // Already gone
+        }
+    }
+
+    private byte[] handleSafely(Request request) {
+        try {
+            return handle(request);
+        } catch (RuntimeException e) {
+            return response(500, TEXT, e + "\n");
+        }
+    }
+
+    /**
+     * Handle one request on a worker thread.
+     */
+    private byte[] handle(Request request) {
+        String path = request.target;
+        String query = null;
+        int q = path.indexOf('?');
+        if (q >= 0) {
+            query = path.substring(q + 1);
+            path = path.substring(0, q);
+        }
+        if (path.equals("/clean")) {
+            if (request.method.equals("GET")) {
+                String url = queryParameter(query, "url");
+                if (url == null) {
+                    return response(400, TEXT, "Missing url parameter\n");
+                }
+                String cleaned = CleaningEngines.get().cleanUrl(url, rules.get(), null);
+                byte[] response = response(200, TEXT, cleaned);
+                singleLatency.recordSince(request.startNanos);
+                return response;
+            }
+            if (request.method.equals("POST")) {
+                byte[] response = response(200, TEXT, cleanLines(new String(request.body, UTF_8)));
+                batchLatency.recordSince(request.startNanos);
+                return response;
+            }
+            return response(405, TEXT, "Use GET or POST\n");
+        }
+        if (path.equals("/stats") && request.method.equals("GET")) {
+            return response(200, JSON, statsJson());
+        }
+        return response(404, TEXT, "Not found\n");
+    }
+
+    /**
+     * Clean each line as a URL, keeping line order; empty lines stay empty.
+     */
+    private String cleanLines(String body) {
+        CleaningEngine engine = CleaningEngines.get();
+        CompiledRules rules = this.rules.get(); // One snapshot for the whole batch
+        StringBuilder sb = new StringBuilder(body.length());
+        int start = 0;
+        while (start < body.length()) {
+            int end = body.indexOf('\n', start);
+            if (end < 0) {
+                end = body.length();
+            }
+            String line = body.substring(start, end > start && body.charAt(end - 1) == '\r' ? end - 1 : end);
+            if (!line.isEmpty()) {
+                sb.append(engine.cleanUrl(line, rules, null));
+            }
+            sb.append('\n');
+            start = end + 1;
+        }
+        return sb.toString();
+    }
+
+    private static String queryParameter(String query, String name) {
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                try {
+                    return URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+                } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private String statsJson() {
+        return String.format(Locale.US, "{\"rules\":%d,\"reloads\":%d,\"reloadErrors\":%d,"
+                + "\"single\":%s,\"batch\":%s}\n",
+            rules.get().size(), reloads.get(), reloadErrors.get(),
+            histogramJson(singleLatency), histogramJson(batchLatency));
+    }
+
+    private static String histogramJson(LatencyHistogram h) {
+        return String.format(Locale.US,
+            "{\"count\":%d,\"meanNanos\":%d,\"p50Nanos\":%d,\"p90Nanos\":%d,\"p99Nanos\":%d,\"maxNanos\":%d}",
+            h.getCount(), h.getMeanNanos(), h.getPercentileNanos(0.5), h.getPercentileNanos(0.9),
+            h.getPercentileNanos(0.99), h.getMaxNanos());
+    }
+
+    private static byte[] response(int status, String contentType, String body) {
+        byte[] content = body.getBytes(UTF_8);
+        String reason;
+        switch (status) {
+            case 200: reason = "OK"; break;
+            case 400: reason = "Bad Request"; break;
+            case 404: reason = "Not Found"; break;
+            case 405: reason = "Method Not Allowed"; break;
+            case 411: reason = "Length Required"; break;
+            case 413: reason = "Payload Too Large"; break;
+            case 431: reason = "Request Header Fields Too Large"; break;
+            default: reason = "Internal Server Error"; break;
+        }
+        byte[] header = ("HTTP/1.1 " + status + " " + reason + "\r\n"
+            + "Content-Type: " + contentType + "\r\n"
+            + "Content-Length: " + content.length + "\r\n\r\n").getBytes(ISO_8859_1);
+        byte[] response = new byte[header.length + content.length];
+        System.arraycopy(header, 0, response, 0, header.length);
+        System.arraycopy(content, 0, response, header.length, content.length);
+        return response;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            loop.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdownNow();
+        server.close();
+        selector.close();
+    }
+
+    /**
+     * Serve until killed: CleaningServer rules.json [port]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        CleaningServer server = new CleaningServer(new File(args[0]), port,
+            Runtime.getRuntime().availableProcessors());
+        System.out.println("Cleaning URLs on http://localhost:" + server.getPort() + "/clean");
+        server.loop.join();
+    }
+}
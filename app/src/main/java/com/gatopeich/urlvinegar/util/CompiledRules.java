@@ -0,0 +1,531 @@
+package com.gatopeich.urlvinegar.util;
+
+import com.gatopeich.urlvinegar.data.Transform;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Immutable compiled snapshot of a transform list.
+ * Patterns are compiled once per rule-set content instead of once per call,
+ * and runs of independent parameter-removal rules are detected so they can
+ * be executed cheapest-first without changing the result.
+ * A snapshot edited one rule at a time (withAdded() and friends) shares the compiled
+ * form of every other rule with the one it came from.
+ */
+public class CompiledRules {
+
+    // Re-rank commuting groups after this many executionOrder() calls
+    private static final int ORDER_REFRESH_INTERVAL = 64;
+
+    // "[?&]name=[^&]*" or "[?&](a|b|c)=[^&]*": removes whole parameters by name
+    private static final Pattern PARAM_REMOVAL = Pattern.compile(
+        "\\[\\?&\\](?:\\((?:\\?:)?([^()]+)\\)|([^()|\\[]+|[^()|]*\\[[^\\]]+\\][+*]))=\\[\\^&\\]\\*");
+    private static final Pattern NAME_LITERAL = Pattern.compile("(?:[A-Za-z0-9_\\-]|\\\\\\.)+");
+    private static final Pattern NAME_PREFIXED = Pattern.compile(
+        "((?:[A-Za-z0-9_\\-]|\\\\\\.)*)\\[[A-Za-z0-9_\\-]+\\][+*]");
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static volatile CompiledRules last;
+
+    private final Rule[] rules;
+    private final boolean recordStats;
+    private final int[][] commuteGroups; // contiguous runs of independent removal rules
+    private final int[] listOrder;
+    private final long hash;
+
+    private final AtomicInteger orderCalls = new AtomicInteger();
+    private volatile int[] adaptiveOrder;
+
+    /**
+     * Compiled form of one transform, shared by every snapshot that holds it unchanged.
+     */
+    private static final class Rule {
+        final String name;
+        final String source;
+        final String replacement;
+        final boolean enabled;
+        final Pattern pattern; // null when the pattern is invalid
+        final TransformStats.Entry stats;
+        final List<String> paramNames; // removedParamNames() of a removal rule, else null
+        final long hash;
+
+        Rule(Transform t, Rule previous, boolean recordStats) {
+            name = t.getName();
+            source = t.getPattern();
+            replacement = t.getReplacement();
+            enabled = t.isEnabled();
+            boolean sameSource = previous != null && same(previous.source, source);
+            if (sameSource) {
+                pattern = previous.pattern;
+            } else {
+                Pattern compiled;
+                try {
+                    compiled = Pattern.compile(source);
+                } catch (PatternSyntaxException e) {
+                    // Requirement 9.1: Invalid regex patterns MUST be silently skipped
+                    compiled = null;
+                }
+                pattern = compiled;
+            }
+            if (pattern == null) {
+                stats = null;
+            } else if (previous != null && previous.stats != null && same(previous.name, name)) {
+                stats = previous.stats;
+            } else {
+                stats = recordStats ? TransformStats.get(name) : new TransformStats.Entry();
+            }
+            paramNames = sameSource && same(previous.replacement, replacement) ? previous.paramNames
+                : replacement.isEmpty() ? removedParamNames(source) : null;
+            long h = hashOf(FNV_OFFSET, name);
+            h = hashOf(h, source);
+            h = hashOf(h, replacement);
+            hash = (h ^ (enabled ? 1 : 0)) * FNV_PRIME;
+        }
+
+        boolean sameAs(Transform t) {
+            return t.isEnabled() == enabled && same(t.getPattern(), source)
+                && same(t.getReplacement(), replacement) && same(t.getName(), name);
+        }
+
+        boolean isActive() {
+            return enabled && pattern != null;
+        }
+    }
+
+    private CompiledRules(List<Transform> transforms, boolean recordStats) {
+        this(compile(transforms, recordStats), recordStats);
+    }
+
+    private CompiledRules(Rule[] rules, boolean recordStats) {
+        this.rules = rules;
+        this.recordStats = recordStats;
+        // Combined from per-rule hashes, so a one-rule change rehashes one rule
+        long h = FNV_OFFSET;
+        int count = 0;
+        int[] active = new int[rules.length];
+        for (int i = 0; i < rules.length; i++) {
+            h = (h ^ rules[i].hash) * FNV_PRIME;
+            h ^= h >>> 32;
+            if (rules[i].isActive()) {
+                active[count++] = i;
+            }
+        }
+        hash = h;
+        listOrder = new int[count];
+        System.arraycopy(active, 0, listOrder, 0, count);
+        commuteGroups = findCommuteGroups();
+        adaptiveOrder = listOrder;
+    }
+
+    private static Rule[] compile(List<Transform> transforms, boolean recordStats) {
+        Rule[] rules = new Rule[transforms.size()];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = new Rule(transforms.get(i), null, recordStats);
+        }
+        return rules;
+    }
+
+    /**
+     * Get the compiled snapshot for a transform list.
+     * The last snapshot is reused while the list content is unchanged.
+     */
+    public static CompiledRules of(List<Transform> transforms) {
+        CompiledRules rules = last;
+        if (rules != null && rules.sameContent(transforms)) {
+            return rules;
+        }
+        rules = new CompiledRules(transforms, true);
+        last = rules;
+        return rules;
+    }
+
+    /**
+     * Compile a private snapshot whose runs are not counted in TransformStats,
+     * so benchmarks do not skew the statistics shown to the user.
+     */
+    public static CompiledRules unrecorded(List<Transform> transforms) {
+        return new CompiledRules(transforms, false);
+    }
+
+    /**
+     * Make a snapshot built by delta the one of() returns for its content.
+     */
+    static void publish(CompiledRules rules) {
+        if (rules.recordStats) {
+            last = rules;
+        }
+    }
+
+    /**
+     * Requirement 5.7: Incremental Recompilation
+     * Snapshot with a transform inserted at index; only that transform is compiled.
+     */
+    public CompiledRules withAdded(int index, Transform transform) {
+        Rule[] next = new Rule[rules.length + 1];
+        System.arraycopy(rules, 0, next, 0, index);
+        next[index] = new Rule(transform, null, recordStats);
+        System.arraycopy(rules, index, next, index + 1, rules.length - index);
+        return new CompiledRules(next, recordStats);
+    }
+
+    public CompiledRules withRemoved(int index) {
+        Rule[] next = new Rule[rules.length - 1];
+        System.arraycopy(rules, 0, next, 0, index);
+        System.arraycopy(rules, index + 1, next, index, next.length - index);
+        return new CompiledRules(next, recordStats);
+    }
+
+    /**
+     * Snapshot with the transform at index replaced. Its pattern is only recompiled if
+     * it changed, so enabling or renaming a rule compiles nothing.
+     */
+    public CompiledRules withReplaced(int index, Transform transform) {
+        if (rules[index].sameAs(transform)) {
+            return this;
+        }
+        Rule[] next = rules.clone();
+        next[index] = new Rule(transform, rules[index], recordStats);
+        return new CompiledRules(next, recordStats);
+    }
+
+    /**
+     * Snapshot with the transform at from moved to index to, the others shifting over.
+     */
+    public CompiledRules withMoved(int from, int to) {
+        if (from == to) {
+            return this;
+        }
+        Rule[] next = rules.clone();
+        Rule moved = next[from];
+        if (from < to) {
+            System.arraycopy(next, from + 1, next, from, to - from);
+        } else {
+            System.arraycopy(next, to, next, to + 1, from - to);
+        }
+        next[to] = moved;
+        return new CompiledRules(next, recordStats);
+    }
+
+    /**
+     * 64-bit FNV-1a over the string chars, with a separator so field boundaries count.
+     */
+    private static long hashOf(long h, String s) {
+        if (s != null) {
+            for (int i = 0; i < s.length(); i++) {
+                h = (h ^ s.charAt(i)) * FNV_PRIME;
+            }
+        }
+        return (h ^ 0xFFFF) * FNV_PRIME;
+    }
+
+    private static boolean same(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Whether this snapshot was compiled from a list with the same content.
+     */
+    public boolean sameContent(List<Transform> transforms) {
+        if (transforms.size() != rules.length) {
+            return false;
+        }
+        for (int i = 0; i < rules.length; i++) {
+            if (!rules[i].sameAs(transforms.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        return rules.length;
+    }
+
+    public String getName(int index) {
+        return rules[index].name;
+    }
+
+    /**
+     * 64-bit content hash of the rule set: names, patterns, replacements and enabled flags.
+     */
+    public long contentHash() {
+        return hash;
+    }
+
+    /**
+     * True if the transform is enabled in config and its pattern compiles.
+     */
+    public boolean isActive(int index) {
+        return rules[index].isActive();
+    }
+
+    /**
+     * Check whether the transform's pattern matches, without recording stats.
+     */
+    public boolean matches(int index, String input) {
+        Pattern pattern = rules[index].pattern;
+        return pattern != null && pattern.matcher(input).find();
+    }
+
+    /**
+     * Run a single transform over the input, recording its TransformStats.
+     * Returns the replaced text, or null if the pattern is invalid or does not match.
+     */
+    public String apply(int index, String input) {
+        Rule rule = rules[index];
+        if (rule.pattern == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        Matcher matcher = rule.pattern.matcher(input);
+        String result = matcher.find() ? matcher.replaceAll(rule.replacement) : null;
+        rule.stats.record(result != null, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Count a result served from the ResultCache as one run of each active transform not
+     * in disabledIndices, matching where matched says it did when the result was computed.
+     * Keeps hit counts and the adaptive order true to the inputs seen, cached or not.
+     */
+    public void recordCached(boolean[] matched, Set<Integer> disabledIndices) {
+        for (int index : listOrder) {
+            if (disabledIndices == null || !disabledIndices.contains(index)) {
+                rules[index].stats.recordCached(matched[index]);
+            }
+        }
+    }
+
+    /**
+     * Indices of active transforms in configured order.
+     * Requirement 3.3: attribution steps through transforms in this order.
+     */
+    public int[] listOrder() {
+        return listOrder;
+    }
+
+    /**
+     * Indices of active transforms in execution order.
+     * Order-dependent transforms keep their configured position; within each run of
+     * commuting parameter-removal rules, cheap and frequently matching rules go first.
+     * The final text is identical to running in list order.
+     */
+    public int[] executionOrder() {
+        if (commuteGroups.length == 0) {
+            return listOrder;
+        }
+        if (orderCalls.getAndIncrement() % ORDER_REFRESH_INTERVAL == 0) {
+            adaptiveOrder = rankGroups();
+        }
+        return adaptiveOrder;
+    }
+
+    private int[] rankGroups() {
+        int[] order = listOrder.clone();
+        int pos = 0;
+        for (int[] group : commuteGroups) {
+            while (order[pos] != group[0]) {
+                pos++;
+            }
+            Integer[] ranked = new Integer[group.length];
+            for (int i = 0; i < group.length; i++) {
+                ranked[i] = group[i];
+            }
+            Arrays.sort(ranked, (a, b) -> Double.compare(cost(a), cost(b)));
+            for (int i = 0; i < ranked.length; i++) {
+                order[pos + i] = ranked[i];
+            }
+            pos += group.length;
+        }
+        return order;
+    }
+
+    /**
+     * Expected cost per useful match: mean time divided by (smoothed) hit rate.
+     */
+    private double cost(int index) {
+        TransformStats.Entry entry = rules[index].stats;
+        long evaluations = entry.getEvaluations();
+        if (evaluations == 0) {
+            return 0;
+        }
+        double hitRate = (double) entry.getMatches() / evaluations;
+        return entry.getMeanNanos() / (hitRate + 0.1);
+    }
+
+    /**
+     * Group consecutive active removal rules whose parameter names are pairwise disjoint.
+     * Deleting "[?&]name=value" segments for disjoint names yields the same text in any
+     * order, and each parameter keeps the same removing rule.
+     */
+    private int[][] findCommuteGroups() {
+        List<int[]> groups = new ArrayList<>();
+        List<Integer> current = new ArrayList<>();
+        // Names of the current group's rules, so each rule is checked against all of them
+        // at once: linear time for literal names, even over thousands of rules
+        Set<String> literals = new HashSet<>();
+        List<String> prefixed = new ArrayList<>();
+        for (int index : listOrder) {
+            List<String> paramNames = rules[index].paramNames;
+            if (paramNames == null || !disjoint(paramNames, literals, prefixed)) {
+                addGroup(groups, current);
+                current.clear();
+                literals.clear();
+                prefixed.clear();
+            }
+            if (paramNames != null) {
+                current.add(index);
+                for (String name : paramNames) {
+                    (NAME_LITERAL.matcher(name).matches() ? literals : prefixed).add(name);
+                }
+            }
+        }
+        addGroup(groups, current);
+        return groups.toArray(new int[0][]);
+    }
+
+    /**
+     * Same as disjoint(names, group) with the group's names split into literal and prefixed.
+     */
+    private static boolean disjoint(List<String> names, Set<String> literals, List<String> prefixed) {
+        for (String name : names) {
+            if (NAME_LITERAL.matcher(name).matches()) {
+                if (literals.contains(name)) {
+                    return false;
+                }
+                for (String other : prefixed) {
+                    if (Pattern.matches(other, unescape(name))) return false;
+                }
+            } else {
+                for (String other : literals) {
+                    if (Pattern.matches(name, unescape(other))) return false;
+                }
+                for (String other : prefixed) {
+                    if (!prefixesDiverge(name, other)) return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void addGroup(List<int[]> groups, List<Integer> members) {
+        if (members.size() < 2) {
+            return;
+        }
+        int[] group = new int[members.size()];
+        for (int i = 0; i < group.length; i++) {
+            group[i] = members.get(i);
+        }
+        groups.add(group);
+    }
+
+    /**
+     * Parameter names targeted by a whole-parameter removal pattern, as literal names
+     * or "prefix[class]+" regexes. Returns null for any other kind of pattern.
+     */
+    static List<String> removedParamNames(String pattern) {
+        Matcher m = PARAM_REMOVAL.matcher(pattern);
+        if (!m.matches()) {
+            return null;
+        }
+        String group = m.group(1) != null ? m.group(1) : m.group(2);
+        List<String> names = new ArrayList<>();
+        for (String alt : group.split("\\|", -1)) {
+            boolean literal = NAME_LITERAL.matcher(alt).matches();
+            if (!literal && !(NAME_PREFIXED.matcher(alt).matches() && classExcludesDelimiters(alt))) {
+                return null;
+            }
+            names.add(alt);
+        }
+        return names;
+    }
+
+    /**
+     * Conservative check that no parameter name is targeted by both lists.
+     */
+    static boolean disjoint(List<String> a, List<String> b) {
+        Set<String> literals = new HashSet<>();
+        for (String name : a) {
+            if (NAME_LITERAL.matcher(name).matches()) {
+                literals.add(name);
+            }
+        }
+        for (String other : b) {
+            boolean otherLiteral = NAME_LITERAL.matcher(other).matches();
+            if (otherLiteral && literals.contains(other)) {
+                return false;
+            }
+            for (String name : a) {
+                boolean literal = NAME_LITERAL.matcher(name).matches();
+                if (literal && otherLiteral) {
+                    continue;
+                }
+                if (literal) {
+                    if (Pattern.matches(other, unescape(name))) return false;
+                } else if (otherLiteral) {
+                    if (Pattern.matches(name, unescape(other))) return false;
+                } else if (!prefixesDiverge(name, other)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Conservative check that every parameter name targeted by narrower is also
+     * targeted by broader: the same name, or a literal matched by a prefixed name.
+     */
+    static boolean covers(List<String> broader, List<String> narrower) {
+        for (String name : narrower) {
+            boolean literal = NAME_LITERAL.matcher(name).matches();
+            boolean covered = false;
+            for (String other : broader) {
+                if (other.equals(name) || (literal && !NAME_LITERAL.matcher(other).matches()
+                        && Pattern.matches(other, unescape(name)))) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (!covered) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A name class must not match '?', '&' or '=' (e.g. "[0-z]" does), otherwise a
+     * single name could span parameter boundaries and the rules would not commute.
+     */
+    private static boolean classExcludesDelimiters(String prefixed) {
+        Pattern charClass = Pattern.compile(prefixed.substring(prefixed.indexOf('['), prefixed.length() - 1));
+        return !charClass.matcher("?").matches() && !charClass.matcher("&").matches()
+            && !charClass.matcher("=").matches();
+    }
+
+    private static String unescape(String literal) {
+        return literal.replace("\\.", ".");
+    }
+
+    private static boolean prefixesDiverge(String a, String b) {
+        Matcher ma = NAME_PREFIXED.matcher(a);
+        Matcher mb = NAME_PREFIXED.matcher(b);
+        if (!ma.matches() || !mb.matches()) {
+            return false;
+        }
+        String pa = unescape(ma.group(1));
+        String pb = unescape(mb.group(1));
+        return !pa.startsWith(pb) && !pb.startsWith(pa);
+    }
+}
@@ -0,0 +1,114 @@
+package com.gatopeich.urlvinegar.util;
+
+/**
+ * Requirement 4.7: Delimiter Scanning
+ * Finds the URL delimiters ? # & = and % in one pass over a lookup table, giving a
+ * bitmap with one bit per char. The same pass checks that every char is printable ASCII
+ * legal in a URI, so callers can take a fast path that needs no java.net.URI; the scan
+ * stops early when one is not.
+ */
+public final class DelimiterScanner {
+    private static final byte PLAIN = 0;
+    private static final byte DELIMITER = 1;
+    private static final byte ILLEGAL = 2;
+    private static final byte[] CLASSES = new byte[128];
+
+    static {
+        for (int c = 0; c < 128; c++) {
+            CLASSES[c] = c <= ' ' || c >= 0x7F || "\"<>[\\]^`{|}".indexOf(c) >= 0 ? ILLEGAL
+                : "?#&=%".indexOf(c) >= 0 ? DELIMITER : PLAIN;
+        }
+    }
+
+    /**
+     * Delimiter positions of a scanned string.
+     */
+    public static final class Scan {
+        final String text;
+        final long[] bits;
+        final boolean legal;
+
+        Scan(String text, long[] bits, boolean legal) {
+            this.text = text;
+            this.bits = bits;
+            this.legal = legal;
+        }
+
+        /**
+         * Whether every char is printable ASCII legal in a URI. Only then are the
+         * delimiter bits complete, since the scan stops at the first other char.
+         */
+        public boolean isLegal() {
+            return legal;
+        }
+
+        /**
+         * Index of the first delimiter at or after from, or -1.
+         */
+        public int next(int from) {
+            int word = from >>> 6;
+            if (word >= bits.length) {
+                return -1;
+            }
+            long w = bits[word] & (-1L << from);
+            while (w == 0) {
+                if (++word == bits.length) {
+                    return -1;
+                }
+                w = bits[word];
+            }
+            return (word << 6) + Long.numberOfTrailingZeros(w);
+        }
+
+        /**
+         * Index of the first occurrence of delimiter c at or after from, or -1.
+         */
+        public int next(char c, int from) {
+            int i = next(from);
+            while (i >= 0 && text.charAt(i) != c) {
+                i = next(i + 1);
+            }
+            return i;
+        }
+
+        public long[] getBits() {
+            return bits.clone();
+        }
+    }
+
+    private DelimiterScanner() {
+    }
+
+    /**
+     * Scan one char at a time, up to the first one that is not legal.
+     */
+    public static Scan scan(String s) {
+        int n = s.length();
+        long[] bits = new long[(n + 63) >>> 6];
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            byte type = c < 0x80 ? CLASSES[c] : ILLEGAL;
+            if (type == ILLEGAL) {
+                return new Scan(s, bits, false);
+            }
+            if (type == DELIMITER) {
+                bits[i >>> 6] |= 1L << i;
+            }
+        }
+        return new Scan(s, bits, true);
+    }
+
+    /**
+     * Whether a query component needs no quoting as a URI, besides '%' which
+     * the java.net.URI multi-argument constructors always quote.
+     */
+    static boolean legalInQuery(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80 || CLASSES[c] == ILLEGAL || c == '#') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
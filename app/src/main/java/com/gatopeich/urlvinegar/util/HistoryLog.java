@@ -0,0 +1,357 @@
+package com.gatopeich.urlvinegar.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Requirement 3.9: History Log
+ * Append-only log of processed URLs in a memory-mapped file of fixed size. Records are
+ * length-prefixed and laid out in a ring: when the log is full, the oldest records are
+ * dropped to make room, so appending is a bounded copy into the mapping, with no I/O
+ * call on the caller's thread. Data survives process death; the OS writes it back to
+ * storage on its own schedule.
+ * <p>
+ * Positions are logical byte offsets that only grow; a record at position p starts at
+ * byte p % capacity of the data area and may wrap around its end. The header holds
+ * the positions of the oldest record (head) and of the end of the newest (tail), and
+ * is updated after the data it covers, so a crash never exposes a half-written record.
+ * A file with a bad header or a different capacity is reset.
+ */
+public final class HistoryLog implements Closeable, Iterable<HistoryLog.Record> {
+    public static final int DEFAULT_CAPACITY = 1024 * 1024;
+
+    private static final int MAGIC = 0x55564c47; // "UVLG"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_CAPACITY = 8;
+    private static final int OFFSET_HEAD = 16;
+    private static final int OFFSET_TAIL = 24;
+    private static final int OFFSET_COUNT = 32;
+    private static final int MIN_RECORD_BYTES = 8 + 8 + 4 + 4 + 4; // Times, empty strings, no names
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * One processed input.
+     */
+    public static final class Record {
+        public final long timeMillis;
+        public final long nanos; // Processing time
+        public final String input;
+        public final String output;
+        public final List<String> fired; // Names of the transforms that fired, in order
+
+        public Record(long timeMillis, long nanos, String input, String output, List<String> fired) {
+            this.timeMillis = timeMillis;
+            this.nanos = nanos;
+            this.input = input;
+            this.output = output;
+            this.fired = fired;
+        }
+    }
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer header;
+    private final ByteBuffer data;
+    private final int capacity;
+
+    // Guarded by this
+    private long head;
+    private long tail;
+    private long count;
+    private byte[] scratch = new byte[256];
+
+    private HistoryLog(RandomAccessFile file, MappedByteBuffer map, int capacity) {
+        this.file = file;
+        this.header = map;
+        this.capacity = capacity;
+        map.position(HEADER_BYTES);
+        this.data = map.slice();
+        map.position(0);
+    }
+
+    /**
+     * Open or create a log whose data area holds capacity bytes of records.
+     */
+    public static HistoryLog open(File path, int capacity) throws IOException {
+        if (capacity < 64) {
+            throw new IllegalArgumentException("capacity too small: " + capacity);
+        }
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            MappedByteBuffer map = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_BYTES + (long) capacity);
+            HistoryLog log = new HistoryLog(file, map, capacity);
+            log.readHeader();
+            return log;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private void readHeader() {
+        head = header.getLong(OFFSET_HEAD);
+        tail = header.getLong(OFFSET_TAIL);
+        count = header.getLong(OFFSET_COUNT);
+        if (header.getInt(OFFSET_MAGIC) != MAGIC || header.getInt(OFFSET_VERSION) != VERSION
+                || header.getInt(OFFSET_CAPACITY) != capacity
+                || head < 0 || tail < head || tail - head > capacity || count < 0) {
+            header.putInt(OFFSET_MAGIC, MAGIC);
+            header.putInt(OFFSET_VERSION, VERSION);
+            header.putInt(OFFSET_CAPACITY, capacity);
+            head = 0;
+            tail = 0;
+            count = 0;
+            writeHeader();
+        }
+    }
+
+    private void writeHeader() {
+        header.putLong(OFFSET_HEAD, head);
+        header.putLong(OFFSET_TAIL, tail);
+        header.putLong(OFFSET_COUNT, count);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Records currently held.
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getBytesUsed() {
+        return tail - head;
+    }
+
+    /**
+     * Log one processed input. Returns false, logging nothing, if the record alone is
+     * larger than the log.
+     */
+    public boolean append(String input, String output, List<String> fired, long nanos) {
+        byte[] in = input.getBytes(UTF_8);
+        byte[] out = output.getBytes(UTF_8);
+        byte[][] names = new byte[fired.size()][];
+        int size = MIN_RECORD_BYTES + in.length + out.length;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = fired.get(i).getBytes(UTF_8);
+            size += 4 + names[i].length;
+        }
+        if (4L + size > capacity) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (scratch.length < 4 + size) {
+                scratch = new byte[Math.max(4 + size, 2 * scratch.length)];
+            }
+            ByteBuffer record = ByteBuffer.wrap(scratch);
+            record.putInt(size).putLong(now).putLong(nanos);
+            record.putInt(in.length).put(in);
+            record.putInt(out.length).put(out);
+            record.putInt(names.length);
+            for (byte[] name : names) {
+                record.putInt(name.length).put(name);
+            }
+
+            // Drop the oldest records first, so the header never covers overwritten bytes
+            long end = tail + 4 + size;
+            if (end - head > capacity) {
+                while (end - head > capacity) {
+                    int dropped = readInt(head);
+                    if (dropped < MIN_RECORD_BYTES || head + 4 + dropped > tail) { // Corrupt: drop everything
+                        head = tail;
+                        count = 0;
+                        break;
+                    }
+                    head += 4 + dropped;
+                    count--;
+                }
+                header.putLong(OFFSET_HEAD, head);
+                header.putLong(OFFSET_COUNT, count);
+            }
+            write(tail, scratch, 4 + size);
+            tail = end;
+            count++;
+            writeHeader();
+        }
+        return true;
+    }
+
+    /**
+     * Drop every record.
+     */
+    public synchronized void clear() {
+        head = tail;
+        count = 0;
+        writeHeader();
+    }
+
+    private void write(long position, byte[] bytes, int length) {
+        int offset = (int) (position % capacity);
+        int first = Math.min(length, capacity - offset);
+        data.position(offset);
+        data.put(bytes, 0, first);
+        if (first < length) {
+            data.position(0);
+            data.put(bytes, first, length - first);
+        }
+    }
+
+    private void read(long position, byte[] bytes, int length) {
+        int offset = (int) (position % capacity);
+        int first = Math.min(length, capacity - offset);
+        data.position(offset);
+        data.get(bytes, 0, first);
+        if (first < length) {
+            data.position(0);
+            data.get(bytes, first, length - first);
+        }
+    }
+
+    private int readInt(long position) {
+        byte[] b = new byte[4];
+        read(position, b, 4);
+        return ByteBuffer.wrap(b).getInt();
+    }
+
+    /**
+     * Read the record at position, or null if the log no longer holds it or it is corrupt.
+     * Returns the position of the next record in next[0].
+     */
+    private synchronized Record readRecord(long position, long[] next) {
+        if (position < head) {
+            position = head; // Overwritten while iterating: skip to the oldest left
+        }
+        if (position >= tail) {
+            next[0] = position;
+            return null;
+        }
+        int size = readInt(position);
+        if (size < MIN_RECORD_BYTES || position + 4 + size > tail) {
+            next[0] = tail;
+            return null;
+        }
+        byte[] bytes = new byte[size];
+        read(position + 4, bytes, size);
+        next[0] = position + 4 + size;
+        try {
+            ByteBuffer record = ByteBuffer.wrap(bytes);
+            long timeMillis = record.getLong();
+            long nanos = record.getLong();
+            String input = readString(record);
+            String output = readString(record);
+            int n = record.getInt();
+            List<String> fired = new ArrayList<>(Math.min(n, 16));
+            for (int i = 0; i < n; i++) {
+                fired.add(readString(record));
+            }
+            return new Record(timeMillis, nanos, input, output, Collections.unmodifiableList(fired));
+        } catch (RuntimeException e) {
+            next[0] = tail;
+            return null;
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String s = new String(buffer.array(), buffer.position(), length, UTF_8);
+        buffer.position(buffer.position() + length);
+        return s;
+    }
+
+    /**
+     * Reads records from the oldest to the newest at the time of each call. Appends
+     * while reading are seen; records dropped before the cursor reaches them are skipped.
+     */
+    public final class Cursor implements Iterator<Record> {
+        private long position;
+        private Record pending;
+        private final long[] next = new long[1];
+
+        Cursor(long position) {
+            this.position = position;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (pending == null) {
+                pending = readRecord(position, next);
+                position = next[0];
+            }
+            return pending != null;
+        }
+
+        @Override
+        public Record next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Record record = pending;
+            pending = null;
+            return record;
+        }
+
+        /**
+         * Up to max of the next records; empty when the cursor is at the end.
+         */
+        public List<Record> nextBatch(int max) {
+            List<Record> batch = new ArrayList<>(Math.min(max, 256));
+            while (batch.size() < max && hasNext()) {
+                batch.add(next());
+            }
+            return batch;
+        }
+    }
+
+    /**
+     * Cursor from the oldest record held.
+     */
+    @Override
+    public synchronized Cursor iterator() {
+        return new Cursor(head);
+    }
+
+    /**
+     * Requirement 5.5: the distinct URLs that were shared on their own, oldest first,
+     * to re-run rules against. Inputs with several URLs or none are skipped.
+     */
+    public List<String> inputUrls() {
+        LinkedHashSet<String> urls = new LinkedHashSet<>();
+        Cursor cursor = iterator();
+        for (List<Record> batch = cursor.nextBatch(256); !batch.isEmpty(); batch = cursor.nextBatch(256)) {
+            for (Record record : batch) {
+                String url = UrlProcessor.hasMultipleUrls(record.input)
+                    ? null : UrlProcessor.extractUrl(record.input);
+                if (url != null) {
+                    urls.remove(url); // Most recent use decides the order
+                    urls.add(url);
+                }
+            }
+        }
+        return new ArrayList<>(urls);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
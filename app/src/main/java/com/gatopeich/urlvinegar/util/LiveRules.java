@@ -0,0 +1,92 @@
+package com.gatopeich.urlvinegar.util;
+
+import com.gatopeich.urlvinegar.data.Transform;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Requirement 5.7: Incremental Recompilation
+ * The compiled snapshot of a transform list that keeps changing, like the saved rules or
+ * the CleaningServer rules file. A single-rule change recompiles that rule only; either
+ * way the new snapshot replaces the old one in a single volatile write, so readers on any
+ * thread see the old rules or the new ones, never a mix.
+ */
+public final class LiveRules implements RuleChange.Listener {
+    private volatile CompiledRules current;
+    private List<Transform> transforms; // Copy matching current, guarded by this
+    private int incremental;
+    private int full;
+
+    public LiveRules(List<Transform> transforms) {
+        this.transforms = copyOf(transforms);
+        current = CompiledRules.of(this.transforms);
+    }
+
+    /**
+     * The current snapshot: hold on to it for a consistent view across several calls.
+     */
+    public CompiledRules get() {
+        return current;
+    }
+
+    /**
+     * Switch to a new transform list, recompiling only what changed when it differs from
+     * the current one by a single edit.
+     */
+    public synchronized void update(List<Transform> transforms) {
+        onRulesChanged(RuleChange.between(this.transforms, transforms), transforms);
+    }
+
+    /**
+     * Apply a change from the ConfigRepository feed. The result is checked against the
+     * saved list, and compiled in full when the change does not account for it.
+     */
+    @Override
+    public synchronized void onRulesChanged(RuleChange change, List<Transform> transforms) {
+        CompiledRules rules = current;
+        if (rules.sameContent(transforms)) {
+            return;
+        }
+        CompiledRules next = null;
+        if (change != null && fits(change, rules.size())) {
+            next = change.applyTo(rules);
+            if (!next.sameContent(transforms)) {
+                next = null;
+            }
+        }
+        if (next != null) {
+            incremental++;
+        } else {
+            next = CompiledRules.of(transforms);
+            full++;
+        }
+        this.transforms = copyOf(transforms);
+        CompiledRules.publish(next);
+        current = next;
+    }
+
+    /**
+     * Number of updates made by recompiling one rule, and by recompiling all of them.
+     */
+    public synchronized int getIncrementalUpdates() {
+        return incremental;
+    }
+
+    public synchronized int getFullUpdates() {
+        return full;
+    }
+
+    private static boolean fits(RuleChange change, int size) {
+        int limit = change.kind == RuleChange.Kind.ADD ? size + 1 : size;
+        return change.index >= 0 && change.index < limit && change.toIndex >= 0 && change.toIndex < limit;
+    }
+
+    private static List<Transform> copyOf(List<Transform> transforms) {
+        List<Transform> copy = new ArrayList<>(transforms.size());
+        for (Transform t : transforms) {
+            copy.add(t.copy());
+        }
+        return copy;
+    }
+}
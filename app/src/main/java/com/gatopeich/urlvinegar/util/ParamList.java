@@ -0,0 +1,285 @@
+package com.gatopeich.urlvinegar.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Requirement 4.9: Parameter Lists
+ * Query params held as parallel arrays of offsets into the URL they were parsed from,
+ * with keep flags and indices into a small table of removal reasons. A QueryParam is only
+ * created when get() asks for one, and its value is only cut out of the URL when read,
+ * so URLs are filtered and rebuilt without copying their params.
+ * Once created or added, a QueryParam is the param: its keep flag is the one that counts.
+ * Params added as objects, like those parsed with java.net.URI, are held as they are.
+ * Not thread-safe, like ArrayList; copies share the offsets.
+ */
+public final class ParamList extends AbstractList<UrlProcessor.QueryParam> implements RandomAccess {
+    private static final byte KEEP = 1;
+    private static final int[] NO_INTS = new int[0];
+
+    // Offsets into url; nameStarts[i] is -1 for params added as objects.
+    // The value follows the '=' after the name, if any: see valueStart()
+    final String url;
+    int[] nameStarts;
+    int[] nameEnds;
+    int[] valueEnds;
+    private int[] nameIds;
+    private byte[] flags;
+    private int[] reasons; // Index into reasonNames, or -1; null until some param is removed
+    private String[] reasonNames = new String[0];
+    private UrlProcessor.QueryParam[] rows; // Created on demand
+    private int size;
+    private boolean shared; // Arrays above, besides flags and rows, are shared with a copy
+
+    ParamList(String url, int capacity) {
+        this.url = url;
+        nameStarts = capacity > 0 ? new int[capacity] : NO_INTS;
+        nameEnds = capacity > 0 ? new int[capacity] : NO_INTS;
+        valueEnds = capacity > 0 ? new int[capacity] : NO_INTS;
+        nameIds = capacity > 0 ? new int[capacity] : NO_INTS;
+        flags = new byte[capacity];
+    }
+
+    private ParamList(ParamList other) {
+        url = other.url;
+        nameStarts = other.nameStarts;
+        nameEnds = other.nameEnds;
+        valueEnds = other.valueEnds;
+        nameIds = other.nameIds;
+        reasons = other.reasons;
+        reasonNames = other.reasonNames;
+        flags = Arrays.copyOf(other.flags, other.size);
+        size = other.size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public UrlProcessor.QueryParam get(int i) {
+        checkIndex(i);
+        UrlProcessor.QueryParam row = row(i);
+        if (row == null) {
+            if (rows == null) {
+                rows = new UrlProcessor.QueryParam[nameStarts.length];
+            }
+            int id = nameIds[i];
+            row = new UrlProcessor.QueryParam(id,
+                id == ParamNames.NONE ? url.substring(nameStarts[i], nameEnds[i]) : null,
+                url, valueStart(i), valueEnds[i], (flags[i] & KEEP) != 0, getRemovedBy(i));
+            rows[i] = row;
+        }
+        return row;
+    }
+
+    /**
+     * Params can only be appended.
+     */
+    @Override
+    public void add(int index, UrlProcessor.QueryParam param) {
+        if (index != size) {
+            throw new UnsupportedOperationException("ParamList only appends");
+        }
+        int i = append();
+        nameStarts[i] = -1;
+        if (rows == null) {
+            rows = new UrlProcessor.QueryParam[nameStarts.length];
+        }
+        rows[i] = param;
+    }
+
+    public String getName(int i) {
+        checkIndex(i);
+        UrlProcessor.QueryParam row = row(i);
+        if (row != null) {
+            return row.getName();
+        }
+        int id = nameIds[i];
+        return id != ParamNames.NONE ? ParamNames.name(id) : url.substring(nameStarts[i], nameEnds[i]);
+    }
+
+    public boolean isKept(int i) {
+        checkIndex(i);
+        UrlProcessor.QueryParam row = row(i);
+        return row != null ? row.keep : (flags[i] & KEEP) != 0;
+    }
+
+    public void setKept(int i, boolean keep) {
+        checkIndex(i);
+        UrlProcessor.QueryParam row = row(i);
+        if (row != null) {
+            row.keep = keep;
+        } else {
+            flags[i] = keep ? KEEP : 0;
+        }
+    }
+
+    public String getRemovedBy(int i) {
+        checkIndex(i);
+        UrlProcessor.QueryParam row = row(i);
+        if (row != null) {
+            return row.removedBy;
+        }
+        return reasons != null && reasons[i] >= 0 ? reasonNames[reasons[i]] : null;
+    }
+
+    /**
+     * Whether param i is still offsets only: kept or not as isKept() says, and legal
+     * in a query as it stands, since only well-formed URLs are split into offsets.
+     */
+    boolean isOffsets(int i) {
+        return nameStarts[i] >= 0 && row(i) == null;
+    }
+
+    /**
+     * Start of the value of offsets param i: after the '=' ending its name, or
+     * valueEnds[i] when there is none.
+     */
+    int valueStart(int i) {
+        return nameEnds[i] < valueEnds[i] ? nameEnds[i] + 1 : valueEnds[i];
+    }
+
+    boolean sameName(int i, int j) {
+        int a = nameId(i);
+        int b = nameId(j);
+        return a != ParamNames.NONE && b != ParamNames.NONE ? a == b : getName(i).equals(getName(j));
+    }
+
+    /**
+     * Whether the value of param i is in text at offset.
+     */
+    boolean valueAt(int i, String text, int offset) {
+        UrlProcessor.QueryParam row = row(i);
+        if (row != null) {
+            return text.startsWith(row.getValue(), offset);
+        }
+        int start = valueStart(i);
+        return text.regionMatches(offset, url, start, valueEnds[i] - start);
+    }
+
+    /**
+     * Append a param parsed from url, not kept and not removed. Its value is after the
+     * '=' at nameEnd, if valueEnd is past it.
+     */
+    void addParsed(int nameStart, int nameEnd, int valueEnd, int nameId) {
+        int i = append();
+        nameStarts[i] = nameStart;
+        nameEnds[i] = nameEnd;
+        valueEnds[i] = valueEnd;
+        nameIds[i] = nameId;
+    }
+
+    /**
+     * Append param i of another list of the same url, with its own keep flag and removal reason.
+     */
+    void addFrom(ParamList other, int i, boolean keep, String removedBy) {
+        UrlProcessor.QueryParam row = other.row(i);
+        if (row != null) {
+            add(row.copy(keep, removedBy));
+            return;
+        }
+        addParsed(other.nameStarts[i], other.nameEnds[i], other.valueEnds[i], other.nameIds[i]);
+        int j = size - 1;
+        flags[j] = keep ? KEEP : 0;
+        if (removedBy != null) {
+            if (reasons == null) {
+                reasons = new int[nameStarts.length];
+                Arrays.fill(reasons, -1);
+            }
+            reasons[j] = reasonIndex(removedBy);
+        }
+    }
+
+    /**
+     * Drop the params from size n on.
+     */
+    void truncate(int n) {
+        if (rows != null) {
+            Arrays.fill(rows, n, size, null);
+        }
+        size = n;
+        modCount++;
+    }
+
+    /**
+     * Independent list of the same params: keep flags and created params are copied,
+     * offsets are shared until either list grows.
+     */
+    ParamList copy() {
+        ParamList copy = new ParamList(this);
+        if (rows != null) {
+            copy.rows = new UrlProcessor.QueryParam[size];
+            for (int i = 0; i < size; i++) {
+                UrlProcessor.QueryParam row = rows[i];
+                copy.rows[i] = row != null ? row.copy(row.keep, row.removedBy) : null;
+            }
+        }
+        shared = true;
+        copy.shared = true;
+        return copy;
+    }
+
+    private UrlProcessor.QueryParam row(int i) {
+        return rows != null ? rows[i] : null;
+    }
+
+    private int nameId(int i) {
+        UrlProcessor.QueryParam row = row(i);
+        return row != null ? row.getNameId() : nameIds[i];
+    }
+
+    private int reasonIndex(String removedBy) {
+        for (int r = 0; r < reasonNames.length; r++) {
+            if (reasonNames[r].equals(removedBy)) {
+                return r;
+            }
+        }
+        // Only grown arrays are written, so a copy sharing the old table never sees this
+        reasonNames = Arrays.copyOf(reasonNames, reasonNames.length + 1);
+        reasonNames[reasonNames.length - 1] = removedBy;
+        return reasonNames.length - 1;
+    }
+
+    /**
+     * Make room for one more param and return its index, not kept and not removed.
+     */
+    private int append() {
+        if (size == nameStarts.length || shared) {
+            int capacity = Math.max(size == nameStarts.length ? size * 2 : nameStarts.length, 4);
+            nameStarts = Arrays.copyOf(nameStarts, capacity);
+            nameEnds = Arrays.copyOf(nameEnds, capacity);
+            valueEnds = Arrays.copyOf(valueEnds, capacity);
+            nameIds = Arrays.copyOf(nameIds, capacity);
+            if (reasons != null) {
+                reasons = Arrays.copyOf(reasons, capacity);
+                Arrays.fill(reasons, size, capacity, -1);
+            }
+            shared = false;
+        }
+        if (flags.length < nameStarts.length) {
+            flags = Arrays.copyOf(flags, nameStarts.length);
+        }
+        if (rows != null && rows.length < nameStarts.length) {
+            rows = Arrays.copyOf(rows, nameStarts.length);
+        }
+        int i = size++;
+        if (reasons != null) {
+            reasons[i] = -1;
+        }
+        flags[i] = 0;
+        if (rows != null) {
+            rows[i] = null;
+        }
+        modCount++;
+        return i;
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+    }
+}
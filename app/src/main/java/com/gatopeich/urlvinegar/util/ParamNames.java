@@ -0,0 +1,75 @@
+package com.gatopeich.urlvinegar.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Requirement 4.8: Parameter Names
+ * Bounded, concurrent symbol table of query parameter names. A name seen before is
+ * found straight from the chars of the URL and shared, so parsing a URL allocates no
+ * String for it, and its small integer ID stands for it in comparisons.
+ * The table is open-addressed and never shrinks: an ID is its slot, and stays valid
+ * for the life of the process. Once CAPACITY names are held, or for names longer than
+ * MAX_LENGTH, intern() returns NONE and callers keep their own String.
+ */
+public final class ParamNames {
+    public static final int NONE = -1;
+    public static final int CAPACITY = 4096;
+    public static final int MAX_LENGTH = 64;
+
+    private static final int SLOTS = CAPACITY * 2; // Power of two; at most half full
+    private static final AtomicReferenceArray<String> NAMES = new AtomicReferenceArray<>(SLOTS);
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    private ParamNames() {
+    }
+
+    public static int intern(String name) {
+        return intern(name, 0, name.length());
+    }
+
+    /**
+     * ID of the name in s between start and end, added to the table if new and there is room.
+     */
+    public static int intern(String s, int start, int end) {
+        if (end - start > MAX_LENGTH) {
+            return NONE;
+        }
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        h ^= h >>> 16;
+        for (int probe = 0; probe < SLOTS; probe++) {
+            int slot = (h + probe) & (SLOTS - 1);
+            String name = NAMES.get(slot);
+            if (name == null) {
+                if (COUNT.get() >= CAPACITY) {
+                    return NONE;
+                }
+                String created = s.substring(start, end);
+                if (NAMES.compareAndSet(slot, null, created)) {
+                    COUNT.incrementAndGet();
+                    return slot;
+                }
+                // Another thread took the slot, maybe for this very name
+                name = NAMES.get(slot);
+            }
+            if (name.length() == end - start && s.regionMatches(start, name, 0, name.length())) {
+                return slot;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * The name with a given ID, returned by intern().
+     */
+    public static String name(int id) {
+        return NAMES.get(id);
+    }
+
+    public static int size() {
+        return COUNT.get();
+    }
+}
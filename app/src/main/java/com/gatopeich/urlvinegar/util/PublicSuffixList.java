@@ -0,0 +1,405 @@
+package com.gatopeich.urlvinegar.util;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.IDN;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Public suffix list compiled into a DAFSA (minimized trie) over reversed rules,
+ * for offline registrable-domain (eTLD+1) lookup.
+ *
+ * A host is walked once from its last character to its first, so lookups are
+ * O(host length) and allocate nothing. The compiled list is a bundled resource,
+ * regenerated from https://publicsuffix.org/list/public_suffix_list.dat with:
+ * {@code java PublicSuffixList public_suffix_list.dat public_suffix_list.dafsa}
+ */
+public class PublicSuffixList {
+
+    static final String RESOURCE = "public_suffix_list.dafsa";
+    private static final int MAGIC = 0x50534C31; // "PSL1"
+
+    // Node flags
+    private static final byte RULE = 1;
+    private static final byte EXCEPTION = 2;
+
+    private final byte[] flags;
+    // Node and edge indices fit in a char: the full list has about 16K nodes and 25K edges
+    private final char[] firstEdge; // Edges of node n are firstEdge[n] .. firstEdge[n + 1] - 1
+    private final char[] edgeChars; // Sorted within each node
+    private final char[] edgeTargets;
+
+    private PublicSuffixList(byte[] flags, char[] firstEdge, char[] edgeChars, char[] edgeTargets) {
+        this.flags = flags;
+        this.firstEdge = firstEdge;
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+    }
+
+    private static volatile PublicSuffixList bundled;
+
+    /**
+     * The bundled list, loaded on first use. If it cannot be read, an empty list is
+     * used, so only the implicit "*" rule applies (the TLD is the public suffix).
+     */
+    public static PublicSuffixList getDefault() {
+        PublicSuffixList list = bundled;
+        if (list == null) {
+            synchronized (PublicSuffixList.class) {
+                list = bundled;
+                if (list == null) {
+                    try (InputStream in = PublicSuffixList.class.getResourceAsStream(RESOURCE)) {
+                        list = in != null ? read(in) : compile(new ArrayList<String>());
+                    } catch (IOException e) {
+                        list = compile(new ArrayList<String>());
+                    }
+                    bundled = list;
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Index in host where its public suffix starts, or -1 for an empty host.
+     * Case-insensitive for ASCII; a trailing dot is ignored.
+     */
+    public int publicSuffixStart(CharSequence host) {
+        int end = trimmedEnd(host);
+        if (end == 0) {
+            return -1;
+        }
+        // Implicit "*" rule: the last label
+        int suffix = lastDot(host, end - 1) + 1;
+        int node = 0;
+        int i = end - 1;
+        while (true) {
+            while (i >= 0 && host.charAt(i) != '.') {
+                node = child(node, lower(host.charAt(i)));
+                if (node < 0) {
+                    return suffix;
+                }
+                i--;
+            }
+            // node now spells host[i + 1, end) reversed
+            if ((flags[node] & EXCEPTION) != 0) {
+                // Exception rules exclude their leftmost label
+                return nextDot(host, i + 1, end) + 1;
+            }
+            if ((flags[node] & RULE) != 0) {
+                suffix = i + 1;
+            }
+            if (i < 0) {
+                return suffix;
+            }
+            node = child(node, '.');
+            if (node < 0) {
+                return suffix;
+            }
+            int wildcard = child(node, '*');
+            if (wildcard >= 0 && (flags[wildcard] & RULE) != 0) {
+                suffix = lastDot(host, i - 1) + 1;
+            }
+            i--;
+        }
+    }
+
+    /**
+     * Index in host where its registrable domain (eTLD+1) starts, or -1 when the
+     * host is empty or is itself a public suffix.
+     */
+    public int registrableDomainStart(CharSequence host) {
+        int suffix = publicSuffixStart(host);
+        if (suffix <= 0) {
+            return -1;
+        }
+        return lastDot(host, suffix - 2) + 1;
+    }
+
+    /**
+     * Registrable domain of host (e.g. "bbc.co.uk" for "news.bbc.co.uk"),
+     * or null when the host is empty or is itself a public suffix.
+     */
+    public String registrableDomain(String host) {
+        int start = registrableDomainStart(host);
+        return start >= 0 ? host.substring(start, trimmedEnd(host)) : null;
+    }
+
+    /**
+     * Approximate in-memory size of the compiled arrays, in bytes.
+     */
+    public int getSizeBytes() {
+        return flags.length + 2 * firstEdge.length + 2 * edgeChars.length + 2 * edgeTargets.length;
+    }
+
+    public int getNodeCount() {
+        return flags.length;
+    }
+
+    /**
+     * All rules in the list, in public_suffix_list.dat syntax, punycode forms included.
+     */
+    public List<String> toRules() {
+        List<String> rules = new ArrayList<>();
+        collectRules(0, new StringBuilder(), rules);
+        return rules;
+    }
+
+    private void collectRules(int node, StringBuilder reversed, List<String> rules) {
+        if ((flags[node] & (RULE | EXCEPTION)) != 0) {
+            String rule = new StringBuilder(reversed).reverse().toString();
+            rules.add((flags[node] & EXCEPTION) != 0 ? "!" + rule : rule);
+        }
+        for (int e = firstEdge[node]; e < firstEdge[node + 1]; e++) {
+            reversed.append(edgeChars[e]);
+            collectRules(edgeTargets[e], reversed, rules);
+            reversed.setLength(reversed.length() - 1);
+        }
+    }
+
+    private int child(int node, char c) {
+        int lo = firstEdge[node];
+        int hi = firstEdge[node + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char m = edgeChars[mid];
+            if (m < c) {
+                lo = mid + 1;
+            } else if (m > c) {
+                hi = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return -1;
+    }
+
+    private static char lower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static int trimmedEnd(CharSequence host) {
+        int end = host.length();
+        return end > 0 && host.charAt(end - 1) == '.' ? end - 1 : end;
+    }
+
+    private static int lastDot(CharSequence s, int from) {
+        for (int i = from; i >= 0; i--) {
+            if (s.charAt(i) == '.') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int nextDot(CharSequence s, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (s.charAt(i) == '.') {
+                return i;
+            }
+        }
+        return end - 1;
+    }
+
+    // ---- Compilation ----
+
+    private static final class Node {
+        final TreeMap<Character, Node> children = new TreeMap<>();
+        byte flags;
+        int key = -1; // Unique among canonical nodes
+        int id = -1;
+    }
+
+    /**
+     * Compile rules in public_suffix_list.dat syntax. Comments and blank lines are
+     * skipped; internationalized rules are also added in their punycode form.
+     */
+    public static PublicSuffixList compile(List<String> lines) {
+        Node root = new Node();
+        for (String line : lines) {
+            String rule = line.trim();
+            int space = rule.indexOf(' ');
+            if (space >= 0) {
+                rule = rule.substring(0, space);
+            }
+            if (rule.isEmpty() || rule.startsWith("//")) {
+                continue;
+            }
+            byte flag = RULE;
+            if (rule.startsWith("!")) {
+                flag = EXCEPTION;
+                rule = rule.substring(1);
+            }
+            rule = rule.toLowerCase(java.util.Locale.ROOT);
+            insert(root, rule, flag);
+            String ascii = toAscii(rule);
+            if (!ascii.equals(rule)) {
+                insert(root, ascii, flag);
+            }
+        }
+        return minimize(root);
+    }
+
+    private static void insert(Node root, String rule, byte flag) {
+        Node node = root;
+        for (int i = rule.length() - 1; i >= 0; i--) {
+            Character c = rule.charAt(i);
+            Node next = node.children.get(c);
+            if (next == null) {
+                next = new Node();
+                node.children.put(c, next);
+            }
+            node = next;
+        }
+        node.flags |= flag;
+    }
+
+    private static String toAscii(String rule) {
+        StringBuilder out = new StringBuilder();
+        for (String label : rule.split("\\.")) {
+            if (out.length() > 0) {
+                out.append('.');
+            }
+            out.append(label.equals("*") ? label : IDN.toASCII(label, IDN.ALLOW_UNASSIGNED));
+        }
+        return out.toString().toLowerCase(java.util.Locale.ROOT);
+    }
+
+    /**
+     * Merge equivalent subtrees bottom-up, then number nodes breadth-first from the root.
+     */
+    private static PublicSuffixList minimize(Node root) {
+        Map<String, Node> canonical = new HashMap<>();
+        Node top = canonicalize(root, canonical);
+
+        List<Node> order = new ArrayList<>();
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        top.id = 0;
+        order.add(top);
+        queue.add(top);
+        int edges = 0;
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            for (Node child : node.children.values()) {
+                edges++;
+                if (child.id < 0) {
+                    child.id = order.size();
+                    order.add(child);
+                    queue.add(child);
+                }
+            }
+        }
+
+        if (order.size() > Character.MAX_VALUE || edges > Character.MAX_VALUE) {
+            throw new IllegalStateException("Too many rules: " + order.size() + " nodes, " + edges + " edges");
+        }
+        byte[] flags = new byte[order.size()];
+        char[] firstEdge = new char[order.size() + 1];
+        char[] edgeChars = new char[edges];
+        char[] edgeTargets = new char[edges];
+        int e = 0;
+        for (int n = 0; n < order.size(); n++) {
+            Node node = order.get(n);
+            flags[n] = node.flags;
+            firstEdge[n] = (char) e;
+            for (Map.Entry<Character, Node> edge : node.children.entrySet()) {
+                edgeChars[e] = edge.getKey();
+                edgeTargets[e] = (char) edge.getValue().id;
+                e++;
+            }
+        }
+        firstEdge[order.size()] = (char) e;
+        return new PublicSuffixList(flags, firstEdge, edgeChars, edgeTargets);
+    }
+
+    private static Node canonicalize(Node node, Map<String, Node> canonical) {
+        StringBuilder signature = new StringBuilder().append((char) node.flags);
+        for (Map.Entry<Character, Node> edge : node.children.entrySet()) {
+            Node child = canonicalize(edge.getValue(), canonical);
+            edge.setValue(child);
+            signature.append(edge.getKey()).append(child.key).append(',');
+        }
+        Node existing = canonical.get(signature.toString());
+        if (existing != null) {
+            return existing;
+        }
+        node.key = canonical.size();
+        canonical.put(signature.toString(), node);
+        return node;
+    }
+
+    // ---- Serialization ----
+
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(flags.length);
+        data.writeInt(edgeChars.length);
+        data.write(flags);
+        for (int i = 0; i < flags.length; i++) {
+            // Per-node edge counts are small; the offsets are rebuilt on load
+            data.writeShort(firstEdge[i + 1] - firstEdge[i]);
+        }
+        for (char c : edgeChars) {
+            data.writeChar(c);
+        }
+        for (char target : edgeTargets) {
+            data.writeChar(target);
+        }
+        data.flush();
+    }
+
+    public static PublicSuffixList read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new java.io.BufferedInputStream(in));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a compiled public suffix list");
+        }
+        int nodes = data.readInt();
+        int edges = data.readInt();
+        byte[] flags = new byte[nodes];
+        data.readFully(flags);
+        char[] firstEdge = new char[nodes + 1];
+        for (int i = 0; i < nodes; i++) {
+            firstEdge[i + 1] = (char) (firstEdge[i] + data.readUnsignedShort());
+        }
+        char[] edgeChars = new char[edges];
+        for (int i = 0; i < edges; i++) {
+            edgeChars[i] = data.readChar();
+        }
+        char[] edgeTargets = new char[edges];
+        for (int i = 0; i < edges; i++) {
+            edgeTargets[i] = data.readChar();
+        }
+        return new PublicSuffixList(flags, firstEdge, edgeChars, edgeTargets);
+    }
+
+    /**
+     * Compile a public_suffix_list.dat file into the bundled resource format.
+     */
+    public static void main(String[] args) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(args[0]), "UTF-8"))) {
+            for (String line; (line = reader.readLine()) != null; ) {
+                lines.add(line);
+            }
+        }
+        PublicSuffixList list = compile(lines);
+        try (OutputStream out = new FileOutputStream(args[1])) {
+            list.write(out);
+        }
+        System.out.println(list.getNodeCount() + " nodes, " + list.getSizeBytes() + " bytes");
+    }
+}
@@ -0,0 +1,35 @@
+package com.gatopeich.urlvinegar.util;
+
+/**
+ * Reactive Streams interfaces, shaped exactly like java.util.concurrent.Flow,
+ * which needs API 30 and Java 9. On Java 9+ each maps one-to-one onto its
+ * Flow counterpart, so adapters are trivial wrappers.
+ */
+public final class ReactiveFlow {
+
+    private ReactiveFlow() {
+    }
+
+    public interface Publisher<T> {
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    public interface Subscriber<T> {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    public interface Subscription {
+        void request(long n);
+
+        void cancel();
+    }
+
+    public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+    }
+}
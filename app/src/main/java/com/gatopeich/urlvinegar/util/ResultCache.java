@@ -0,0 +1,137 @@
+package com.gatopeich.urlvinegar.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of URL processing results.
+ * Keys combine the operation, the rule-set content hash and the input text,
+ * so a rule change can never return a stale result; the cache is also cleared
+ * when the rules are saved to free memory early.
+ */
+public class ResultCache {
+
+    /**
+     * Cache key: operation, rule-set content hash, per-call options and input.
+     */
+    public static final class Key {
+        final int op;
+        final long rulesHash;
+        final String options;
+        final String input;
+        private final int hash;
+
+        public Key(int op, long rulesHash, String options, String input) {
+            this.op = op;
+            this.rulesHash = rulesHash;
+            this.options = options;
+            this.input = input;
+            int h = op;
+            h = 31 * h + (int) (rulesHash ^ (rulesHash >>> 32));
+            h = 31 * h + options.hashCode();
+            h = 31 * h + input.hashCode();
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return op == k.op && rulesHash == k.rulesHash
+                && options.equals(k.options) && input.equals(k.input);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final LinkedHashMap<Key, Object> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile boolean enabled = true;
+
+    public ResultCache(final int capacity) {
+        entries = new LinkedHashMap<Key, Object>(capacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turn caching on or off. Disabling also drops all entries.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    /**
+     * Get a cached value, or null on a miss (always null while disabled).
+     */
+    public Object get(Key key) {
+        if (!enabled) {
+            return null;
+        }
+        Object value;
+        synchronized (entries) {
+            value = entries.get(key);
+        }
+        (value != null ? hits : misses).incrementAndGet();
+        return value;
+    }
+
+    public void put(Key key, Object value) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(key, value);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Fraction of lookups served from the cache, 0 when there were none.
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total > 0 ? (double) h / total : 0;
+    }
+
+    public void resetStats() {
+        hits.set(0);
+        misses.set(0);
+    }
+}
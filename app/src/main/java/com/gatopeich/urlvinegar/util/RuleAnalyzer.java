@@ -0,0 +1,182 @@
+package com.gatopeich.urlvinegar.util;
+
+import com.gatopeich.urlvinegar.data.Transform;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Requirement 5.6: Rule Analysis
+ * Flags enabled transforms that only cost time: duplicates of an earlier transform,
+ * transforms shadowed by an earlier one that already removes everything they would,
+ * and transforms that never fire. Shadowing is found statically for parameter-removal
+ * rules, and by replaying a corpus of past URLs through the rules in list order for any
+ * others. Replay needs a corpus of at least MIN_CORPUS URLs, and flagging a rule as
+ * never firing many more: a rule for a site the user seldom shares from may just not
+ * have had its turn. Only isSafeToPrune() findings hold for every URL.
+ * The replay runs unrecorded, so TransformStats are not affected.
+ */
+public final class RuleAnalyzer {
+    public static final int MIN_CORPUS = 50;
+    public static final int MIN_NEVER_FIRES_CORPUS = 1000;
+
+    public enum Kind {
+        DUPLICATE,
+        SHADOWED,
+        NEVER_FIRES
+    }
+
+    public static final class Finding {
+        public final Kind kind;
+        public final int index;
+        public final String name;
+        public final int coveringIndex; // The earlier transform responsible, -1 for NEVER_FIRES
+        public final String coveringName;
+        public final long nanosPerUrl; // Estimated time saved per URL by removing it
+        public final boolean replayed; // Found on the corpus only, not from the patterns
+
+        Finding(Kind kind, int index, String name, int coveringIndex, String coveringName, long nanosPerUrl,
+                boolean replayed) {
+            this.kind = kind;
+            this.index = index;
+            this.name = name;
+            this.coveringIndex = coveringIndex;
+            this.coveringName = coveringName;
+            this.nanosPerUrl = nanosPerUrl;
+            this.replayed = replayed;
+        }
+
+        /**
+         * Whether removing the transform cannot change any output: duplicates, and shadowing
+         * seen in the patterns. Other findings only hold for the URLs replayed.
+         */
+        public boolean isSafeToPrune() {
+            return kind == Kind.DUPLICATE || kind == Kind.SHADOWED && !replayed;
+        }
+    }
+
+    public static final class Report {
+        public final List<Finding> findings; // In list order
+        public final int corpusSize;
+
+        Report(List<Finding> findings, int corpusSize) {
+            this.findings = findings;
+            this.corpusSize = corpusSize;
+        }
+
+        /**
+         * Estimated time saved per URL by removing every flagged transform.
+         */
+        public long getSavedNanosPerUrl() {
+            long total = 0;
+            for (Finding finding : findings) {
+                total += finding.nanosPerUrl;
+            }
+            return total;
+        }
+    }
+
+    private RuleAnalyzer() {
+    }
+
+    public static Report analyze(List<Transform> transforms, List<String> corpus) {
+        CompiledRules rules = CompiledRules.unrecorded(transforms);
+        int n = rules.size();
+        boolean replay = corpus.size() >= MIN_CORPUS;
+        int[] fires = new int[n];
+        int[] rawMatches = new int[n];
+        String[] firstRawMatch = new String[n];
+        long[] nanos = new long[n];
+        if (replay) {
+            for (String url : corpus) {
+                String result = url;
+                for (int i : rules.listOrder()) {
+                    if (fires[i] == 0 && rules.matches(i, url)) {
+                        rawMatches[i]++;
+                        if (firstRawMatch[i] == null) {
+                            firstRawMatch[i] = url;
+                        }
+                    }
+                    long start = System.nanoTime();
+                    String replaced = rules.apply(i, result);
+                    nanos[i] += System.nanoTime() - start;
+                    if (replaced != null) {
+                        fires[i]++;
+                        result = replaced;
+                    }
+                }
+            }
+        }
+
+        List<Finding> findings = new ArrayList<>();
+        List<Integer> kept = new ArrayList<>(); // Earlier active transforms not flagged
+        for (int j : rules.listOrder()) {
+            Transform t = transforms.get(j);
+            List<String> names = t.getReplacement().isEmpty()
+                ? CompiledRules.removedParamNames(t.getPattern()) : null;
+            long cost = replay ? nanos[j] / corpus.size() : meanNanos(rules.getName(j));
+            Finding finding = null;
+            for (int i : kept) {
+                Transform earlier = transforms.get(i);
+                if (earlier.getPattern().equals(t.getPattern()) && earlier.getReplacement().equals(t.getReplacement())
+                        && (names != null || (replay && fires[j] == 0))) {
+                    finding = new Finding(Kind.DUPLICATE, j, rules.getName(j), i, rules.getName(i), cost,
+                        names == null);
+                    break;
+                }
+            }
+            if (finding == null && names != null) {
+                for (int i : kept) {
+                    Transform earlier = transforms.get(i);
+                    List<String> earlierNames = earlier.getReplacement().isEmpty()
+                        ? CompiledRules.removedParamNames(earlier.getPattern()) : null;
+                    if (earlierNames != null && CompiledRules.covers(earlierNames, names)) {
+                        finding = new Finding(Kind.SHADOWED, j, rules.getName(j), i, rules.getName(i), cost, false);
+                        break;
+                    }
+                }
+            }
+            if (finding == null && replay && fires[j] == 0) {
+                int blamed = rawMatches[j] > 0 ? blame(rules, j, firstRawMatch[j]) : -1;
+                if (blamed >= 0) {
+                    finding = new Finding(Kind.SHADOWED, j, rules.getName(j), blamed, rules.getName(blamed),
+                        cost, true);
+                } else if (corpus.size() >= MIN_NEVER_FIRES_CORPUS) {
+                    finding = new Finding(Kind.NEVER_FIRES, j, rules.getName(j), -1, null, cost, true);
+                }
+            }
+            if (finding != null) {
+                findings.add(finding);
+            } else {
+                kept.add(j);
+            }
+        }
+        return new Report(Collections.unmodifiableList(findings), replay ? corpus.size() : 0);
+    }
+
+    /**
+     * The earlier transform after which target stops matching a URL it matched at first.
+     */
+    private static int blame(CompiledRules rules, int target, String url) {
+        String result = url;
+        for (int i : rules.listOrder()) {
+            if (i == target) {
+                break;
+            }
+            String replaced = rules.apply(i, result);
+            if (replaced != null) {
+                result = replaced;
+                if (!rules.matches(target, result)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static long meanNanos(String name) {
+        TransformStats.Entry entry = TransformStats.peek(name);
+        return entry != null ? entry.getMeanNanos() : 0;
+    }
+}
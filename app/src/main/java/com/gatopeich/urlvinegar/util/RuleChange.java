@@ -0,0 +1,138 @@
+package com.gatopeich.urlvinegar.util;
+
+import com.gatopeich.urlvinegar.data.Transform;
+
+import java.util.List;
+
+/**
+ * Requirement 5.7: Incremental Recompilation
+ * One edit to the transform list: a transform added, removed, replaced or moved.
+ * ConfigRepository publishes one per save to its listeners, so compiled rules can be
+ * updated by recompiling that transform alone instead of the whole list.
+ */
+public final class RuleChange {
+
+    public enum Kind {
+        ADD,
+        REMOVE,
+        REPLACE,
+        MOVE
+    }
+
+    /**
+     * Receives each saved transform list, with the change from the previous one.
+     */
+    public interface Listener {
+        /**
+         * @param change The single edit from the previous list, or null when there was
+         *               more than one, or none
+         * @param transforms The saved list, read-only
+         */
+        void onRulesChanged(RuleChange change, List<Transform> transforms);
+    }
+
+    public final Kind kind;
+    public final int index; // Of the transform, or where it moved from
+    public final int toIndex; // Where it moved to, for MOVE; index otherwise
+    public final Transform transform; // Added or replacing, null for REMOVE and MOVE
+
+    private RuleChange(Kind kind, int index, int toIndex, Transform transform) {
+        this.kind = kind;
+        this.index = index;
+        this.toIndex = toIndex;
+        this.transform = transform != null ? transform.copy() : null;
+    }
+
+    public static RuleChange added(int index, Transform transform) {
+        return new RuleChange(Kind.ADD, index, index, transform);
+    }
+
+    public static RuleChange removed(int index) {
+        return new RuleChange(Kind.REMOVE, index, index, null);
+    }
+
+    public static RuleChange replaced(int index, Transform transform) {
+        return new RuleChange(Kind.REPLACE, index, index, transform);
+    }
+
+    public static RuleChange moved(int from, int to) {
+        return new RuleChange(Kind.MOVE, from, to, null);
+    }
+
+    /**
+     * The snapshot with this change made to it.
+     */
+    public CompiledRules applyTo(CompiledRules rules) {
+        switch (kind) {
+            case ADD:
+                return rules.withAdded(index, transform);
+            case REMOVE:
+                return rules.withRemoved(index);
+            case REPLACE:
+                return rules.withReplaced(index, transform);
+            default:
+                return rules.withMoved(index, toIndex);
+        }
+    }
+
+    /**
+     * The single edit that turns before into after, or null when it takes more than one,
+     * or none. Transforms are compared by content.
+     */
+    public static RuleChange between(List<Transform> before, List<Transform> after) {
+        int n = before.size();
+        int first = 0;
+        while (first < n && first < after.size() && same(before.get(first), after.get(first))) {
+            first++;
+        }
+        if (after.size() == n + 1) {
+            return sameRange(before, first, after, first + 1, n - first)
+                ? added(first, after.get(first)) : null;
+        }
+        if (after.size() == n - 1) {
+            return sameRange(before, first + 1, after, first, n - first - 1) ? removed(first) : null;
+        }
+        if (after.size() != n || first == n) {
+            return null;
+        }
+        int last = n - 1;
+        while (same(before.get(last), after.get(last))) {
+            last--;
+        }
+        if (first == last) {
+            return replaced(first, after.get(first));
+        }
+        if (same(before.get(first), after.get(last))
+                && sameRange(before, first + 1, after, first, last - first)) {
+            return moved(first, last);
+        }
+        if (same(before.get(last), after.get(first))
+                && sameRange(before, first, after, first + 1, last - first)) {
+            return moved(last, first);
+        }
+        return null;
+    }
+
+    private static boolean sameRange(List<Transform> a, int aFrom, List<Transform> b, int bFrom, int length) {
+        for (int i = 0; i < length; i++) {
+            if (!same(a.get(aFrom + i), b.get(bFrom + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean same(Transform a, Transform b) {
+        return a.isEnabled() == b.isEnabled() && equal(a.getName(), b.getName())
+            && equal(a.getPattern(), b.getPattern()) && equal(a.getReplacement(), b.getReplacement());
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public String toString() {
+        return kind == Kind.MOVE ? "MOVE " + index + " -> " + toIndex : kind + " " + index;
+    }
+}
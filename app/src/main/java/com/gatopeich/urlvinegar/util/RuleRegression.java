@@ -0,0 +1,143 @@
+package com.gatopeich.urlvinegar.util;
+
+import com.gatopeich.urlvinegar.data.Transform;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Requirement 5.5: Rule Regression
+ * Re-runs a corpus of past inputs through the current and the edited rule sets and
+ * reports which outputs would change. Both rule sets are compiled unrecorded and run
+ * without the result cache, so a regression run leaves statistics and cache alone.
+ * The corpus is cut into slices that run in parallel; cancel() stops them early.
+ */
+public final class RuleRegression {
+    public static final int MAX_SAMPLES = 5;
+    private static final int SLICES_PER_THREAD = 4;
+    private static final int CANCEL_CHECK_INTERVAL = 64;
+
+    /**
+     * One input whose output differs between the rule sets.
+     */
+    public static final class Change {
+        public final String input;
+        public final String before;
+        public final String after;
+
+        Change(String input, String before, String after) {
+            this.input = input;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    public static final class Report {
+        public final int total;
+        public final int checked; // Less than total when cancelled
+        public final int changed;
+        public final List<Change> samples; // First changes in corpus order, up to MAX_SAMPLES
+        public final long elapsedNanos;
+        public final boolean cancelled;
+
+        Report(int total, int checked, int changed, List<Change> samples, long elapsedNanos, boolean cancelled) {
+            this.total = total;
+            this.checked = checked;
+            this.changed = changed;
+            this.samples = samples;
+            this.elapsedNanos = elapsedNanos;
+            this.cancelled = cancelled;
+        }
+    }
+
+    private final CompiledRules before;
+    private final CompiledRules after;
+    private final List<String> corpus;
+    private volatile boolean cancelled;
+
+    public RuleRegression(List<Transform> before, List<Transform> after, List<String> corpus) {
+        this.before = CompiledRules.unrecorded(before);
+        this.after = CompiledRules.unrecorded(after);
+        this.corpus = corpus;
+    }
+
+    /**
+     * Stop comparing. run() then returns the partial report, marked cancelled.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private static final class Slice {
+        int checked;
+        int changed;
+        final List<Change> samples = new ArrayList<>();
+    }
+
+    private Slice compare(int from, int to) {
+        Slice slice = new Slice();
+        for (int i = from; i < to; i++) {
+            if ((i - from) % CANCEL_CHECK_INTERVAL == 0 && cancelled) {
+                break;
+            }
+            String input = corpus.get(i);
+            String expected = UrlProcessor.cleanUrl(input, before, null, false);
+            String actual = UrlProcessor.cleanUrl(input, after, null, false);
+            slice.checked++;
+            if (!expected.equals(actual)) {
+                slice.changed++;
+                if (slice.samples.size() < MAX_SAMPLES) {
+                    slice.samples.add(new Change(input, expected, actual));
+                }
+            }
+        }
+        return slice;
+    }
+
+    /**
+     * Compare the whole corpus on the executor, blocking until done or cancelled.
+     * Must not be called from a thread of the same executor.
+     */
+    public Report run(ExecutorService executor, int parallelism) {
+        long start = System.nanoTime();
+        int n = corpus.size();
+        int sliceSize = Math.max(CANCEL_CHECK_INTERVAL, (n + parallelism * SLICES_PER_THREAD - 1)
+            / (parallelism * SLICES_PER_THREAD));
+        List<Future<Slice>> futures = new ArrayList<>();
+        for (int from = 0; from < n; from += sliceSize) {
+            int sliceStart = from;
+            int sliceEnd = Math.min(n, from + sliceSize);
+            futures.add(executor.submit(() -> compare(sliceStart, sliceEnd)));
+        }
+        int checked = 0;
+        int changed = 0;
+        List<Change> samples = new ArrayList<>();
+        for (Future<Slice> future : futures) {
+            try {
+                Slice slice = future.get();
+                checked += slice.checked;
+                changed += slice.changed;
+                for (Change change : slice.samples) {
+                    if (samples.size() < MAX_SAMPLES) {
+                        samples.add(change);
+                    }
+                }
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return new Report(n, checked, changed, Collections.unmodifiableList(samples),
+            System.nanoTime() - start, cancelled);
+    }
+}
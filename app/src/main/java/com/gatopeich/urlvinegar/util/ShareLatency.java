@@ -0,0 +1,22 @@
+package com.gatopeich.urlvinegar.util;
+
+/**
+ * Time from receiving a shared URL until the user can share it on, per path:
+ * the instant path measures up to firing the chooser (or PROCESS_TEXT result),
+ * the dialog path up to the first frame of the processing dialog.
+ */
+public class ShareLatency {
+
+    public static final TransformStats.Entry INSTANT = new TransformStats.Entry();
+    public static final TransformStats.Entry DIALOG = new TransformStats.Entry();
+
+    private ShareLatency() {}
+
+    public static void recordInstant(long startNanos) {
+        INSTANT.record(true, System.nanoTime() - startNanos);
+    }
+
+    public static void recordDialog(long startNanos) {
+        DIALOG.record(true, System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,151 @@
+package com.gatopeich.urlvinegar.util;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Requirement 7.5: Performance Diagnostics
+ * Lightweight span instrumentation. Each named span feeds an in-process
+ * LatencyHistogram, the latest MAX_EVENTS spans are kept for Chrome-trace export,
+ * and synchronous spans also open a section of the installed Tracer (android.os.Trace
+ * on devices, so they show in systrace and Perfetto). Recording does not allocate
+ * nor lock; events in the ring are written without synchronization, so an export
+ * racing with heavy recording may show a few mixed-up events.
+ * Only the UI records spans: UrlProcessor also serves the server, the provider and
+ * regression runs, whose volume would flood the ring and skew the histograms.
+ */
+public final class Spans {
+    public static final String FIRST_DRAW = "ProcessingActivity.firstDraw";
+    public static final String PROCESS_URL = "ProcessingActivity.processUrl";
+    public static final String TIME_TO_SHARE = "ProcessingActivity.timeToShare";
+    public static final String LOAD_TRANSFORMS = "ConfigRepository.loadTransforms";
+
+    public static final int MAX_EVENTS = 4096; // Power of two
+
+    /**
+     * Receives synchronous span boundaries, properly nested per thread.
+     */
+    public interface Tracer {
+        void beginSection(String name);
+
+        void endSection();
+    }
+
+    private static final Tracer NO_TRACER = new Tracer() {
+        @Override
+        public void beginSection(String name) {
+        }
+
+        @Override
+        public void endSection() {
+        }
+    };
+
+    private static volatile Tracer tracer = NO_TRACER;
+    private static final ConcurrentMap<String, LatencyHistogram> HISTOGRAMS = new ConcurrentHashMap<>();
+
+    // Ring of the latest events, indexed by sequence number modulo MAX_EVENTS
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private static final String[] EVENT_NAMES = new String[MAX_EVENTS];
+    private static final long[] EVENT_STARTS = new long[MAX_EVENTS];
+    private static final long[] EVENT_DURATIONS = new long[MAX_EVENTS];
+    private static final long[] EVENT_THREADS = new long[MAX_EVENTS];
+
+    private Spans() {
+    }
+
+    public static void setTracer(Tracer t) {
+        tracer = t != null ? t : NO_TRACER;
+    }
+
+    /**
+     * Open a synchronous span; close it with end() on the same thread, in a finally block.
+     * Returns the start time to pass to end().
+     */
+    public static long begin(String name) {
+        tracer.beginSection(name);
+        return System.nanoTime();
+    }
+
+    public static void end(String name, long startNanos) {
+        long now = System.nanoTime();
+        tracer.endSection();
+        record(name, startNanos, now);
+    }
+
+    /**
+     * Record a span measured by the caller, possibly across threads or callbacks.
+     * It has no Tracer section.
+     */
+    public static void record(String name, long startNanos, long endNanos) {
+        long duration = endNanos - startNanos;
+        histogram(name).record(duration);
+        int slot = (int) (SEQUENCE.getAndIncrement() & (MAX_EVENTS - 1));
+        EVENT_NAMES[slot] = name;
+        EVENT_STARTS[slot] = startNanos;
+        EVENT_DURATIONS[slot] = duration;
+        EVENT_THREADS[slot] = Thread.currentThread().getId();
+    }
+
+    public static LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = HISTOGRAMS.get(name);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = HISTOGRAMS.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Histograms of every span recorded so far, by name.
+     */
+    public static Map<String, LatencyHistogram> snapshot() {
+        return new TreeMap<>(HISTOGRAMS);
+    }
+
+    public static void clear() {
+        for (LatencyHistogram histogram : HISTOGRAMS.values()) {
+            histogram.clear();
+        }
+        for (int i = 0; i < MAX_EVENTS; i++) {
+            EVENT_NAMES[i] = null;
+        }
+    }
+
+    /**
+     * Latest spans in Chrome trace event format (chrome://tracing, Perfetto UI),
+     * as complete ("X") events with microsecond timestamps.
+     */
+    public static String chromeTraceJson() {
+        long end = SEQUENCE.get();
+        long start = Math.max(0, end - MAX_EVENTS);
+        StringBuilder sb = new StringBuilder(64 + (int) (end - start) * 96);
+        sb.append("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[");
+        boolean first = true;
+        for (long seq = start; seq < end; seq++) {
+            int slot = (int) (seq & (MAX_EVENTS - 1));
+            String name = EVENT_NAMES[slot];
+            if (name == null) {
+                continue;
+            }
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append("{\"name\":");
+            TransformJson.quote(sb, name);
+            sb.append(",\"cat\":\"urlvinegar\",\"ph\":\"X\",\"pid\":1,\"tid\":").append(EVENT_THREADS[slot])
+                .append(",\"ts\":").append(String.format(Locale.US, "%.3f", EVENT_STARTS[slot] / 1000.0))
+                .append(",\"dur\":").append(String.format(Locale.US, "%.3f", EVENT_DURATIONS[slot] / 1000.0))
+                .append('}');
+        }
+        return sb.append("]}\n").toString();
+    }
+}
@@ -0,0 +1,185 @@
+package com.gatopeich.urlvinegar.util;
+
+import com.gatopeich.urlvinegar.data.Transform;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Cleans every URL in a UTF-8 text stream, chunk by chunk, with bounded memory.
+ * Used for shared text files (ACTION_SEND with EXTRA_STREAM) of any size.
+ *
+ * Chunks are cut after the last character that cannot belong to a URL, so links
+ * are never split across chunks unless one is longer than MAX_CARRY_CHARS.
+ */
+public class StreamCleaner {
+
+    /**
+     * Progress callback, invoked after each chunk from the cleaning thread.
+     */
+    public interface ProgressListener {
+        void onProgress(long bytesRead, long urlsCleaned);
+    }
+
+    public static final int DEFAULT_CHUNK_BYTES = 64 * 1024;
+    // Longest unterminated tail carried to the next chunk; longer URLs get split
+    static final int MAX_CARRY_CHARS = 16 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final List<Transform> transforms;
+    private final Set<Integer> disabledIndices;
+    private final int chunkBytes;
+
+    private long bytesRead;
+    private long urlsCleaned;
+    private volatile boolean cancelled;
+
+    public StreamCleaner(List<Transform> transforms, Set<Integer> disabledIndices) {
+        this(transforms, disabledIndices, DEFAULT_CHUNK_BYTES);
+    }
+
+    public StreamCleaner(List<Transform> transforms, Set<Integer> disabledIndices, int chunkBytes) {
+        this.transforms = transforms;
+        this.disabledIndices = disabledIndices;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * Stop cleaning after the current chunk. clean() then returns early.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getUrlsCleaned() {
+        return urlsCleaned;
+    }
+
+    /**
+     * Upper bound of buffered chars, independent of the stream size.
+     */
+    public int getBufferCapacityChars() {
+        return chunkBytes + MAX_CARRY_CHARS;
+    }
+
+    /**
+     * Read all of in, write the cleaned text to out. Malformed UTF-8 is replaced.
+     * Neither channel is closed.
+     */
+    public void clean(ReadableByteChannel in, WritableByteChannel out, ProgressListener listener)
+            throws IOException {
+        CharsetDecoder decoder = UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharsetEncoder encoder = UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(chunkBytes);
+        CharBuffer chars = CharBuffer.allocate(getBufferCapacityChars());
+        ByteBuffer outBytes = ByteBuffer.allocate(chunkBytes);
+        StringBuilder cleaned = new StringBuilder(getBufferCapacityChars());
+
+        boolean eof = false;
+        while (!cancelled) {
+            if (!eof) {
+                int n = in.read(bytes);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    bytesRead += n;
+                }
+            }
+            bytes.flip();
+            CoderResult result = decoder.decode(bytes, chars, eof);
+            bytes.compact();
+            boolean done = eof && result.isUnderflow() && bytes.position() == 0;
+            if (done) {
+                decoder.flush(chars);
+            }
+
+            chars.flip();
+            int limit = done ? chars.limit() : safeBoundary(chars);
+            cleaned.setLength(0);
+            urlsCleaned += UrlProcessor.cleanTextInto(
+                chars.subSequence(0, limit), transforms, disabledIndices, cleaned);
+            chars.position(limit);
+            chars.compact();
+
+            write(encoder, CharBuffer.wrap(cleaned), outBytes, out, done);
+            if (listener != null) {
+                listener.onProgress(bytesRead, urlsCleaned);
+            }
+            if (done) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * End of the last complete non-URL run in the buffer: everything after it is carried
+     * over, unless that would exceed MAX_CARRY_CHARS.
+     */
+    private static int safeBoundary(CharBuffer chars) {
+        int end = chars.limit();
+        int floor = Math.max(0, end - MAX_CARRY_CHARS);
+        for (int i = end - 1; i >= floor; i--) {
+            char c = chars.get(i);
+            // Never cut inside a surrogate pair
+            if (!isUrlChar(c) && !Character.isHighSurrogate(c)) {
+                return i + 1;
+            }
+        }
+        if (floor == 0) {
+            // Whole buffer may still be a URL prefix: carry it all
+            return 0;
+        }
+        return Character.isHighSurrogate(chars.get(end - 1)) ? end - 1 : end;
+    }
+
+    /**
+     * Characters accepted inside a URL by UrlProcessor's URL pattern.
+     */
+    private static boolean isUrlChar(char c) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+            return true;
+        }
+        return "_-.~:/?#[]@!$&'()*+,;=%".indexOf(c) >= 0;
+    }
+
+    private static void write(CharsetEncoder encoder, CharBuffer src, ByteBuffer outBytes,
+            WritableByteChannel out, boolean endOfInput) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(src, outBytes, endOfInput);
+            if (result.isUnderflow() && endOfInput) {
+                result = encoder.flush(outBytes);
+            }
+            outBytes.flip();
+            while (outBytes.hasRemaining()) {
+                out.write(outBytes);
+            }
+            outBytes.clear();
+            if (result.isUnderflow()) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.gatopeich.urlvinegar.util;
+
+import com.gatopeich.urlvinegar.data.Transform;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transform lists in ConfigRepository's JSON format, without org.json so rule files
+ * can also be used off Android:
+ * [{"name": "...", "pattern": "...", "replacement": "...", "enabled": true}, ...]
+ * As in ConfigRepository, replacement defaults to "" and enabled to true; other keys are ignored.
+ */
+public final class TransformJson {
+
+    private final String json;
+    private int pos;
+
+    private TransformJson(String json) {
+        this.json = json;
+    }
+
+    public static List<Transform> parse(String json) throws IOException {
+        TransformJson parser = new TransformJson(json);
+        List<Transform> transforms = new ArrayList<>();
+        parser.expect('[');
+        if (!parser.consume(']')) {
+            do {
+                transforms.add(parser.readTransform());
+            } while (parser.consume(','));
+            parser.expect(']');
+        }
+        parser.skipWhitespace();
+        if (parser.pos < json.length()) {
+            throw parser.error("Trailing data");
+        }
+        return transforms;
+    }
+
+    public static String toJson(List<Transform> transforms) {
+        StringBuilder sb = new StringBuilder("[");
+        for (Transform t : transforms) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append("{\"name\":");
+            quote(sb, t.getName());
+            sb.append(",\"pattern\":");
+            quote(sb, t.getPattern());
+            sb.append(",\"replacement\":");
+            quote(sb, t.getReplacement());
+            sb.append(",\"enabled\":").append(t.isEnabled()).append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    static void quote(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    private Transform readTransform() throws IOException {
+        String name = null;
+        String pattern = null;
+        String replacement = "";
+        boolean enabled = true;
+        expect('{');
+        if (!consume('}')) {
+            do {
+                String key = readString();
+                expect(':');
+                if (key.equals("name")) {
+                    name = readString();
+                } else if (key.equals("pattern")) {
+                    pattern = readString();
+                } else if (key.equals("replacement")) {
+                    replacement = readString();
+                } else if (key.equals("enabled")) {
+                    enabled = readBoolean();
+                } else {
+                    skipValue();
+                }
+            } while (consume(','));
+            expect('}');
+        }
+        if (name == null || pattern == null) {
+            throw error("Transform without name or pattern");
+        }
+        return new Transform(name, pattern, replacement, enabled);
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        StringBuilder sb = new StringBuilder();
+        while (pos < json.length()) {
+            char c = json.charAt(pos++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos >= json.length()) {
+                break;
+            }
+            char e = json.charAt(pos++);
+            switch (e) {
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    if (pos + 4 > json.length()) {
+                        throw error("Bad unicode escape");
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException ex) {
+                        throw error("Bad unicode escape");
+                    }
+                    pos += 4;
+                    break;
+                default: sb.append(e); // \" \\ \/
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private boolean readBoolean() throws IOException {
+        skipWhitespace();
+        if (json.startsWith("true", pos)) {
+            pos += 4;
+            return true;
+        }
+        if (json.startsWith("false", pos)) {
+            pos += 5;
+            return false;
+        }
+        throw error("Expected boolean");
+    }
+
+    /**
+     * Skip a value of any type for keys this format does not use.
+     */
+    private void skipValue() throws IOException {
+        skipWhitespace();
+        if (pos >= json.length()) {
+            throw error("Expected value");
+        }
+        char c = json.charAt(pos);
+        if (c == '"') {
+            readString();
+        } else if (c == '[' || c == '{') {
+            char close = c == '[' ? ']' : '}';
+            pos++;
+            if (!consume(close)) {
+                do {
+                    if (close == '}') {
+                        readString();
+                        expect(':');
+                    }
+                    skipValue();
+                } while (consume(','));
+                expect(close);
+            }
+        } else {
+            // Number, boolean or null
+            int start = pos;
+            while (pos < json.length() && ",]} \t\r\n".indexOf(json.charAt(pos)) < 0) {
+                pos++;
+            }
+            if (pos == start) {
+                throw error("Expected value");
+            }
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < json.length() && " \t\r\n".indexOf(json.charAt(pos)) >= 0) {
+            pos++;
+        }
+    }
+
+    private boolean consume(char c) {
+        skipWhitespace();
+        if (pos < json.length() && json.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) throws IOException {
+        if (!consume(c)) {
+            throw error("Expected '" + c + "'");
+        }
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " at offset " + pos);
+    }
+}
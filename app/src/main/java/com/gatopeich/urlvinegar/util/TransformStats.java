@@ -0,0 +1,162 @@
+package com.gatopeich.urlvinegar.util;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-transform execution statistics, recorded by UrlProcessor on every transform run.
+ * Keyed by transform name, the same identity used for QueryParam.removedBy attribution.
+ * Counters are lock-free so recording never blocks the processing path.
+ * Results served from the ResultCache count as evaluations, with the match they had when
+ * computed, but are not timed: latencies are those of real runs only.
+ */
+public class TransformStats {
+
+    /**
+     * Counters for a single transform.
+     */
+    public static class Entry {
+        private final AtomicLong evaluations = new AtomicLong();
+        private final AtomicLong matches = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLong cachedEvaluations = new AtomicLong();
+
+        void record(boolean matched, long nanos) {
+            evaluations.incrementAndGet();
+            if (matched) {
+                matches.incrementAndGet();
+            }
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        /**
+         * Count a run served from the ResultCache, which takes no time of its own.
+         */
+        void recordCached(boolean matched) {
+            cachedEvaluations.incrementAndGet();
+            evaluations.incrementAndGet();
+            if (matched) {
+                matches.incrementAndGet();
+            }
+        }
+
+        void clear() {
+            cachedEvaluations.set(0);
+            evaluations.set(0);
+            matches.set(0);
+            totalNanos.set(0);
+            maxNanos.set(0);
+        }
+
+        /**
+         * Add previously persisted counters to this entry.
+         */
+        public void restore(long evaluations, long matches, long totalNanos, long maxNanos) {
+            restore(evaluations, matches, totalNanos, maxNanos, 0);
+        }
+
+        public void restore(long evaluations, long matches, long totalNanos, long maxNanos,
+                long cachedEvaluations) {
+            this.cachedEvaluations.addAndGet(cachedEvaluations);
+            this.evaluations.addAndGet(evaluations);
+            this.matches.addAndGet(matches);
+            this.totalNanos.addAndGet(totalNanos);
+            long max = this.maxNanos.get();
+            while (maxNanos > max && !this.maxNanos.compareAndSet(max, maxNanos)) {
+                max = this.maxNanos.get();
+            }
+        }
+
+        public long getEvaluations() {
+            return evaluations.get();
+        }
+
+        public long getMatches() {
+            return matches.get();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        /**
+         * Evaluations served from the ResultCache, included in getEvaluations().
+         */
+        public long getCachedEvaluations() {
+            return cachedEvaluations.get();
+        }
+
+        /**
+         * Mean time of the evaluations that actually ran.
+         */
+        public long getMeanNanos() {
+            long count = evaluations.get() - cachedEvaluations.get();
+            return count > 0 ? totalNanos.get() / count : 0;
+        }
+    }
+
+    private static final ConcurrentHashMap<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    private TransformStats() {}
+
+    /**
+     * Get the entry for a transform name, creating it on first use.
+     */
+    public static Entry get(String name) {
+        Entry entry = ENTRIES.get(name);
+        if (entry == null) {
+            Entry created = new Entry();
+            entry = ENTRIES.putIfAbsent(name, created);
+            if (entry == null) {
+                entry = created;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Get the entry for a transform name, or null if it has never run.
+     */
+    public static Entry peek(String name) {
+        return ENTRIES.get(name);
+    }
+
+    /**
+     * Copy of all entries, for persistence.
+     */
+    public static Map<String, Entry> snapshot() {
+        return new LinkedHashMap<>(ENTRIES);
+    }
+
+    /**
+     * Forget all recorded statistics.
+     * Entries are zeroed in place since compiled rule snapshots hold references to them.
+     */
+    public static void reset() {
+        for (Entry entry : ENTRIES.values()) {
+            entry.clear();
+        }
+    }
+
+    /**
+     * Format a duration in nanoseconds for display (µs below 1 ms, ms above).
+     */
+    public static String formatNanos(long nanos) {
+        if (nanos < 1_000_000L) {
+            return String.format(Locale.US, "%.1f \u00b5s", nanos / 1_000.0);
+        }
+        return String.format(Locale.US, "%.1f ms", nanos / 1_000_000.0);
+    }
+}
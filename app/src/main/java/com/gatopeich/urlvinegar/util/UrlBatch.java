@@ -0,0 +1,89 @@
+package com.gatopeich.urlvinegar.util;
+
+import com.gatopeich.urlvinegar.data.Transform;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Requirement 2.4: Batch Cleaning API
+ * Cleans batches of URLs for other apps and splits large batches into chunks
+ * that fit a single Binder transaction.
+ */
+public final class UrlBatch {
+
+    /**
+     * Parcel budget per call, for the request and for the reply. The Binder buffer
+     * is 1 MB per process, shared by every transaction in flight.
+     */
+    public static final int MAX_BATCH_BYTES = 256 * 1024;
+
+    private UrlBatch() {
+    }
+
+    /**
+     * Bytes a string takes in a Parcel: length, UTF-16 chars plus terminator, padded to 4.
+     */
+    public static int parcelSize(String s) {
+        if (s == null) {
+            return 4;
+        }
+        return 4 + ((2 * (s.length() + 1) + 3) & ~3);
+    }
+
+    /**
+     * Bytes a string array takes in a Parcel: length, then each string.
+     */
+    public static long parcelSize(String[] strings) {
+        long size = 4;
+        for (String s : strings) {
+            size += parcelSize(s);
+        }
+        return size;
+    }
+
+    /**
+     * Split URLs, in order, into chunks of at most maxBytes parcel size each.
+     * A URL larger than maxBytes on its own gets a chunk of its own.
+     */
+    public static List<String[]> split(List<String> urls, int maxBytes) {
+        List<String[]> chunks = new ArrayList<>();
+        int start = 0;
+        long size = 4;
+        for (int i = 0; i < urls.size(); i++) {
+            int urlSize = parcelSize(urls.get(i));
+            if (i > start && size + urlSize > maxBytes) {
+                chunks.add(urls.subList(start, i).toArray(new String[0]));
+                start = i;
+                size = 4;
+            }
+            size += urlSize;
+        }
+        if (start < urls.size()) {
+            chunks.add(urls.subList(start, urls.size()).toArray(new String[0]));
+        }
+        return chunks;
+    }
+
+    /**
+     * Clean each URL as the processing dialog does by default, with the configured engine.
+     * All URLs use the one compiled snapshot of the transforms; null entries stay null.
+     */
+    public static String[] clean(String[] urls, List<Transform> transforms) {
+        return clean(urls, CompiledRules.of(transforms));
+    }
+
+    /**
+     * Same as above with a compiled snapshot, like ConfigRepository.getCompiledRules().
+     */
+    public static String[] clean(String[] urls, CompiledRules rules) {
+        CleaningEngine engine = CleaningEngines.get();
+        String[] cleaned = new String[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            if (urls[i] != null) {
+                cleaned[i] = engine.cleanUrl(urls[i], rules, null);
+            }
+        }
+        return cleaned;
+    }
+}
@@ -4,12 +4,15 @@ import com.gatopeich.urlvinegar.data.Transform;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -47,24 +50,111 @@ public class UrlProcessor {
      * Represents a query parameter with its name and value.
      */
     public static class QueryParam {
-        public final String name;
-        public final String value;
+        private final int nameId; // Requirement 4.8: ParamNames ID, or NONE with the name below
+        private final String name;
+        private String value; // Requirement 4.9: cut from source on first read when null
+        private final String source;
+        private final int valueStart;
+        private final int valueEnd;
         public boolean keep;
         public String removedBy; // Name of transform that removed this param (null if kept)
 
         public QueryParam(String name, String value, boolean keep) {
-            this.name = name;
-            this.value = value;
-            this.keep = keep;
-            this.removedBy = null;
+            this(name, value, keep, null);
         }
 
         public QueryParam(String name, String value, boolean keep, String removedBy) {
-            this.name = name;
+            this(ParamNames.intern(name), name, value, null, 0, 0, keep, removedBy);
+        }
+
+        /**
+         * Param of a ParamList, with its value between valueStart and valueEnd of source.
+         */
+        QueryParam(int nameId, String name, String source, int valueStart, int valueEnd,
+                boolean keep, String removedBy) {
+            this(nameId, name, null, source, valueStart, valueEnd, keep, removedBy);
+        }
+
+        private QueryParam(int nameId, String name, String value, String source, int valueStart, int valueEnd,
+                boolean keep, String removedBy) {
+            this.nameId = nameId;
+            this.name = nameId == ParamNames.NONE ? name : null;
             this.value = value;
+            this.source = source;
+            this.valueStart = valueStart;
+            this.valueEnd = valueEnd;
             this.keep = keep;
             this.removedBy = removedBy;
         }
+
+        public String getName() {
+            return name != null ? name : ParamNames.name(nameId);
+        }
+
+        public String getValue() {
+            String v = value;
+            if (v == null && source != null) {
+                v = source.substring(valueStart, valueEnd);
+                value = v;
+            }
+            return v;
+        }
+
+        /**
+         * Same as getValue().equals(other.getValue()), without creating either value.
+         */
+        public boolean sameValue(QueryParam other) {
+            if (source == null || other.source == null) {
+                String v = getValue();
+                return v != null ? v.equals(other.getValue()) : other.getValue() == null;
+            }
+            int length = valueEnd - valueStart;
+            return length == other.valueEnd - other.valueStart
+                && source.regionMatches(valueStart, other.source, other.valueStart, length);
+        }
+
+        /**
+         * Same as getValue().hashCode(), without creating the value.
+         */
+        public int valueHashCode() {
+            if (source == null) {
+                return value != null ? value.hashCode() : 0;
+            }
+            int h = 0;
+            for (int i = valueStart; i < valueEnd; i++) {
+                h = 31 * h + source.charAt(i);
+            }
+            return h;
+        }
+
+        /**
+         * ParamNames ID of the name, or ParamNames.NONE when it is not in the table.
+         */
+        public int getNameId() {
+            return nameId;
+        }
+
+        public boolean sameName(QueryParam other) {
+            return nameId != ParamNames.NONE && other.nameId != ParamNames.NONE
+                ? nameId == other.nameId : getName().equals(other.getName());
+        }
+
+        QueryParam copy(boolean keep, String removedBy) {
+            return new QueryParam(nameId, name, value, source, valueStart, valueEnd, keep, removedBy);
+        }
+    }
+
+    // Result cache operations
+    private static final int OP_APPLY = 1;
+    private static final int OP_TRACKING = 2;
+
+    private static final ResultCache RESULT_CACHE = new ResultCache(256);
+
+    /**
+     * Cache of processing results, keyed by input and rule-set content hash.
+     */
+    public static ResultCache getResultCache() {
+        return RESULT_CACHE;
     }
 
     /**
@@ -72,34 +162,88 @@ public class UrlProcessor {
      * Requirement 4.1: Transform Application
      */
     public static ProcessResult applyTransforms(String url, List<Transform> transforms, Set<Integer> disabledIndices) {
-        String result = url;
+        return applyTransforms(url, CompiledRules.of(transforms), disabledIndices, RESULT_CACHE.isEnabled());
+    }
+
+    static ProcessResult applyTransforms(String url, CompiledRules rules, Set<Integer> disabledIndices,
+            boolean useCache) {
+        String result = transformText(url, rules, disabledIndices, useCache);
         
-        for (int i = 0; i < transforms.size(); i++) {
-            Transform transform = transforms.get(i);
-            
-            // Skip if not enabled in config or disabled for this URL
-            if (!transform.isEnabled() || (disabledIndices != null && disabledIndices.contains(i))) {
+        // Requirement 4.3: Validate scheme
+        if (!result.startsWith("http://") && !result.startsWith("https://")) {
+            return ProcessResult.error(result, "Invalid URL scheme. URL must start with http:// or https://");
+        }
+        
+        return ProcessResult.success(result);
+    }
+
+    /**
+     * Run all active transforms over the input, through the result cache if useCache.
+     */
+    private static String transformText(String input, CompiledRules rules, Set<Integer> disabledIndices,
+            boolean useCache) {
+        ResultCache.Key key = null;
+        boolean[] matched = null;
+        if (useCache) {
+            key = new ResultCache.Key(OP_APPLY, rules.contentHash(), indicesKey(disabledIndices), input);
+            CachedRun cached = (CachedRun) RESULT_CACHE.get(key);
+            if (cached != null) {
+                cached.record(rules, disabledIndices);
+                return (String) cached.result;
+            }
+            matched = new boolean[rules.size()];
+        }
+
+        String result = input;
+        // Disabled and invalid transforms (Requirement 9.1) are not in the execution order
+        for (int i : rules.executionOrder()) {
+            // Skip if disabled for this URL
+            if (disabledIndices != null && disabledIndices.contains(i)) {
                 continue;
             }
             
-            try {
-                Pattern pattern = Pattern.compile(transform.getPattern());
-                Matcher matcher = pattern.matcher(result);
-                if (matcher.find()) {
-                    result = matcher.replaceAll(transform.getReplacement());
+            String replaced = rules.apply(i, result);
+            if (replaced != null) {
+                result = replaced;
+                if (matched != null) {
+                    matched[i] = true;
                 }
-            } catch (PatternSyntaxException e) {
-                // Requirement 9.1: Invalid regex patterns MUST NOT crash, SHOULD be skipped
-                continue;
             }
         }
-        
-        // Requirement 4.3: Validate scheme
-        if (!result.startsWith("http://") && !result.startsWith("https://")) {
-            return ProcessResult.error(result, "Invalid URL scheme. URL must start with http:// or https://");
+
+        if (key != null) {
+            RESULT_CACHE.put(key, new CachedRun(result, matched));
         }
-        
-        return ProcessResult.success(result);
+        return result;
+    }
+
+    /**
+     * A cached result, with the transforms that matched while computing it (null when
+     * none ran), so that cache hits still count in their TransformStats.
+     */
+    private static final class CachedRun {
+        final Object result;
+        final boolean[] matched;
+
+        CachedRun(Object result, boolean[] matched) {
+            this.result = result;
+            this.matched = matched;
+        }
+
+        void record(CompiledRules rules, Set<Integer> disabledIndices) {
+            if (matched != null) {
+                rules.recordCached(matched, disabledIndices);
+            }
+        }
+    }
+
+    private static String indicesKey(Set<Integer> indices) {
+        if (indices == null || indices.isEmpty()) {
+            return "";
+        }
+        List<Integer> sorted = new ArrayList<>(indices);
+        Collections.sort(sorted);
+        return sorted.toString();
     }
 
     /**
@@ -110,8 +254,9 @@ public class UrlProcessor {
         if (text == null || transforms == null) {
             return false;
         }
-        for (Transform t : transforms) {
-            if (t.isEnabled() && transformMatches(text, t)) {
+        CompiledRules rules = CompiledRules.of(transforms);
+        for (int i : rules.listOrder()) {
+            if (rules.matches(i, text)) {
                 return true;
             }
         }
@@ -126,27 +271,7 @@ public class UrlProcessor {
         if (text == null) {
             return null;
         }
-        String result = text;
-
-        for (int i = 0; i < transforms.size(); i++) {
-            Transform transform = transforms.get(i);
-
-            if (!transform.isEnabled() || (disabledIndices != null && disabledIndices.contains(i))) {
-                continue;
-            }
-
-            try {
-                Pattern pattern = Pattern.compile(transform.getPattern());
-                Matcher matcher = pattern.matcher(result);
-                if (matcher.find()) {
-                    result = matcher.replaceAll(transform.getReplacement());
-                }
-            } catch (PatternSyntaxException e) {
-                continue;
-            }
-        }
-
-        return result.trim();
+        return transformText(text, CompiledRules.of(transforms), disabledIndices, RESULT_CACHE.isEnabled()).trim();
     }
 
     /**
@@ -173,12 +298,105 @@ public class UrlProcessor {
         }
     }
 
+    /**
+     * Requirement 4.7: Delimiter Scanning
+     * Component bounds of an http(s) URL made of legal ASCII with a plain host, found from
+     * its delimiter bitmap. For such URLs, java.net.URI would parse the same components,
+     * so they can be split and rebuilt without it. of() returns null for any other URL.
+     */
+    private static final class UrlBounds {
+        final DelimiterScanner.Scan scan;
+        final int pathEnd; // Start of query or fragment, or length
+        final int query; // Index of '?', or -1
+        final int fragment; // Index of '#', or -1
+        final boolean escapedOutsideQuery; // URI decodes those when rebuilding
+
+        private UrlBounds(DelimiterScanner.Scan scan, int query, int fragment, boolean escapedOutsideQuery) {
+            this.scan = scan;
+            this.query = query;
+            this.fragment = fragment;
+            this.pathEnd = query >= 0 ? query : fragment >= 0 ? fragment : scan.text.length();
+            this.escapedOutsideQuery = escapedOutsideQuery;
+        }
+
+        static UrlBounds of(String url) {
+            int authority = url.startsWith("https://") ? 8 : url.startsWith("http://") ? 7 : -1;
+            if (authority < 0) {
+                return null;
+            }
+            DelimiterScanner.Scan scan = DelimiterScanner.scan(url);
+            if (!scan.isLegal()) {
+                return null;
+            }
+            int n = url.length();
+            int delimiter = scan.next(authority);
+            int slash = url.indexOf('/', authority);
+            int authorityEnd = slash >= 0 ? slash : n;
+            if (delimiter >= 0 && delimiter < authorityEnd) {
+                char c = url.charAt(delimiter);
+                if (c != '?' && c != '#') {
+                    return null;
+                }
+                authorityEnd = delimiter;
+            }
+            if (!isPlainAuthority(url, authority, authorityEnd)) {
+                return null;
+            }
+            int fragment = scan.next('#', authorityEnd);
+            if (fragment >= 0 && scan.next('#', fragment + 1) >= 0) {
+                return null;
+            }
+            int query = scan.next('?', authorityEnd);
+            if (fragment >= 0 && query > fragment) {
+                query = -1;
+            }
+            boolean escapedOutsideQuery = false;
+            for (int i = scan.next('%', authorityEnd); i >= 0; i = scan.next('%', i + 1)) {
+                if (i + 2 >= n || Character.digit(url.charAt(i + 1), 16) < 0
+                        || Character.digit(url.charAt(i + 2), 16) < 0) {
+                    return null;
+                }
+                escapedOutsideQuery |= query < 0 || i < query || (fragment >= 0 && i > fragment);
+            }
+            return new UrlBounds(scan, query, fragment, escapedOutsideQuery);
+        }
+
+        /**
+         * Host name with an optional port: no user info, IP literal or escapes.
+         */
+        private static boolean isPlainAuthority(String url, int start, int end) {
+            int colon = url.lastIndexOf(':', end - 1);
+            int hostEnd = colon >= start ? colon : end;
+            if (hostEnd == start || (colon >= start && colon == end - 1)) {
+                return false;
+            }
+            for (int i = start; i < end; i++) {
+                char c = url.charAt(i);
+                boolean ok = i > hostEnd ? c >= '0' && c <= '9'
+                    : i == hostEnd || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                        || (c >= '0' && c <= '9') || c == '.' || c == '-';
+                if (!ok) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     /**
      * Parse query parameters from a URL.
      * Requirement 3.6: Query Parameter List
      */
     public static List<QueryParam> parseQueryParams(String url, Set<String> allowedParams) {
-        List<QueryParam> params = new ArrayList<>();
+        return parseParamList(url, allowedParams);
+    }
+
+    private static ParamList parseParamList(String url, Set<String> allowedParams) {
+        UrlBounds bounds = UrlBounds.of(url);
+        if (bounds != null) {
+            return splitQuery(bounds, allowedParams);
+        }
+        ParamList params = new ParamList(url, 0);
         
         try {
             URI uri = new URI(url);
@@ -205,12 +423,63 @@ public class UrlProcessor {
         return params;
     }
 
+    /**
+     * Split the query at the '&' and first '=' bits of the bitmap, with the same
+     * results as String.split: trailing empty pairs are dropped.
+     */
+    private static ParamList splitQuery(UrlBounds bounds, Set<String> allowedParams) {
+        String url = bounds.scan.text;
+        if (bounds.query < 0) {
+            return new ParamList(url, 0);
+        }
+        int end = bounds.fragment >= 0 ? bounds.fragment : url.length();
+        int start = bounds.query + 1;
+        int count = 1;
+        for (int i = bounds.scan.next('&', start); i >= 0 && i < end; i = bounds.scan.next('&', i + 1)) {
+            count++;
+        }
+        ParamList params = new ParamList(url, count);
+        int equals = -1;
+        int nonEmpty = 0;
+        for (int i = bounds.scan.next(start); start <= end; i = bounds.scan.next(i + 1)) {
+            if (i < 0 || i > end) {
+                i = end;
+            }
+            char c = i < end ? url.charAt(i) : '&';
+            if (c == '=' && equals < 0) {
+                equals = i;
+            } else if (c == '&') {
+                int nameEnd = equals >= 0 ? equals : i;
+                params.addParsed(start, nameEnd, i, ParamNames.intern(url, start, nameEnd));
+                // Requirement 3.6: Parameters in whitelist MUST be checked (kept) by default
+                if (!allowedParams.isEmpty()) {
+                    int last = params.size() - 1;
+                    params.setKept(last, allowedParams.contains(params.getName(last)));
+                }
+                if (i > start) {
+                    nonEmpty = params.size();
+                }
+                start = i + 1;
+                equals = -1;
+            }
+        }
+        params.truncate(nonEmpty);
+        return params;
+    }
+
     /**
      * Reconstruct URL with filtered query parameters.
      * Requirement 4.2: Query Parameter Filtering
      * Requirement 4.3: URL Reconstruction
      */
     public static String reconstructUrl(String url, List<QueryParam> params) {
+        UrlBounds bounds = UrlBounds.of(url);
+        if (bounds != null && !bounds.escapedOutsideQuery) {
+            String rebuilt = rebuild(bounds, params);
+            if (rebuilt != null) {
+                return rebuilt;
+            }
+        }
         try {
             URI uri = new URI(url);
             
@@ -221,9 +490,10 @@ public class UrlProcessor {
                     if (queryBuilder.length() > 0) {
                         queryBuilder.append("&");
                     }
-                    queryBuilder.append(param.name);
-                    if (param.value != null && !param.value.isEmpty()) {
-                        queryBuilder.append("=").append(param.value);
+                    queryBuilder.append(param.getName());
+                    String value = param.getValue();
+                    if (value != null && !value.isEmpty()) {
+                        queryBuilder.append("=").append(value);
                     }
                 }
             }
@@ -246,6 +516,86 @@ public class UrlProcessor {
         }
     }
 
+    /**
+     * Requirement 4.7: the URL up to its path, the kept params and its fragment, as
+     * java.net.URI rebuilds it, or null when some param would need quoting.
+     */
+    private static String rebuild(UrlBounds bounds, List<QueryParam> params) {
+        String url = bounds.scan.text;
+        StringBuilder sb = new StringBuilder(url.length());
+        sb.append(url, 0, bounds.pathEnd).append('?');
+        int queryStart = sb.length();
+        if (params instanceof ParamList) {
+            // Requirement 4.9: params still held as offsets are copied straight from their URL
+            ParamList list = (ParamList) params;
+            for (int i = 0; i < list.size(); i++) {
+                if (!list.isOffsets(i)) {
+                    if (!appendParam(sb, queryStart, list.get(i))) {
+                        return null;
+                    }
+                } else if (list.isKept(i)) {
+                    if (sb.length() > queryStart) {
+                        sb.append('&');
+                    }
+                    appendQuoted(sb, list.url, list.nameStarts[i], list.nameEnds[i]);
+                    int valueStart = list.valueStart(i);
+                    if (list.valueEnds[i] > valueStart) {
+                        sb.append('=');
+                        appendQuoted(sb, list.url, valueStart, list.valueEnds[i]);
+                    }
+                }
+            }
+        } else {
+            for (QueryParam param : params) {
+                if (!appendParam(sb, queryStart, param)) {
+                    return null;
+                }
+            }
+        }
+        if (sb.length() == queryStart) {
+            sb.setLength(queryStart - 1);
+        }
+        if (bounds.fragment >= 0) {
+            sb.append(url, bounds.fragment, url.length());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Append the param if kept, or return false when it would need quoting.
+     */
+    private static boolean appendParam(StringBuilder sb, int queryStart, QueryParam param) {
+        if (param.keep) {
+            String name = param.getName();
+            String value = param.getValue();
+            if (!DelimiterScanner.legalInQuery(name) || (value != null && !DelimiterScanner.legalInQuery(value))) {
+                return false;
+            }
+            if (sb.length() > queryStart) {
+                sb.append('&');
+            }
+            appendQuoted(sb, name, 0, name.length());
+            if (value != null && !value.isEmpty()) {
+                sb.append('=');
+                appendQuoted(sb, value, 0, value.length());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Append a legal query component from s between start and end, quoting '%' as the
+     * URI constructors do.
+     */
+    private static void appendQuoted(StringBuilder sb, String s, int start, int end) {
+        int from = start;
+        for (int i = s.indexOf('%', from); i >= 0 && i < end; i = s.indexOf('%', from)) {
+            sb.append(s, from, i).append("%25");
+            from = i + 1;
+        }
+        sb.append(s, from, end);
+    }
+
     /**
      * Parse query parameters from the original URL and determine which are removed by transforms.
      * Steps through transforms one-by-one, checking params before and after each transform
@@ -263,69 +613,206 @@ public class UrlProcessor {
             String originalUrl,
             List<Transform> transforms, Set<Integer> disabledIndices,
             Set<String> userRemovedParams) {
+        return parseParamsWithTracking(originalUrl, CompiledRules.of(transforms), disabledIndices, userRemovedParams);
+    }
+
+    /**
+     * Same as above with a compiled snapshot, which callers may hold on to and share across threads.
+     */
+    public static List<QueryParam> parseParamsWithTracking(
+            String originalUrl,
+            CompiledRules rules, Set<Integer> disabledIndices,
+            Set<String> userRemovedParams) {
+        return parseParamsWithTracking(originalUrl, rules, disabledIndices, userRemovedParams,
+            RESULT_CACHE.isEnabled());
+    }
 
+    static List<QueryParam> parseParamsWithTracking(String originalUrl, CompiledRules rules,
+            Set<Integer> disabledIndices, Set<String> userRemovedParams, boolean useCache) {
+        ParamList tracked = null;
+        ResultCache.Key key = null;
+        if (useCache) {
+            // User choices are applied below, so toggling params keeps hitting the cache
+            key = new ResultCache.Key(OP_TRACKING, rules.contentHash(), indicesKey(disabledIndices), originalUrl);
+            CachedRun cached = (CachedRun) RESULT_CACHE.get(key);
+            if (cached != null) {
+                cached.record(rules, disabledIndices);
+                tracked = (ParamList) cached.result;
+            }
+        }
+        if (tracked == null) {
+            boolean[] matched = key != null ? new boolean[rules.size()] : null;
+            tracked = trackRemovals(originalUrl, rules, disabledIndices, matched);
+            if (key != null) {
+                // URLs without params are returned before any transform runs
+                RESULT_CACHE.put(key, new CachedRun(tracked, tracked.isEmpty() ? null : matched));
+            }
+        }
+
+        // A fresh copy: callers mutate keep flags
+        ParamList result = tracked.copy();
+        if (!userRemovedParams.isEmpty()) {
+            for (int i = 0; i < result.size(); i++) {
+                if (result.getRemovedBy(i) == null && userRemovedParams.contains(result.getName(i))) {
+                    result.setKept(i, false);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Attribute param removals to transforms, independent of user choices.
+     * Returns kept params (keep = true) first, then removed params.
+     */
+    private static ParamList trackRemovals(String originalUrl, CompiledRules rules, Set<Integer> disabledIndices,
+            boolean[] matched) {
         // Parse params from the original URL
-        List<QueryParam> originalParams = parseQueryParams(originalUrl, new HashSet<String>());
-        if (originalParams.isEmpty()) {
+        ParamList originalParams = parseParamList(originalUrl, Collections.<String>emptySet());
+        int n = originalParams.size();
+        if (n == 0) {
             return originalParams;
         }
 
-        // Track which transform removed each param: paramName -> transformName
-        java.util.Map<String, String> removedByMap = new java.util.LinkedHashMap<>();
+        // Params sharing a name share their removal, tracked at the first of them:
+        // removedBy[firstOfName[p]] is the transform that removed name of param p
+        int[] firstOfName = new int[n];
+        for (int p = 0; p < n; p++) {
+            firstOfName[p] = p;
+            for (int q = 0; q < p; q++) {
+                if (originalParams.sameName(q, p)) {
+                    firstOfName[p] = q;
+                    break;
+                }
+            }
+        }
+        String[] removedBy = new String[n];
 
         // Step through transforms one-by-one, checking which param key=value
         // strings disappear from the URL text after each transform
+        // (list order, not execution order, so attribution goes to the first remover)
         String currentUrl = originalUrl;
-        for (int i = 0; i < transforms.size(); i++) {
-            Transform transform = transforms.get(i);
-            if (!transform.isEnabled() || (disabledIndices != null && disabledIndices.contains(i))) {
+        for (int i : rules.listOrder()) {
+            if (disabledIndices != null && disabledIndices.contains(i)) {
                 continue;
             }
-            try {
-                Pattern pattern = Pattern.compile(transform.getPattern());
-                Matcher matcher = pattern.matcher(currentUrl);
-                if (matcher.find()) {
-                    String afterUrl = matcher.replaceAll(transform.getReplacement());
-                    // Check which original params were removed by this transform
-                    for (QueryParam origParam : originalParams) {
-                        if (removedByMap.containsKey(origParam.name)) continue; // already removed
-                        // Check if param key=value is still present in the URL text
-                        String paramStr = origParam.name + "=" + origParam.value;
-                        if (currentUrl.contains(paramStr) && !afterUrl.contains(paramStr)) {
-                            removedByMap.put(origParam.name, transform.getName());
-                        }
+            String afterUrl = rules.apply(i, currentUrl);
+            if (afterUrl != null) {
+                if (matched != null) {
+                    matched[i] = true;
+                }
+                // Check which original params were removed by this transform
+                for (int p = 0; p < n; p++) {
+                    if (removedBy[firstOfName[p]] != null) continue; // already removed
+                    // Check if param key=value is still present in the URL text
+                    if (containsPair(currentUrl, originalParams, p) && !containsPair(afterUrl, originalParams, p)) {
+                        removedBy[firstOfName[p]] = rules.getName(i);
                     }
-                    currentUrl = afterUrl;
                 }
-            } catch (PatternSyntaxException e) {
-                continue;
+                currentUrl = afterUrl;
             }
         }
 
-        // Build result: kept params first, then removed params
-        List<QueryParam> keptParams = new ArrayList<>();
-        List<QueryParam> removedParams = new ArrayList<>();
-
-        for (QueryParam origParam : originalParams) {
-            if (removedByMap.containsKey(origParam.name)) {
-                // Removed by a transform
-                removedParams.add(new QueryParam(
-                    origParam.name, origParam.value, false, removedByMap.get(origParam.name)));
-            } else {
-                // Survived all transforms
-                boolean keep = !userRemovedParams.contains(origParam.name);
-                keptParams.add(new QueryParam(origParam.name, origParam.value, keep));
+        // Build result: kept params first (survived all transforms), then removed params
+        ParamList result = new ParamList(originalUrl, n);
+        for (int p = 0; p < n; p++) {
+            if (removedBy[firstOfName[p]] == null) {
+                result.addFrom(originalParams, p, true, null);
+            }
+        }
+        for (int p = 0; p < n; p++) {
+            String remover = removedBy[firstOfName[p]];
+            if (remover != null) {
+                result.addFrom(originalParams, p, false, remover);
             }
         }
-
-        // Kept first, then removed
-        List<QueryParam> result = new ArrayList<>(keptParams);
-        result.addAll(removedParams);
         return result;
     }
 
+    /**
+     * Whether the text contains "name=value" for param p, without building that string.
+     */
+    private static boolean containsPair(String text, ParamList params, int p) {
+        String name = params.getName(p);
+        int length = name.length();
+        int last = text.length() - length - 1;
+        for (int i = text.indexOf(name); i >= 0 && i <= last; i = text.indexOf(name, i + 1)) {
+            int equals = i + length;
+            if (text.charAt(equals) == '=' && params.valueAt(p, text, equals + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     private static final Pattern URL_SCHEME_PATTERN = Pattern.compile("^https?://", Pattern.CASE_INSENSITIVE);
 
+    // Compiled once: used for every share and for every URL span in text mode
+    private static final Pattern URL_PATTERN = Pattern.compile(
+        "https?://[\\w\\-._~:/?#\\[\\]@!$&'()*+,;=%]+"
+    );
+
+    // Texts with at least this many URLs are cleaned on worker threads
+    private static final int PARALLEL_URL_THRESHOLD = 32;
+
+    private static volatile ExecutorService workers;
+
+    // Nested redirect wrappers deeper than this are left as they are
+    static final int MAX_UNWRAP_DEPTH = 4;
+
+    /**
+     * A known redirect wrapper: URL prefix up to the query, and the parameters
+     * that may carry the percent-encoded target.
+     */
+    private static final class RedirectWrapper {
+        final Pattern prefix;
+        final String[] targetParams;
+
+        RedirectWrapper(String prefix, String... targetParams) {
+            this.prefix = Pattern.compile(prefix, Pattern.CASE_INSENSITIVE);
+            this.targetParams = targetParams;
+        }
+
+        boolean isTarget(String name) {
+            for (String param : targetParams) {
+                if (param.equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final RedirectWrapper[] REDIRECT_WRAPPERS = {
+        new RedirectWrapper("https?://(?:www\\.)?google\\.[a-z]{2,3}(?:\\.[a-z]{2})?/url\\?", "q", "url"),
+        new RedirectWrapper("https?://(?:l|lm)\\.facebook\\.com/l\\.php\\?", "u"),
+        new RedirectWrapper("https?://l\\.messenger\\.com/l\\.php\\?", "u"),
+        new RedirectWrapper("https?://l\\.instagram\\.com/?\\?", "u"),
+        new RedirectWrapper("https?://out\\.reddit\\.com/[^?#]*\\?", "url"),
+        new RedirectWrapper("https?://(?:www\\.)?youtube\\.com/redirect\\?", "q"),
+        new RedirectWrapper("https?://away\\.vk\\.com/away\\.php\\?", "to"),
+        new RedirectWrapper("https?://slack-redir\\.net/link\\?", "url"),
+        new RedirectWrapper("https?://steamcommunity\\.com/linkfilter/?\\?", "url"),
+    };
+
+    /**
+     * Result of unwrapping redirect wrappers: the embedded target URL, and the
+     * parameters of every discarded wrapper, marked as removed by it.
+     */
+    public static class Unwrapped {
+        public final String url;
+        public final List<QueryParam> wrapperParams;
+        public final int depth;
+
+        Unwrapped(String url, List<QueryParam> wrapperParams, int depth) {
+            this.url = url;
+            this.wrapperParams = wrapperParams;
+            this.depth = depth;
+        }
+    }
+
     /**
      * Check if text looks like it could be a URL (matches ^https?://).
      */
@@ -336,6 +823,39 @@ public class UrlProcessor {
         return URL_SCHEME_PATTERN.matcher(text.trim()).find();
     }
 
+    /**
+     * Registrable domain (eTLD+1) of a host per the bundled public suffix list,
+     * e.g. "bbc.co.uk" for "news.bbc.co.uk". IP addresses, public suffixes and
+     * other hosts without one are returned unchanged.
+     */
+    public static String registrableDomain(String host) {
+        if (host == null || host.indexOf(':') >= 0 || isNumericHost(host)) {
+            return host;
+        }
+        String domain = PublicSuffixList.getDefault().registrableDomain(host);
+        return domain != null ? domain : host;
+    }
+
+    /**
+     * Whether host belongs to the same registrable domain as domain, for host-based rules.
+     */
+    public static boolean isSameSite(String host, String domain) {
+        if (host == null || domain == null) {
+            return false;
+        }
+        return registrableDomain(host).equalsIgnoreCase(registrableDomain(domain));
+    }
+
+    private static boolean isNumericHost(String host) {
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Extract URL from text (for ACTION_SEND intents).
      * Requirement 2.2: URL Reception
@@ -346,10 +866,7 @@ public class UrlProcessor {
         }
         
         // Try to find a URL pattern in the text
-        Pattern urlPattern = Pattern.compile(
-            "https?://[\\w\\-._~:/?#\\[\\]@!$&'()*+,;=%]+"
-        );
-        Matcher matcher = urlPattern.matcher(text);
+        Matcher matcher = URL_PATTERN.matcher(text);
         
         if (matcher.find()) {
             return matcher.group();
@@ -363,4 +880,300 @@ public class UrlProcessor {
         
         return null;
     }
+
+    /**
+     * Check if text contains more than one URL, e.g. a shared message with several links.
+     */
+    public static boolean hasMultipleUrls(String text) {
+        if (text == null) {
+            return false;
+        }
+        Matcher matcher = URL_PATTERN.matcher(text);
+        return matcher.find() && matcher.find();
+    }
+
+    /**
+     * Requirement 4.4: Redirect Unwrapping
+     * Extract the target of known redirect wrappers (google.com/url?q=, l.facebook.com/l.php?u=...),
+     * offline and up to MAX_UNWRAP_DEPTH nested levels. Each target is percent-decoded once.
+     * Returns null when the URL is not a wrapper.
+     */
+    public static Unwrapped unwrapRedirects(String url) {
+        if (url == null) {
+            return null;
+        }
+        String current = url;
+        List<QueryParam> wrapperParams = null;
+        byte[] buffer = null;
+        int depth = 0;
+        while (depth < MAX_UNWRAP_DEPTH) {
+            RedirectWrapper wrapper = findWrapper(current);
+            if (wrapper == null) {
+                break;
+            }
+            int queryStart = current.indexOf('?') + 1;
+            int queryEnd = current.indexOf('#', queryStart);
+            if (queryEnd < 0) {
+                queryEnd = current.length();
+            }
+            if (buffer == null) {
+                // Inner URLs are shorter than the outer query, so one buffer serves every level
+                buffer = new byte[3 * (queryEnd - queryStart)];
+            }
+            String removedBy = "Redirect (" + hostOf(current) + ")";
+            List<QueryParam> params = new ArrayList<>();
+            String target = null;
+            for (int pos = queryStart; pos < queryEnd; ) {
+                int amp = current.indexOf('&', pos);
+                if (amp < 0 || amp > queryEnd) {
+                    amp = queryEnd;
+                }
+                int eq = current.indexOf('=', pos);
+                int nameEnd = eq >= 0 && eq < amp ? eq : amp;
+                String name = current.substring(pos, nameEnd);
+                String value = nameEnd < amp ? current.substring(nameEnd + 1, amp) : "";
+                if (target == null && wrapper.isTarget(name)) {
+                    String decoded = percentDecode(value, buffer);
+                    if (URL_SCHEME_PATTERN.matcher(decoded).lookingAt()) {
+                        target = decoded;
+                    }
+                }
+                params.add(new QueryParam(name, value, false, removedBy));
+                pos = amp + 1;
+            }
+            if (target == null) {
+                break;
+            }
+            if (wrapperParams == null) {
+                wrapperParams = new ArrayList<>();
+            }
+            wrapperParams.addAll(params);
+            current = target;
+            depth++;
+        }
+        return depth > 0 ? new Unwrapped(current, wrapperParams, depth) : null;
+    }
+
+    private static RedirectWrapper findWrapper(String url) {
+        for (RedirectWrapper wrapper : REDIRECT_WRAPPERS) {
+            if (wrapper.prefix.matcher(url).lookingAt()) {
+                return wrapper;
+            }
+        }
+        return null;
+    }
+
+    private static String hostOf(String url) {
+        int start = url.indexOf("://") + 3;
+        int end = start;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) < 0) {
+            end++;
+        }
+        String host = url.substring(start, end);
+        return host.startsWith("www.") ? host.substring(4) : host;
+    }
+
+    /**
+     * Decode %XX escapes as UTF-8 into the given buffer, exactly once.
+     * Malformed escapes are kept literally; '+' is not treated as a space.
+     */
+    static String percentDecode(String value, byte[] buffer) {
+        if (value.indexOf('%') < 0) {
+            return value;
+        }
+        int n = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            int hi, lo;
+            if (c == '%' && i + 2 < value.length()
+                    && (hi = Character.digit(value.charAt(i + 1), 16)) >= 0
+                    && (lo = Character.digit(value.charAt(i + 2), 16)) >= 0) {
+                buffer[n++] = (byte) ((hi << 4) | lo);
+                i += 2;
+            } else if (c < 0x80) {
+                buffer[n++] = (byte) c;
+            } else {
+                // Raw non-ASCII input: re-encode the code point as UTF-8
+                int cp = value.codePointAt(i);
+                byte[] utf8 = new String(Character.toChars(cp)).getBytes(UTF_8);
+                System.arraycopy(utf8, 0, buffer, n, utf8.length);
+                n += utf8.length;
+                i += Character.charCount(cp) - 1;
+            }
+        }
+        return new String(buffer, 0, n, UTF_8);
+    }
+
+    /**
+     * Clean a single URL with the full parameter pipeline, as the processing dialog
+     * does by default: unwrap redirects, track removals, then reconstruct from the target URL.
+     */
+    public static String cleanUrl(String url, List<Transform> transforms, Set<Integer> disabledIndices) {
+        return cleanUrl(url, CompiledRules.of(transforms), disabledIndices);
+    }
+
+    public static String cleanUrl(String url, CompiledRules rules, Set<Integer> disabledIndices) {
+        return cleanUrl(url, rules, disabledIndices, RESULT_CACHE.isEnabled());
+    }
+
+    static String cleanUrl(String url, CompiledRules rules, Set<Integer> disabledIndices, boolean useCache) {
+        Unwrapped unwrapped = unwrapRedirects(url);
+        String target = unwrapped != null ? unwrapped.url : url;
+        List<QueryParam> params = parseParamsWithTracking(
+            target, rules, disabledIndices, Collections.<String>emptySet(), useCache);
+        return reconstructUrl(target, params);
+    }
+
+    /**
+     * Requirement 2.3: Instant Share
+     * The result the processing dialog shows by default for shared text, without user overrides:
+     * several URLs are cleaned in place, a single URL is extracted and cleaned, and other text
+     * is transformed when any transform matches it. Returns null when there is nothing to clean.
+     * Text with several URLs is never transformed as a whole: URL rules such as
+     * "[?&]utm_source=[^&]*" would run on across spaces and eat the words and links after them.
+     * PROCESS_TEXT selections only count as a URL when they start with one (urlAnywhere false).
+     */
+    public static String cleanShared(String text, boolean urlAnywhere, List<Transform> transforms) {
+        if (text == null) {
+            return null;
+        }
+        if (hasMultipleUrls(text)) {
+            return cleanEachUrl(text, transforms, null);
+        }
+        if (urlAnywhere || looksLikeUrl(text)) {
+            String url = extractUrl(text);
+            if (url != null) {
+                return cleanUrl(url, transforms, null);
+            }
+        }
+        if (!anyTransformMatches(text, transforms)) {
+            return null;
+        }
+        String transformed = applyTextTransforms(text, transforms, null);
+        String url = extractUrl(transformed);
+        if (url != null && url.equals(transformed)) {
+            return cleanUrl(url, transforms, null);
+        }
+        return cleanText(transformed, transforms, null);
+    }
+
+    /**
+     * Clean every URL in a text in a single scan, copying the text around them unchanged.
+     * Large texts have their URLs cleaned in parallel; the output order is preserved.
+     */
+    public static String cleanText(String text, List<Transform> transforms, Set<Integer> disabledIndices) {
+        return cleanText(text, CompiledRules.of(transforms), disabledIndices);
+    }
+
+    public static String cleanText(String text, CompiledRules rules, Set<Integer> disabledIndices) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder out = new StringBuilder(text.length());
+        if (cleanTextInto(text, rules, disabledIndices, out) == 0) {
+            return text;
+        }
+        return out.toString();
+    }
+
+    /**
+     * Requirement 2.2: the dialog's result for text with several URLs. Each URL is transformed
+     * on its own, then its params are cleaned as in text mode, and the text between URLs is
+     * copied unchanged. Params are rebuilt onto the transformed URL, so rewrites such as
+     * youtube.com to youtu.be apply once and are not run again on their own output.
+     */
+    public static String cleanEachUrl(String text, List<Transform> transforms, Set<Integer> disabledIndices) {
+        if (text == null) {
+            return null;
+        }
+        CompiledRules rules = CompiledRules.of(transforms);
+        boolean useCache = RESULT_CACHE.isEnabled();
+        Matcher matcher = URL_PATTERN.matcher(text);
+        StringBuilder out = new StringBuilder(text.length());
+        int last = 0;
+        while (matcher.find()) {
+            String transformed = transformText(matcher.group(), rules, disabledIndices, useCache);
+            String url = extractUrl(transformed);
+            out.append(text, last, matcher.start());
+            out.append(url != null && url.equals(transformed) ? cleanUrl(url, rules, disabledIndices, useCache)
+                : cleanText(transformed, rules, disabledIndices));
+            last = matcher.end();
+        }
+        return out.append(text, last, text.length()).toString();
+    }
+
+    /**
+     * Like cleanText, appending the result to a caller-owned buffer so streaming callers
+     * can reuse it across chunks.
+     *
+     * @return Number of URLs cleaned
+     */
+    public static int cleanTextInto(CharSequence text, List<Transform> transforms,
+            Set<Integer> disabledIndices, StringBuilder out) {
+        return cleanTextInto(text, CompiledRules.of(transforms), disabledIndices, out);
+    }
+
+    public static int cleanTextInto(CharSequence text, CompiledRules rules,
+            Set<Integer> disabledIndices, StringBuilder out) {
+        Matcher matcher = URL_PATTERN.matcher(text);
+        List<int[]> spans = new ArrayList<>();
+        List<String> urls = new ArrayList<>();
+        while (matcher.find()) {
+            spans.add(new int[] {matcher.start(), matcher.end()});
+            urls.add(matcher.group());
+        }
+
+        List<Future<String>> cleaned = null;
+        if (urls.size() >= PARALLEL_URL_THRESHOLD) {
+            cleaned = new ArrayList<>(urls.size());
+            for (final String url : urls) {
+                cleaned.add(workers().submit(() -> cleanUrl(url, rules, disabledIndices)));
+            }
+        }
+
+        int last = 0;
+        for (int i = 0; i < spans.size(); i++) {
+            int[] span = spans.get(i);
+            String url = urls.get(i);
+            out.append(text, last, span[0]);
+            out.append(cleaned != null ? await(cleaned.get(i), url)
+                : cleanUrl(url, rules, disabledIndices));
+            last = span[1];
+        }
+        out.append(text, last, text.length());
+        return spans.size();
+    }
+
+    /**
+     * Wait for a parallel clean; on failure keep the URL unmodified (Requirement 9.2).
+     */
+    private static String await(Future<String> future, String original) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            return original;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return original;
+        }
+    }
+
+    private static ExecutorService workers() {
+        ExecutorService pool = workers;
+        if (pool == null) {
+            synchronized (UrlProcessor.class) {
+                pool = workers;
+                if (pool == null) {
+                    int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+                    pool = Executors.newFixedThreadPool(threads, r -> {
+                        Thread t = new Thread(r, "UrlProcessor-worker");
+                        t.setDaemon(true);
+                        return t;
+                    });
+                    workers = pool;
+                }
+            }
+        }
+        return pool;
+    }
 }
@@ -0,0 +1,180 @@
+package com.gatopeich.urlvinegar;
+
+import com.gatopeich.urlvinegar.data.Transform;
+import com.gatopeich.urlvinegar.util.UrlProcessor;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Allocation-budget regression tests for the URL pipeline.
+ * Measures bytes allocated per operation by each UrlProcessor entry point over a fixed
+ * corpus, and fails when one goes over its budget in allocation-budgets.properties.
+ * After a deliberate change, update the budget to the measurement plus some headroom;
+ * measurements are printed with -Durlvinegar.benchmarks=true.
+ * Corpus size is tunable with -Durlvinegar.alloc.urls=N.
+ */
+public class AllocationBudgetTest {
+
+    private static final int URLS = Integer.getInteger("urlvinegar.alloc.urls", 500);
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int ROUNDS = 5;
+    private static final int URLS_PER_TEXT = 8; // Below the parallel threshold, so all work is on this thread
+
+    private interface Operation {
+        Object run(int i);
+    }
+
+    private static List<Transform> transforms;
+    private static List<String> corpus;
+    private static List<String> texts;
+    private static List<List<UrlProcessor.QueryParam>> parsed;
+    private static Set<String> allowed;
+    private static Properties budgets;
+    private static com.sun.management.ThreadMXBean threads;
+    private static boolean cacheWasEnabled;
+
+    static volatile Object blackhole;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        transforms = TestRules.tracking();
+        corpus = TestRules.sampleCorpus(URLS, 45);
+        texts = new ArrayList<>();
+        for (int i = 0; i < URLS; i++) {
+            StringBuilder sb = new StringBuilder("Links:");
+            for (int j = 0; j < URLS_PER_TEXT; j++) {
+                sb.append(' ').append(corpus.get((i + j) % URLS));
+            }
+            texts.add(sb.toString());
+        }
+        allowed = new HashSet<>();
+        allowed.add("id");
+        allowed.add("q");
+        parsed = new ArrayList<>();
+        for (String url : corpus) {
+            parsed.add(UrlProcessor.parseQueryParams(url, allowed));
+        }
+
+        budgets = new Properties();
+        InputStream in = AllocationBudgetTest.class.getResourceAsStream("allocation-budgets.properties");
+        assertNotNull("allocation-budgets.properties not found", in);
+        try {
+            budgets.load(in);
+        } finally {
+            in.close();
+        }
+
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            threads = (com.sun.management.ThreadMXBean) bean;
+            threads.setThreadAllocatedMemoryEnabled(true);
+        }
+        // Measure the work itself, not cache hits
+        cacheWasEnabled = UrlProcessor.getResultCache().isEnabled();
+        UrlProcessor.getResultCache().setEnabled(false);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        UrlProcessor.getResultCache().setEnabled(cacheWasEnabled);
+    }
+
+    private static long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Lowest bytes per operation over several rounds, after warming up so the
+     * steady state is measured rather than class loading and first compilations.
+     */
+    private static long bytesPerOperation(Operation operation) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (int i = 0; i < URLS; i++) {
+                blackhole = operation.run(i);
+            }
+        }
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = allocatedBytes();
+            for (int i = 0; i < URLS; i++) {
+                blackhole = operation.run(i);
+            }
+            best = Math.min(best, (allocatedBytes() - before) / URLS);
+        }
+        return best;
+    }
+
+    private static void assertWithinBudget(String path, Operation operation) {
+        Assume.assumeTrue("allocations not measurable on this JVM", threads != null);
+        String budget = budgets.getProperty(path);
+        assertNotNull("No allocation budget for " + path, budget);
+        long limit = Long.parseLong(budget.trim());
+        long measured = bytesPerOperation(operation);
+        if (TestRules.BENCHMARKS) {
+            System.out.println("Allocation " + path + ": " + measured + " bytes/op (budget " + limit + ")");
+        }
+        assertTrue(path + " allocates " + measured + " bytes/op, over its budget of " + limit
+            + "; if intended, update allocation-budgets.properties", measured <= limit);
+    }
+
+    @Test
+    public void testApplyTransforms() {
+        assertWithinBudget("applyTransforms", i -> UrlProcessor.applyTransforms(corpus.get(i), transforms, null));
+    }
+
+    @Test
+    public void testParseQueryParams() {
+        assertWithinBudget("parseQueryParams", i -> UrlProcessor.parseQueryParams(corpus.get(i), allowed));
+    }
+
+    @Test
+    public void testParseParamsWithTracking() {
+        assertWithinBudget("parseParamsWithTracking", i -> UrlProcessor.parseParamsWithTracking(
+            corpus.get(i), transforms, null, Collections.<String>emptySet()));
+    }
+
+    @Test
+    public void testReconstructUrl() {
+        assertWithinBudget("reconstructUrl", i -> UrlProcessor.reconstructUrl(corpus.get(i), parsed.get(i)));
+    }
+
+    @Test
+    public void testUnwrapRedirects() {
+        assertWithinBudget("unwrapRedirects", i -> UrlProcessor.unwrapRedirects(corpus.get(i)));
+    }
+
+    @Test
+    public void testCleanUrl() {
+        assertWithinBudget("cleanUrl", i -> UrlProcessor.cleanUrl(corpus.get(i), transforms, null));
+    }
+
+    @Test
+    public void testCleanText() {
+        assertWithinBudget("cleanText", i -> UrlProcessor.cleanText(texts.get(i), transforms, null));
+    }
+
+    @Test
+    public void testEveryBudgetIsMeasured() {
+        Set<String> measured = new HashSet<>();
+        Collections.addAll(measured, "applyTransforms", "parseQueryParams", "parseParamsWithTracking",
+            "reconstructUrl", "unwrapRedirects", "cleanUrl", "cleanText");
+        assertEquals(measured, budgets.stringPropertyNames());
+    }
+}
@@ -0,0 +1,43 @@
+package com.gatopeich.urlvinegar;
+
+import com.gatopeich.urlvinegar.data.Transform;
+import com.gatopeich.urlvinegar.util.CleaningEngine;
+import com.gatopeich.urlvinegar.util.CleaningEngines;
+import com.gatopeich.urlvinegar.util.CompiledRules;
+import com.gatopeich.urlvinegar.util.UrlProcessor;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the cleaning engine registry.
+ * Corpus size is tunable with -Durlvinegar.engines.urls=N.
+ */
+public class CleaningEnginesTest {
+
+    private static final int URLS = Integer.getInteger("urlvinegar.engines.urls", 500);
+
+    @Test
+    public void testRegistry() {
+        assertSame(CleaningEngines.REFERENCE, CleaningEngines.get());
+    }
+
+    @Test
+    public void testEnginesMatchReference() {
+        List<Transform> transforms = TestRules.tracking();
+        CompiledRules rules = CompiledRules.of(transforms);
+        CleaningEngine engine = CleaningEngines.get();
+        for (String url : TestRules.sampleCorpus(URLS, 7)) {
+            assertEquals(url, UrlProcessor.cleanUrl(url, transforms, null), engine.cleanUrl(url, rules, null));
+            assertEquals(url,
+                UrlProcessor.reconstructUrl(url, UrlProcessor.parseParamsWithTracking(
+                    url, transforms, null, Collections.<String>emptySet())),
+                engine.reconstructUrl(url, engine.parseParamsWithTracking(
+                    url, rules, null, Collections.<String>emptySet())));
+        }
+    }
+}
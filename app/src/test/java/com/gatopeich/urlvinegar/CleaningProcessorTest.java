@@ -0,0 +1,244 @@
+package com.gatopeich.urlvinegar;
+
+import com.gatopeich.urlvinegar.data.Transform;
+import com.gatopeich.urlvinegar.util.CleaningProcessor;
+import com.gatopeich.urlvinegar.util.ReactiveFlow;
+import com.gatopeich.urlvinegar.util.UrlProcessor;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the reactive cleaning processor: results, ordering, backpressure and cancellation.
+ */
+public class CleaningProcessorTest {
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(8);
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    private static List<String> urls(int count) {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            urls.add("https://example.com/" + i + "?id=" + i + (i % 3 == 0 ? "&utm_source=x" : "")
+                + (i % 5 == 0 ? "&fbclid=y" : ""));
+        }
+        return urls;
+    }
+
+    /**
+     * Publishes a list honoring demand, trampolining reentrant requests.
+     */
+    private static class ListPublisher implements ReactiveFlow.Publisher<String> {
+        final List<String> items;
+        final Throwable error;
+        final AtomicLong totalRequested = new AtomicLong();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+
+        ListPublisher(List<String> items, Throwable error) {
+            this.items = items;
+            this.error = error;
+        }
+
+        @Override
+        public void subscribe(ReactiveFlow.Subscriber<? super String> subscriber) {
+            subscriber.onSubscribe(new ReactiveFlow.Subscription() {
+                final AtomicLong demand = new AtomicLong();
+                final AtomicInteger wip = new AtomicInteger();
+                int index;
+                boolean done;
+
+                @Override
+                public void request(long n) {
+                    totalRequested.addAndGet(n);
+                    demand.addAndGet(n);
+                    if (wip.getAndIncrement() != 0) {
+                        return;
+                    }
+                    do {
+                        while (demand.get() > 0 && index < items.size() && !cancelled.get()) {
+                            demand.decrementAndGet();
+                            subscriber.onNext(items.get(index++));
+                        }
+                        if (index == items.size() && !done && !cancelled.get()) {
+                            done = true;
+                            if (error != null) {
+                                subscriber.onError(error);
+                            } else {
+                                subscriber.onComplete();
+                            }
+                        }
+                    } while (wip.decrementAndGet() != 0);
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled.set(true);
+                }
+            });
+        }
+    }
+
+    /**
+     * Requests batch items at a time, checking it never gets more than requested.
+     */
+    private static class BatchSubscriber implements ReactiveFlow.Subscriber<UrlProcessor.ProcessResult> {
+        final int batch;
+        final int limit;
+        final List<UrlProcessor.ProcessResult> results = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch terminated = new CountDownLatch(1);
+        final AtomicInteger outstanding = new AtomicInteger();
+        volatile Throwable error;
+        volatile boolean overflow;
+        ReactiveFlow.Subscription subscription;
+
+        BatchSubscriber(int batch, int limit) {
+            this.batch = batch;
+            this.limit = limit;
+        }
+
+        @Override
+        public void onSubscribe(ReactiveFlow.Subscription s) {
+            subscription = s;
+            outstanding.set(batch);
+            s.request(batch);
+        }
+
+        @Override
+        public void onNext(UrlProcessor.ProcessResult item) {
+            results.add(item);
+            if (outstanding.decrementAndGet() < 0) {
+                overflow = true;
+            }
+            if (outstanding.get() == 0 && results.size() < limit) {
+                outstanding.set(batch);
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            terminated.countDown();
+        }
+    }
+
+    private BatchSubscriber run(List<String> input, boolean textChunks, int parallelism, boolean ordered)
+            throws InterruptedException {
+        CleaningProcessor processor = new CleaningProcessor(TestRules.tracking(), textChunks, pool, parallelism, ordered);
+        BatchSubscriber subscriber = new BatchSubscriber(7, Integer.MAX_VALUE);
+        processor.subscribe(subscriber);
+        new ListPublisher(input, null).subscribe(processor);
+        assertTrue(subscriber.terminated.await(30, TimeUnit.SECONDS));
+        assertNull(subscriber.error);
+        assertFalse(subscriber.overflow);
+        return subscriber;
+    }
+
+    @Test
+    public void testOrderedMatchesSequential() throws InterruptedException {
+        List<String> input = urls(5000);
+        BatchSubscriber subscriber = run(input, false, 8, true);
+        assertEquals(input.size(), subscriber.results.size());
+        List<Transform> rules = TestRules.tracking();
+        for (int i = 0; i < input.size(); i++) {
+            UrlProcessor.ProcessResult result = subscriber.results.get(i);
+            assertTrue(result.isValid);
+            assertEquals(UrlProcessor.cleanUrl(input.get(i), rules, null), result.url);
+        }
+    }
+
+    @Test
+    public void testUnorderedHasAllResults() throws InterruptedException {
+        List<String> input = urls(5000);
+        BatchSubscriber subscriber = run(input, false, 8, false);
+        List<String> expected = new ArrayList<>();
+        List<Transform> rules = TestRules.tracking();
+        for (String url : input) {
+            expected.add(UrlProcessor.cleanUrl(url, rules, null));
+        }
+        List<String> actual = new ArrayList<>();
+        for (UrlProcessor.ProcessResult result : subscriber.results) {
+            actual.add(result.url);
+        }
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testTextChunks() throws InterruptedException {
+        List<String> input = new ArrayList<>();
+        for (String url : urls(200)) {
+            input.add("See " + url + " and https://example.org/?utm_medium=y now");
+        }
+        BatchSubscriber subscriber = run(input, true, 3, true);
+        for (int i = 0; i < input.size(); i++) {
+            assertEquals(UrlProcessor.cleanText(input.get(i), TestRules.tracking(), null), subscriber.results.get(i).url);
+        }
+    }
+
+    @Test
+    public void testBackpressureBoundsUpstreamDemand() throws InterruptedException {
+        CleaningProcessor processor = new CleaningProcessor(TestRules.tracking(), false, pool, 2, true);
+        BatchSubscriber subscriber = new BatchSubscriber(5, 5);
+        processor.subscribe(subscriber);
+        ListPublisher publisher = new ListPublisher(urls(1000), null);
+        publisher.subscribe(processor);
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (subscriber.results.size() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(50);
+        assertEquals(5, subscriber.results.size());
+        // Emitted plus at most 4 * parallelism buffered
+        assertTrue("requested " + publisher.totalRequested.get(), publisher.totalRequested.get() <= 5 + 8);
+
+        subscriber.subscription.cancel();
+        assertTrue(publisher.cancelled.get());
+    }
+
+    @Test
+    public void testUpstreamErrorAfterResults() throws InterruptedException {
+        CleaningProcessor processor = new CleaningProcessor(TestRules.tracking(), false, pool, 4, true);
+        BatchSubscriber subscriber = new BatchSubscriber(100, Integer.MAX_VALUE);
+        processor.subscribe(subscriber);
+        IllegalStateException failure = new IllegalStateException("source failed");
+        new ListPublisher(urls(50), failure).subscribe(processor);
+        assertTrue(subscriber.terminated.await(10, TimeUnit.SECONDS));
+        assertEquals(50, subscriber.results.size());
+        assertSame(failure, subscriber.error);
+    }
+
+    @Test
+    public void testSecondSubscriberRejected() throws InterruptedException {
+        CleaningProcessor processor = new CleaningProcessor(TestRules.tracking(), false, pool, 1, true);
+        processor.subscribe(new BatchSubscriber(1, 1));
+        BatchSubscriber second = new BatchSubscriber(1, 1);
+        processor.subscribe(second);
+        assertTrue(second.terminated.await(1, TimeUnit.SECONDS));
+        assertTrue(second.error instanceof IllegalStateException);
+    }
+}
@@ -0,0 +1,93 @@
+package com.gatopeich.urlvinegar;
+
+import android.content.ContentResolver;
+import android.os.Bundle;
+
+import com.gatopeich.urlvinegar.data.CleaningProvider;
+import com.gatopeich.urlvinegar.data.ConfigRepository;
+import com.gatopeich.urlvinegar.util.UrlBatch;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Robolectric tests for the batch cleaning provider, called through a ContentResolver.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CleaningProviderTest {
+
+    private ContentResolver resolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(CleaningProvider.class).create(CleaningProvider.AUTHORITY);
+        shadowOf(RuntimeEnvironment.getApplication()).grantPermissions(CleaningProvider.PERMISSION);
+        resolver = RuntimeEnvironment.getApplication().getContentResolver();
+    }
+
+    private static List<String> urls(int count) {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            urls.add("https://example.com/article/" + i + "?id=" + i + "&utm_source=feed&fbclid=abc" + i);
+        }
+        return urls;
+    }
+
+    private Bundle call(String[] urls) {
+        Bundle extras = new Bundle();
+        extras.putStringArray(CleaningProvider.EXTRA_URLS, urls);
+        return resolver.call(CleaningProvider.CONTENT_URI, CleaningProvider.METHOD_CLEAN_URLS, null, extras);
+    }
+
+    @Test
+    public void testCleansBatchWithUserRules() {
+        String[] batch = {"https://example.com/?utm_source=x&id=1", null, "not a url"};
+        String[] cleaned = call(batch).getStringArray(CleaningProvider.EXTRA_URLS);
+        assertArrayEquals(UrlBatch.clean(batch,
+            ConfigRepository.getInstance(RuntimeEnvironment.getApplication()).getRulesSnapshot()), cleaned);
+        assertEquals("https://example.com/?id=1", cleaned[0]);
+    }
+
+    @Test
+    public void testCleanUrlsSplitsLargeBatches() {
+        List<String> urls = urls(10_000);
+        assertTrue(UrlBatch.split(urls, UrlBatch.MAX_BATCH_BYTES).size() > 1);
+        String[] cleaned = CleaningProvider.cleanUrls(resolver, urls);
+        assertEquals(urls.size(), cleaned.length);
+        for (int i = 0; i < cleaned.length; i++) {
+            assertEquals("https://example.com/article/" + i + "?id=" + i, cleaned[i]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsOversizedBatch() {
+        call(urls(10_000).toArray(new String[0]));
+    }
+
+    @Test
+    public void testRejectsCallerWithoutPermission() {
+        shadowOf(RuntimeEnvironment.getApplication()).denyPermissions(CleaningProvider.PERMISSION);
+        try {
+            call(new String[] {"https://example.com/?utm_source=x"});
+            fail("Cleaned URLs without " + CleaningProvider.PERMISSION);
+        } catch (SecurityException expected) {
+            assertTrue(expected.getMessage().contains(CleaningProvider.PERMISSION));
+        }
+    }
+
+    @Test
+    public void testUnknownMethod() {
+        assertNull(resolver.call(CleaningProvider.CONTENT_URI, "drop", null, new Bundle()));
+        assertEquals(0, CleaningProvider.cleanUrls(resolver, new ArrayList<String>()).length);
+    }
+}
@@ -0,0 +1,256 @@
+package com.gatopeich.urlvinegar;
+
+import com.gatopeich.urlvinegar.data.Transform;
+import com.gatopeich.urlvinegar.util.CleaningServer;
+import com.gatopeich.urlvinegar.util.LatencyHistogram;
+import com.gatopeich.urlvinegar.util.TransformJson;
+import com.gatopeich.urlvinegar.util.UrlProcessor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the local cleaning server, rule JSON and latency histograms, plus a load test
+ * reporting client-side p50/p99 at increasing concurrency.
+ */
+public class CleaningServerTest {
+
+    private File rulesFile;
+    private CleaningServer server;
+
+    private static void writeRules(File file, String json) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(json.getBytes("UTF-8"));
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        rulesFile = File.createTempFile("rules", ".json");
+        writeRules(rulesFile, TransformJson.toJson(TestRules.tracking()));
+        server = new CleaningServer(rulesFile, 0, 4);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        rulesFile.delete();
+    }
+
+    private String request(String method, String path, String body, int expectedStatus) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection)
+            new URL("http://127.0.0.1:" + server.getPort() + path).openConnection();
+        conn.setRequestMethod(method);
+        if (body != null) {
+            conn.setDoOutput(true);
+            byte[] bytes = body.getBytes("UTF-8");
+            conn.setFixedLengthStreamingMode(bytes.length);
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(bytes);
+            }
+        }
+        assertEquals(expectedStatus, conn.getResponseCode());
+        InputStream in = expectedStatus < 400 ? conn.getInputStream() : conn.getErrorStream();
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            response.write(buffer, 0, n);
+        }
+        in.close();
+        return new String(response.toByteArray(), "UTF-8");
+    }
+
+    private String clean(String url) throws IOException {
+        return request("GET", "/clean?url=" + URLEncoder.encode(url, "UTF-8"), null, 200);
+    }
+
+    @Test
+    public void testPipelinedRequestsAnsweredInOrder() throws Exception {
+        final int requests = 2000;
+        StringBuilder pipeline = new StringBuilder();
+        for (int i = 0; i < requests; i++) {
+            pipeline.append("GET /clean?url=").append(URLEncoder.encode(
+                "https://a.com/" + i + "?utm_source=x", "UTF-8")).append(" HTTP/1.1\r\n")
+                .append(i == requests - 1 ? "Connection: close\r\n" : "").append("\r\n");
+        }
+        final byte[] bytes = pipeline.toString().getBytes("UTF-8");
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            // Sent without waiting for answers, which the server reads one request at a time
+            final OutputStream out = socket.getOutputStream();
+            ExecutorService sender = Executors.newSingleThreadExecutor();
+            Future<?> sent = sender.submit(() -> {
+                out.write(bytes);
+                out.flush();
+                return null;
+            });
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                response.write(buffer, 0, n);
+            }
+            sent.get();
+            sender.shutdown();
+            String[] answers = new String(response.toByteArray(), "UTF-8").split("HTTP/1.1 ");
+            assertEquals(requests + 1, answers.length);
+            for (int i = 0; i < requests; i++) {
+                assertTrue(answers[i + 1], answers[i + 1].startsWith("200 "));
+                assertTrue(answers[i + 1], answers[i + 1].endsWith("\r\n\r\nhttps://a.com/" + i));
+            }
+        }
+    }
+
+    @Test
+    public void testTransformJsonRoundTrip() throws IOException {
+        List<Transform> rules = TestRules.tracking();
+        rules.add(new Transform("Quotes \"and\" \\slashes\\ é", "a/b\tc", "$1", false));
+        List<Transform> parsed = TransformJson.parse(TransformJson.toJson(rules));
+        assertEquals(rules.size(), parsed.size());
+        for (int i = 0; i < rules.size(); i++) {
+            assertEquals(rules.get(i).getName(), parsed.get(i).getName());
+            assertEquals(rules.get(i).getPattern(), parsed.get(i).getPattern());
+            assertEquals(rules.get(i).getReplacement(), parsed.get(i).getReplacement());
+            assertEquals(rules.get(i).isEnabled(), parsed.get(i).isEnabled());
+        }
+
+        // As written by org.json in ConfigRepository: escaped slashes, defaults, extra keys
+        List<Transform> app = TransformJson.parse(
+            "[ {\"name\":\"A\",\"pattern\":\"https?:\\/\\/x\\u0041\",\"extra\":[1,{\"k\":null}]},"
+            + " {\"enabled\":false,\"name\":\"B\",\"pattern\":\"b\",\"replacement\":\"c\"} ]");
+        assertEquals("https?://xA", app.get(0).getPattern());
+        assertEquals("", app.get(0).getReplacement());
+        assertTrue(app.get(0).isEnabled());
+        assertFalse(app.get(1).isEnabled());
+        assertTrue(TransformJson.parse("[]").isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void testTransformJsonRejectsTruncated() throws IOException {
+        TransformJson.parse("[{\"name\":\"A\",\"pattern\":\"a\"");
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getPercentileNanos(0.5));
+        for (long v = 1; v <= 1000; v++) {
+            h.record(v * 1000);
+        }
+        assertEquals(1000, h.getCount());
+        assertEquals(1_000_000, h.getMaxNanos());
+        long p50 = h.getPercentileNanos(0.5);
+        long p99 = h.getPercentileNanos(0.99);
+        assertTrue("p50 " + p50, p50 >= 500_000 && p50 <= 625_000);
+        assertTrue("p99 " + p99, p99 >= 990_000 && p99 <= 1_000_000);
+        h.record(3);
+        assertEquals(3, h.getPercentileNanos(0.0001));
+    }
+
+    @Test
+    public void testCleanSingleAndBatch() throws IOException {
+        String url = "https://example.com/page?id=1&utm_source=news&fbclid=abc";
+        assertEquals(UrlProcessor.cleanUrl(url, TestRules.tracking(), null), clean(url));
+        assertEquals("https://example.com/page?id=1", clean(url));
+
+        String batch = url + "\r\n\nhttps://example.org/?utm_medium=x\nhttps://example.net/a?b=c";
+        assertEquals("https://example.com/page?id=1\n\nhttps://example.org/\nhttps://example.net/a?b=c\n",
+            request("POST", "/clean", batch, 200));
+        assertEquals("", request("POST", "/clean", "", 200));
+
+        request("GET", "/clean", null, 400);
+        request("GET", "/nothing", null, 404);
+        request("DELETE", "/clean", null, 405);
+        assertEquals(2, server.getSingleLatency().getCount());
+        assertTrue(request("GET", "/stats", null, 200).startsWith("{\"rules\":4,"));
+    }
+
+    @Test
+    public void testHotReload() throws IOException {
+        String url = "https://example.com/?tag=1&utm_source=x";
+        assertEquals("https://example.com/?tag=1", clean(url));
+
+        List<Transform> updated = TestRules.tracking();
+        updated.add(0, TestRules.removal("Remove Amazon referral tag", "tag"));
+        writeRules(rulesFile, TransformJson.toJson(updated));
+        rulesFile.setLastModified(rulesFile.lastModified() + 2000);
+        assertTrue(server.reloadIfChanged());
+        assertEquals("https://example.com/", clean(url));
+        assertEquals(1, server.getRules().getIncrementalUpdates());
+
+        // A broken file keeps the last good rules
+        writeRules(rulesFile, "[{\"name\":");
+        rulesFile.setLastModified(rulesFile.lastModified() + 4000);
+        assertFalse(server.reloadIfChanged());
+        assertEquals(1, server.getReloadErrors());
+        assertEquals("https://example.com/", clean(url));
+    }
+
+    /**
+     * Load test: each level runs the same number of GETs from N keep-alive clients.
+     */
+    @Test
+    public void testLoad() throws Exception {
+        TestRules.assumeBenchmarks();
+        int requests = Integer.getInteger("urlvinegar.load.requests", 2000);
+        String[] levels = System.getProperty("urlvinegar.load.levels", "1,4,16").split(",");
+        String path = "/clean?url=" + URLEncoder.encode(
+            "https://shop.example.com/item/42?color=red&utm_source=mail&utm_campaign=sale&fbclid=xyz", "UTF-8");
+        for (String level : levels) {
+            int clients = Integer.parseInt(level.trim());
+            LatencyHistogram latency = new LatencyHistogram();
+            ExecutorService pool = Executors.newFixedThreadPool(clients);
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int c = 0; c < clients; c++) {
+                int share = requests / clients;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < share; i++) {
+                        long t = System.nanoTime();
+                        assertEquals("https://shop.example.com/item/42?color=red", request("GET", path, null, 200));
+                        latency.recordSince(t);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            pool.shutdown();
+            System.out.println(String.format(Locale.US,
+                "CleaningServer: %2d clients, %d requests, %.0f req/s, p50 %s, p99 %s, max %s",
+                clients, latency.getCount(), latency.getCount() / seconds,
+                format(latency.getPercentileNanos(0.5)), format(latency.getPercentileNanos(0.99)),
+                format(latency.getMaxNanos())));
+        }
+        LatencyHistogram serverSide = server.getSingleLatency();
+        System.out.println(String.format(Locale.US, "CleaningServer: server-side p50 %s, p99 %s",
+            format(serverSide.getPercentileNanos(0.5)), format(serverSide.getPercentileNanos(0.99))));
+    }
+
+    private static String format(long nanos) {
+        return String.format(Locale.US, "%.1f us", nanos / 1000.0);
+    }
+}
@@ -0,0 +1,190 @@
+package com.gatopeich.urlvinegar;
+
+import com.gatopeich.urlvinegar.data.Transform;
+import com.gatopeich.urlvinegar.util.CompiledRules;
+import com.gatopeich.urlvinegar.util.TransformStats;
+import com.gatopeich.urlvinegar.util.UrlProcessor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for compiled rule snapshots and adaptive transform ordering.
+ */
+public class CompiledRulesTest {
+
+    /**
+     * Straightforward list-order application, as UrlProcessor did before ordering.
+     */
+    private static String applyInListOrder(String url, List<Transform> transforms) {
+        String result = url;
+        for (Transform t : transforms) {
+            if (!t.isEnabled()) continue;
+            Matcher m = Pattern.compile(t.getPattern()).matcher(result);
+            if (m.find()) {
+                result = m.replaceAll(t.getReplacement());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Make the UTM rule look slow and never matching, the affiliate rule cheap and selective.
+     */
+    private static void skewStats(String suffix) {
+        TransformStats.get("Remove UTM parameters" + suffix).restore(1000, 0, 9_000_000, 20_000);
+        TransformStats.get("Remove affiliate tracking" + suffix).restore(1000, 900, 100_000, 200);
+    }
+
+    @Test
+    public void testSnapshotReusedForSameContent() {
+        List<Transform> a = TestRules.defaults(" reuse");
+        List<Transform> b = TestRules.defaults(" reuse");
+        assertSame(CompiledRules.of(a), CompiledRules.of(b));
+
+        b.get(3).setEnabled(false);
+        CompiledRules changed = CompiledRules.of(b);
+        assertNotSame(CompiledRules.of(a), changed);
+        assertNotEquals(CompiledRules.of(a).contentHash(), changed.contentHash());
+    }
+
+    @Test
+    public void testDeltaMatchesFullCompile() {
+        List<Transform> transforms = TestRules.defaults(" delta");
+        transforms.add(3, new Transform("Broken delta", "[unclosed", "", true));
+        CompiledRules rules = CompiledRules.unrecorded(transforms);
+        String[] params = {"utm_source", "fbclid", "gclid", "tag", "ref", "id"};
+        Random random = new Random(50);
+        for (int n = 0; n < 300; n++) {
+            int size = transforms.size();
+            int op = size < 2 ? 0 : random.nextInt(4);
+            if (op == 0) {
+                int index = random.nextInt(size + 1);
+                Transform t = new Transform("Added " + n, "[?&]" + params[random.nextInt(params.length)]
+                    + "=[^&]*", "", random.nextInt(5) > 0);
+                transforms.add(index, t);
+                rules = rules.withAdded(index, t);
+            } else if (op == 1) {
+                int index = random.nextInt(size);
+                transforms.remove(index);
+                rules = rules.withRemoved(index);
+            } else if (op == 2) {
+                int index = random.nextInt(size);
+                Transform t = transforms.get(index).copy();
+                t.setEnabled(!t.isEnabled());
+                transforms.set(index, t);
+                rules = rules.withReplaced(index, t);
+            } else {
+                int from = random.nextInt(size);
+                int to = random.nextInt(size);
+                transforms.add(to, transforms.remove(from));
+                rules = rules.withMoved(from, to);
+            }
+            CompiledRules full = CompiledRules.unrecorded(transforms);
+            assertTrue(rules.sameContent(transforms));
+            assertEquals(full.contentHash(), rules.contentHash());
+            assertArrayEquals(full.listOrder(), rules.listOrder());
+            assertArrayEquals(full.executionOrder(), rules.executionOrder());
+            for (int i = 0; i < size; i++) {
+                if (i < full.size()) {
+                    assertEquals(full.getName(i), rules.getName(i));
+                    assertEquals(full.isActive(i), rules.isActive(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidAndDisabledExcludedFromOrder() {
+        List<Transform> transforms = new ArrayList<>();
+        transforms.add(new Transform("Invalid order", "[bad(", "", true));
+        transforms.add(new Transform("Disabled order", "x", "", false));
+        transforms.add(new Transform("Valid order", "y", "", true));
+
+        CompiledRules rules = CompiledRules.of(transforms);
+        assertArrayEquals(new int[] {2}, rules.listOrder());
+        assertArrayEquals(new int[] {2}, rules.executionOrder());
+    }
+
+    @Test
+    public void testOrderDependentRulesKeepPosition() {
+        String suffix = " position";
+        skewStats(suffix);
+        CompiledRules rules = CompiledRules.of(TestRules.defaults(suffix));
+        int[] order = rules.executionOrder();
+
+        assertEquals(9, order.length);
+        // YouTube shortener then timestamp cleanup, before any removal rule
+        assertEquals(0, order[0]);
+        assertEquals(1, order[1]);
+        // Cleanup rules stay last
+        assertEquals(7, order[7]);
+        assertEquals(8, order[8]);
+        // Slow, never-matching UTM rule demoted behind the cheap affiliate rule
+        assertEquals(6, order[5]);
+        assertEquals(2, order[6]);
+    }
+
+    @Test
+    public void testOverlappingRemovalRulesNotReordered() {
+        String suffix = " overlap";
+        List<Transform> transforms = new ArrayList<>();
+        transforms.add(new Transform("Broad" + suffix, "[?&](gclid|fbclid)=[^&]*", "", true));
+        transforms.add(new Transform("Specific" + suffix, "[?&]gclid=[^&]*", "", true));
+        TransformStats.get("Specific" + suffix).restore(1000, 1000, 1000, 1);
+        TransformStats.get("Broad" + suffix).restore(1000, 0, 9_000_000, 20_000);
+
+        assertArrayEquals(new int[] {0, 1}, CompiledRules.of(transforms).executionOrder());
+    }
+
+    @Test
+    public void testPrefixClassOverlappingLiteralNotReordered() {
+        String suffix = " prefix";
+        List<Transform> transforms = new ArrayList<>();
+        transforms.add(new Transform("UTM" + suffix, "[?&](utm_[a-z_]+)=[^&]*", "", true));
+        transforms.add(new Transform("Source" + suffix, "[?&]utm_source=[^&]*", "", true));
+        TransformStats.get("Source" + suffix).restore(1000, 1000, 1000, 1);
+        TransformStats.get("UTM" + suffix).restore(1000, 0, 9_000_000, 20_000);
+
+        assertArrayEquals(new int[] {0, 1}, CompiledRules.of(transforms).executionOrder());
+    }
+
+    @Test
+    public void testReorderedOutputMatchesListOrder() {
+        String suffix = " differential";
+        skewStats(suffix);
+        List<Transform> transforms = TestRules.defaults(suffix);
+        String[] names = {"utm_source", "utm_medium", "fbclid", "gclid", "tag", "ref", "id", "v", "t", "q"};
+        Random random = new Random(27);
+
+        for (int n = 0; n < 2000; n++) {
+            StringBuilder url = new StringBuilder(random.nextBoolean()
+                ? "https://www.youtube.com/watch" : "https://example.com/p");
+            int params = random.nextInt(6);
+            for (int i = 0; i < params; i++) {
+                url.append(i == 0 ? '?' : '&').append(names[random.nextInt(names.length)]);
+                url.append('=');
+                if (random.nextInt(4) == 0) {
+                    // Values containing other delimiters must not break commutation
+                    url.append("x?").append(names[random.nextInt(names.length)]).append("=y");
+                } else {
+                    url.append(random.nextInt(1000));
+                }
+            }
+            if (random.nextInt(5) == 0) {
+                url.append("#frag");
+            }
+            String input = url.toString();
+            String expected = applyInListOrder(input, transforms);
+            assertEquals(input, expected, UrlProcessor.applyTextTransforms(input, transforms, null));
+            assertEquals(input, expected, UrlProcessor.applyTransforms(input, transforms, null).url);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.gatopeich.urlvinegar;
+
+import com.gatopeich.urlvinegar.util.DelimiterScanner;
+import com.gatopeich.urlvinegar.util.UrlProcessor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests and microbenchmarks for the delimiter scanner and the query
+ * parsing and reconstruction built on it, checked against java.net.URI through
+ * ReferenceUrlProcessor. Benchmark size is tunable with -Durlvinegar.scanner.urls=N.
+ */
+public class DelimiterScannerTest {
+
+    private static final int URLS = Integer.getInteger("urlvinegar.scanner.urls", 2000);
+    private static final int ROUNDS = 20;
+
+    private static final String[] EDGE_CASES = {
+        "https://h.com", "https://h.com/", "https://h.com?", "https://h.com?&", "https://h.com?&&a=1&&",
+        "https://h.com?a&&b=&", "https://h.com?=", "https://h.com?a==b=c", "https://h.com?#",
+        "https://h.com/p?a=1#f", "https://h.com#f?x=1", "https://h.com/p#f&a=1", "https://h.com?a=1#x#y",
+        "https://h.com:8080/p?x=%20&y=%E2%9C%93", "https://h.com:?a=1", "https://h.com:80x/?a=1",
+        "https://h.com/%41%2F?x=1", "https://h.com?x=%zz", "https://h.com?x=%2", "https://h.com/a#%20",
+        "https://user@h.com?a=1", "https://h_b.com?a=1", "https://-h.com?a=1", "https://[::1]/?a=1",
+        "https://h.com/?q=a b", "https://h.com/?q=é", "https://h.com/?q=[1]", "https://h.com/?q=|",
+        "https://h.com?a=1?b=2", "https://h.com//x?a=1", "https://", "https://?a=1", "https:///p?a=1",
+        "http://h.com/p;x=1?a=~!$'()*+,;:@/", "HTTPS://H.COM?a=1", "ftp://h.com?a=1", "not a url",
+        "https://h.com/Ā?a=1", "https://h.com/p?utm_source=x&id=1&utm_medium=y#top"
+    };
+
+    private static List<String> corpus() {
+        List<String> urls = new ArrayList<>(Arrays.asList(EDGE_CASES));
+        urls.addAll(TestRules.sampleCorpus(URLS / 2, 47));
+        for (String share : RealisticCorpus.shares(URLS, 47)) {
+            String url = UrlProcessor.extractUrl(share);
+            if (url != null) {
+                urls.add(url);
+            }
+        }
+        return urls;
+    }
+
+    @Test
+    public void testLegalChars() {
+        String illegal = "\"<>[\\]^`{|}";
+        for (char c = 0; c < 0x100; c++) {
+            String s = "https://a.b/" + c + "?x=1";
+            boolean legal = c > ' ' && c < 0x7F && illegal.indexOf(c) < 0;
+            DelimiterScanner.Scan scan = DelimiterScanner.scan(s);
+            assertEquals("char " + (int) c, legal, scan.isLegal());
+            if (legal && "?#&=%".indexOf(c) < 0) {
+                assertEquals(13, scan.next(0));
+            }
+        }
+    }
+
+    @Test
+    public void testNext() {
+        String s = "https://h.com/p?a=1&b=2#f" + new String(new char[60]).replace('\0', 'x') + "&";
+        DelimiterScanner.Scan scan = DelimiterScanner.scan(s);
+        assertTrue(scan.isLegal());
+        List<Integer> found = new ArrayList<>();
+        for (int i = scan.next(0); i >= 0; i = scan.next(i + 1)) {
+            found.add(i);
+        }
+        assertEquals(Arrays.asList(15, 17, 19, 21, 23, s.length() - 1), found);
+        assertEquals(19, scan.next('&', 0));
+        assertEquals(s.length() - 1, scan.next('&', 20));
+        assertEquals(-1, scan.next('%', 0));
+        assertEquals(-1, scan.next(s.length()));
+    }
+
+    private static void assertSameParams(String url, List<ReferenceUrlProcessor.Param> expected,
+            List<UrlProcessor.QueryParam> actual) {
+        assertEquals(url, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(url, expected.get(i).name, actual.get(i).getName());
+            assertEquals(url, expected.get(i).value, actual.get(i).getValue());
+            assertEquals(url, expected.get(i).keep, actual.get(i).keep);
+        }
+    }
+
+    @Test
+    public void testParseAndReconstructMatchUri() {
+        Set<String> allowed = new HashSet<>(Arrays.asList("id", "q", "", "v"));
+        Random random = new Random(47);
+        for (String url : corpus()) {
+            List<ReferenceUrlProcessor.Param> expected = ReferenceUrlProcessor.parseQueryParams(url, allowed);
+            List<UrlProcessor.QueryParam> actual = UrlProcessor.parseQueryParams(url, allowed);
+            assertSameParams(url, expected, actual);
+
+            // Random keep flags, plus a param that needs quoting now and then
+            for (int i = 0; i < expected.size(); i++) {
+                boolean keep = random.nextBoolean();
+                expected.get(i).keep = keep;
+                actual.get(i).keep = keep;
+            }
+            if (random.nextInt(4) == 0) {
+                String value = random.nextBoolean() ? "a b" : "%20é#";
+                expected.add(new ReferenceUrlProcessor.Param("x", value, true, null));
+                actual.add(new UrlProcessor.QueryParam("x", value, true));
+            }
+            assertEquals(url, ReferenceUrlProcessor.reconstructUrl(url, expected),
+                UrlProcessor.reconstructUrl(url, actual));
+        }
+    }
+
+    @Test
+    public void testBenchmark() {
+        TestRules.assumeBenchmarks();
+        List<String> urls = corpus();
+        Set<String> allowed = Collections.emptySet();
+        List<List<UrlProcessor.QueryParam>> parsed = new ArrayList<>();
+        List<List<ReferenceUrlProcessor.Param>> referenceParsed = new ArrayList<>();
+        for (String url : urls) {
+            parsed.add(UrlProcessor.parseQueryParams(url, allowed));
+            referenceParsed.add(ReferenceUrlProcessor.parseQueryParams(url, allowed));
+        }
+        long scan = Long.MAX_VALUE;
+        long parse = Long.MAX_VALUE;
+        long uriParse = Long.MAX_VALUE;
+        long rebuild = Long.MAX_VALUE;
+        long uriRebuild = Long.MAX_VALUE;
+        long sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String url : urls) {
+                sink += DelimiterScanner.scan(url).next(0);
+            }
+            long t1 = System.nanoTime();
+            for (String url : urls) {
+                sink += UrlProcessor.parseQueryParams(url, allowed).size();
+            }
+            long t2 = System.nanoTime();
+            for (String url : urls) {
+                sink += ReferenceUrlProcessor.parseQueryParams(url, allowed).size();
+            }
+            long t3 = System.nanoTime();
+            for (int i = 0; i < urls.size(); i++) {
+                sink += UrlProcessor.reconstructUrl(urls.get(i), parsed.get(i)).length();
+            }
+            long t4 = System.nanoTime();
+            for (int i = 0; i < urls.size(); i++) {
+                sink += ReferenceUrlProcessor.reconstructUrl(urls.get(i), referenceParsed.get(i)).length();
+            }
+            long t5 = System.nanoTime();
+            scan = Math.min(scan, t1 - start);
+            parse = Math.min(parse, t2 - t1);
+            uriParse = Math.min(uriParse, t3 - t2);
+            rebuild = Math.min(rebuild, t4 - t3);
+            uriRebuild = Math.min(uriRebuild, t5 - t4);
+        }
+        int n = urls.size();
+        System.out.println("DelimiterScanner: " + scan / n + " ns per URL");
+        System.out.println("parseQueryParams: " + parse / n + " ns, with URI " + uriParse / n + " ns per URL");
+        System.out.println("reconstructUrl: " + rebuild / n + " ns, with URI " + uriRebuild / n + " ns per URL ("
+            + sink + ")");
+        assertTrue(parse < uriParse);
+        assertTrue(rebuild < uriRebuild);
+    }
+}
@@ -0,0 +1,382 @@
+package com.gatopeich.urlvinegar;
+
+import com.gatopeich.urlvinegar.data.Transform;
+import com.gatopeich.urlvinegar.util.UrlProcessor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Differential fuzz tests: random URLs and random rule sets are run through
+ * UrlProcessor and through ReferenceUrlProcessor, and every output must match.
+ * Failures are shrunk to a minimal URL and rule set before being reported.
+ *
+ * Iterations and seed can be overridden with -Durlvinegar.fuzz.iterations and
+ * -Durlvinegar.fuzz.seed.
+ */
+public class DifferentialFuzzTest {
+
+    private static final int ITERATIONS = Integer.getInteger("urlvinegar.fuzz.iterations", 1500);
+    private static final long SEED = Long.getLong("urlvinegar.fuzz.seed", 0x5EEDL);
+    private static final int MAX_SHRINK_STEPS = 5000;
+
+    private static final String[] PARAM_NAMES = {
+        "utm_source", "utm_medium", "utm_campaign", "fbclid", "gclid", "tag", "ref", "aff",
+        "source", "id", "v", "t", "q", "page", "lang", "s", "", "a.b", "x-y"
+    };
+    private static final String[] HOST_LABELS = {
+        "www", "example", "youtube", "m", "shop", "news", "bücher", "xn--bcher-kva", "l", "t"
+    };
+    private static final String[] TLDS = {"com", "org", "co.uk", "de", "io", "中国"};
+    private static final String[] VALUE_PIECES = {
+        "1", "42", "abc", "%20", "%E2%9C%93", "%G1", "%", "é", "😀", "?", "=", "/", ":",
+        "x?utm_source=y", "a+b", "~", "'", "(", ")", "[", "]", ";", ","
+    };
+    private static final String[] RULE_NAMES = {"Rule A", "Rule B", "Rule C", "Rule D", "Rule E"};
+
+    /**
+     * One fuzz case: an input plus a rule set and per-call disabled indices.
+     */
+    private static class Case {
+        final String input;
+        final List<Transform> rules;
+        final Set<Integer> disabled;
+
+        Case(String input, List<Transform> rules, Set<Integer> disabled) {
+            this.input = input;
+            this.rules = rules;
+            this.disabled = disabled;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("input: ").append(input).append("\nrules:");
+            for (int i = 0; i < rules.size(); i++) {
+                Transform t = rules.get(i);
+                sb.append("\n  [").append(i).append("] ").append(t.getName())
+                    .append(" /").append(t.getPattern()).append("/ -> '").append(t.getReplacement())
+                    .append(t.isEnabled() ? "'" : "' (disabled)");
+            }
+            return sb.append("\ndisabled for call: ").append(disabled).toString();
+        }
+    }
+
+    /**
+     * Property under test: returns a description of the first difference, or null.
+     */
+    private interface Property {
+        String mismatch(Case c);
+    }
+
+    // --- Generators ---
+
+    private static String pick(Random r, String[] values) {
+        return values[r.nextInt(values.length)];
+    }
+
+    private static String randomPiece(Random r, int maxPieces) {
+        StringBuilder sb = new StringBuilder();
+        int n = r.nextInt(maxPieces + 1);
+        for (int i = 0; i < n; i++) {
+            sb.append(r.nextInt(3) == 0 ? pick(r, VALUE_PIECES) : Integer.toString(r.nextInt(100)));
+        }
+        return sb.toString();
+    }
+
+    static String randomUrl(Random r) {
+        StringBuilder url = new StringBuilder();
+        int scheme = r.nextInt(20);
+        url.append(scheme == 0 ? "ftp://" : scheme == 1 ? "HTTP://" : scheme < 8 ? "http://" : "https://");
+        if (r.nextInt(15) == 0) {
+            url.append("user:pw@");
+        }
+        int labels = 1 + r.nextInt(3);
+        for (int i = 0; i < labels; i++) {
+            url.append(pick(r, HOST_LABELS)).append('.');
+        }
+        url.append(pick(r, TLDS));
+        if (r.nextInt(10) == 0) {
+            url.append(':').append(1 + r.nextInt(65535));
+        }
+        int segments = r.nextInt(4);
+        for (int i = 0; i < segments; i++) {
+            url.append('/').append(r.nextInt(4) == 0 ? "watch" : randomPiece(r, 2));
+        }
+        if (r.nextInt(6) != 0) {
+            int params = r.nextInt(7);
+            url.append('?');
+            for (int i = 0; i < params; i++) {
+                if (i > 0) url.append('&');
+                url.append(pick(r, PARAM_NAMES));
+                if (r.nextInt(8) != 0) {
+                    url.append('=').append(randomPiece(r, 3));
+                }
+            }
+        }
+        if (r.nextInt(5) == 0) {
+            url.append('#').append(randomPiece(r, 2));
+        }
+        if (r.nextInt(25) == 0) {
+            url.insert(r.nextInt(url.length()), ' ');
+        }
+        return url.toString();
+    }
+
+    static String randomText(Random r) {
+        StringBuilder text = new StringBuilder();
+        if (r.nextBoolean()) text.append("Check this ");
+        text.append(randomUrl(r));
+        if (r.nextInt(3) == 0) text.append(" and ").append(randomUrl(r));
+        if (r.nextInt(3) == 0) text.append("\n\nSent by ").append(pick(r, HOST_LABELS));
+        if (r.nextInt(4) == 0) text.append("  ");
+        return text.toString();
+    }
+
+    static Transform randomRule(Random r) {
+        String name = pick(r, RULE_NAMES);
+        boolean enabled = r.nextInt(10) != 0;
+        switch (r.nextInt(11)) {
+            case 0:
+            case 1:
+            case 2:
+                return new Transform(name, "[?&]" + pick(r, PARAM_NAMES).replace(".", "\\.") + "=[^&]*", "", enabled);
+            case 3:
+                return new Transform(name, "[?&](" + pick(r, PARAM_NAMES) + "|" + pick(r, PARAM_NAMES) + ")=[^&]*", "", enabled);
+            case 4:
+                return new Transform(name, "[?&](utm_[a-z_]+)=[^&]*", "", enabled);
+            case 5:
+                return new Transform(name, "(\\?)&+|&+(?=&)|&+$", "$1", enabled);
+            case 6:
+                return new Transform(name, "\\?$", "", enabled);
+            case 7:
+                return new Transform(name,
+                    "https?://(?:www\\.)?youtube\\.com/watch\\?v=([a-zA-Z0-9_-]+)(?:&t=([0-9]+)s?)?.*",
+                    "https://youtu.be/$1?t=$2", enabled);
+            case 8:
+                return new Transform(name, "example\\.com", "example.org", enabled);
+            case 9:
+                return new Transform(name, "\\n+Sent by.*$", "", enabled);
+            default:
+                return new Transform(name, "[bad(", "", enabled);
+        }
+    }
+
+    static Case randomCase(Random r, String input) {
+        List<Transform> rules = new ArrayList<>();
+        int n = r.nextInt(8);
+        for (int i = 0; i < n; i++) {
+            rules.add(randomRule(r));
+        }
+        Set<Integer> disabled = new HashSet<>();
+        if (n > 0 && r.nextInt(4) == 0) {
+            disabled.add(r.nextInt(n));
+        }
+        return new Case(input, rules, disabled);
+    }
+
+    // --- Properties ---
+
+    private static String render(List<UrlProcessor.QueryParam> params) {
+        StringBuilder sb = new StringBuilder();
+        for (UrlProcessor.QueryParam p : params) {
+            sb.append(p.getName()).append('=').append(p.getValue()).append(p.keep ? " keep" : " drop")
+                .append(p.removedBy != null ? " by " + p.removedBy : "").append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String renderReference(List<ReferenceUrlProcessor.Param> params) {
+        StringBuilder sb = new StringBuilder();
+        for (ReferenceUrlProcessor.Param p : params) {
+            sb.append(p.toString()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String compare(String what, String expected, String actual) {
+        if (expected == null ? actual == null : expected.equals(actual)) {
+            return null;
+        }
+        return what + "\n  expected: " + expected + "\n  actual:   " + actual;
+    }
+
+    /**
+     * Deterministic pseudo-user choices so shrinking keeps failures reproducible.
+     */
+    private static Set<String> userRemoved(String url) {
+        Set<String> removed = new HashSet<>();
+        for (String name : PARAM_NAMES) {
+            if ((name.hashCode() & 3) == 0 && url.contains(name)) {
+                removed.add(name);
+            }
+        }
+        return removed;
+    }
+
+    private static final Property URL_PIPELINE = c -> {
+        UrlProcessor.ProcessResult result = UrlProcessor.applyTransforms(c.input, c.rules, c.disabled);
+        String m = compare("applyTransforms",
+            ReferenceUrlProcessor.applyTransforms(c.input, c.rules, c.disabled),
+            (result.isValid ? "valid:" : "invalid:") + result.url);
+        if (m != null) return m;
+
+        Set<String> allowed = userRemoved(c.input);
+        m = compare("parseQueryParams",
+            renderReference(ReferenceUrlProcessor.parseQueryParams(c.input, allowed)),
+            render(UrlProcessor.parseQueryParams(c.input, allowed)));
+        if (m != null) return m;
+
+        Set<String> removed = userRemoved(c.input);
+        List<ReferenceUrlProcessor.Param> expected =
+            ReferenceUrlProcessor.parseParamsWithTracking(c.input, c.rules, c.disabled, removed);
+        List<UrlProcessor.QueryParam> actual =
+            UrlProcessor.parseParamsWithTracking(c.input, c.rules, c.disabled, removed);
+        m = compare("parseParamsWithTracking", renderReference(expected), render(actual));
+        if (m != null) return m;
+
+        return compare("reconstructUrl",
+            ReferenceUrlProcessor.reconstructUrl(c.input, expected),
+            UrlProcessor.reconstructUrl(c.input, actual));
+    };
+
+    private static final Property TEXT_PIPELINE = c -> {
+        String m = compare("extractUrl",
+            ReferenceUrlProcessor.extractUrl(c.input), UrlProcessor.extractUrl(c.input));
+        if (m != null) return m;
+        m = compare("applyTextTransforms",
+            ReferenceUrlProcessor.applyTextTransforms(c.input, c.rules, c.disabled),
+            UrlProcessor.applyTextTransforms(c.input, c.rules, c.disabled));
+        if (m != null) return m;
+        return compare("cleanText",
+            ReferenceUrlProcessor.cleanText(c.input, c.rules, c.disabled),
+            UrlProcessor.cleanText(c.input, c.rules, c.disabled));
+    };
+
+    // --- Shrinking ---
+
+    private static Case withoutRule(Case c, int index) {
+        List<Transform> rules = new ArrayList<>(c.rules);
+        rules.remove(index);
+        Set<Integer> disabled = new HashSet<>();
+        for (int d : c.disabled) {
+            if (d < index) disabled.add(d);
+            else if (d > index) disabled.add(d - 1);
+        }
+        return new Case(c.input, rules, disabled);
+    }
+
+    /**
+     * Greedily drop rules, query parameters and single characters while the
+     * property still fails, until no smaller failing case is found.
+     */
+    static Case shrink(Case failing, Property property) {
+        Case best = failing;
+        int steps = 0;
+        boolean progress = true;
+        while (progress && steps < MAX_SHRINK_STEPS) {
+            progress = false;
+            for (int i = best.rules.size() - 1; i >= 0 && steps < MAX_SHRINK_STEPS; i--, steps++) {
+                Case candidate = withoutRule(best, i);
+                if (property.mismatch(candidate) != null) {
+                    best = candidate;
+                    progress = true;
+                }
+            }
+            if (!best.disabled.isEmpty()) {
+                Case candidate = new Case(best.input, best.rules, new HashSet<Integer>());
+                steps++;
+                if (property.mismatch(candidate) != null) {
+                    best = candidate;
+                    progress = true;
+                }
+            }
+            // Drop whole "&..." or "#..." chunks first, then single characters
+            for (int end = best.input.length(); end > 0 && steps < MAX_SHRINK_STEPS; end--) {
+                int start = Math.max(best.input.lastIndexOf('&', end - 1), best.input.lastIndexOf('#', end - 1));
+                if (start < 0 || start >= end) continue;
+                steps++;
+                Case candidate = new Case(best.input.substring(0, start) + best.input.substring(end),
+                    best.rules, best.disabled);
+                if (property.mismatch(candidate) != null) {
+                    best = candidate;
+                    progress = true;
+                    end = best.input.length() + 1;
+                }
+            }
+            for (int i = best.input.length() - 1; i >= 0 && steps < MAX_SHRINK_STEPS; i--, steps++) {
+                Case candidate = new Case(best.input.substring(0, i) + best.input.substring(i + 1),
+                    best.rules, best.disabled);
+                if (property.mismatch(candidate) != null) {
+                    best = candidate;
+                    progress = true;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static void check(Property property, Case c) {
+        String mismatch = property.mismatch(c);
+        if (mismatch != null) {
+            Case minimal = shrink(c, property);
+            fail("Optimized engine differs from reference.\nMinimal case:\n" + minimal
+                + "\n" + property.mismatch(minimal) + "\nOriginal case:\n" + c);
+        }
+    }
+
+    @Test
+    public void fuzzUrlPipeline() {
+        Random r = new Random(SEED);
+        for (int i = 0; i < ITERATIONS; i++) {
+            check(URL_PIPELINE, randomCase(r, randomUrl(r)));
+        }
+    }
+
+    @Test
+    public void fuzzTextPipeline() {
+        Random r = new Random(SEED + 1);
+        for (int i = 0; i < ITERATIONS; i++) {
+            check(TEXT_PIPELINE, randomCase(r, randomText(r)));
+        }
+    }
+
+    @Test
+    public void fuzzDefaultRules() {
+        // Default rules exercise adaptive ordering of the commuting removal group
+        List<Transform> defaults = TestRules.defaults();
+        Random r = new Random(SEED + 2);
+        for (int i = 0; i < ITERATIONS; i++) {
+            check(URL_PIPELINE, new Case(randomUrl(r), defaults, new HashSet<Integer>()));
+        }
+    }
+
+    @Test
+    public void testShrinkFindsMinimalCase() {
+        // Synthetic property: "fails" whenever a utm_source rule sees utm_source in the input
+        Property synthetic = c -> {
+            for (Transform t : c.rules) {
+                if (t.getPattern().contains("utm_source") && c.input.contains("utm_source")) {
+                    return "synthetic failure";
+                }
+            }
+            return null;
+        };
+        List<Transform> rules = new ArrayList<>();
+        rules.add(new Transform("Other", "\\?$", "", true));
+        rules.add(new Transform("Target", "[?&]utm_source=[^&]*", "", true));
+        rules.add(new Transform("More", "example", "x", true));
+        Case c = new Case("https://example.com/a/b?id=1&utm_source=news&page=2#top", rules, new HashSet<Integer>());
+
+        Case minimal = shrink(c, synthetic);
+        assertEquals("utm_source", minimal.input);
+        assertEquals(1, minimal.rules.size());
+        assertEquals("Target", minimal.rules.get(0).getName());
+    }
+}
@@ -0,0 +1,182 @@
+package com.gatopeich.urlvinegar;
+
+import com.gatopeich.urlvinegar.util.HistoryLog;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the memory-mapped history log.
+ * Benchmark size is tunable with -Durlvinegar.history.records=N.
+ */
+public class HistoryLogTest {
+
+    private static final int RECORDS = Integer.getInteger("urlvinegar.history.records", 200000);
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("history", ".log");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static List<HistoryLog.Record> readAll(HistoryLog log) {
+        List<HistoryLog.Record> records = new ArrayList<>();
+        for (HistoryLog.Record record : log) {
+            records.add(record);
+        }
+        return records;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        try (HistoryLog log = HistoryLog.open(file, 4096)) {
+            assertEquals(0, log.getCount());
+            assertTrue(log.append("https://example.com/?utm_source=x&id=1", "https://example.com/?id=1",
+                Arrays.asList("Remove UTM parameters"), 1234));
+            assertTrue(log.append("ünïcödé text", "ünïcödé text", Collections.<String>emptyList(), 5));
+            List<HistoryLog.Record> records = readAll(log);
+            assertEquals(2, records.size());
+            assertEquals("https://example.com/?utm_source=x&id=1", records.get(0).input);
+            assertEquals("https://example.com/?id=1", records.get(0).output);
+            assertEquals(Arrays.asList("Remove UTM parameters"), records.get(0).fired);
+            assertEquals(1234, records.get(0).nanos);
+            assertTrue(records.get(0).timeMillis > 0);
+            assertEquals("ünïcödé text", records.get(1).input);
+            assertTrue(records.get(1).fired.isEmpty());
+        }
+        // Persisted across reopen
+        try (HistoryLog log = HistoryLog.open(file, 4096)) {
+            assertEquals(2, log.getCount());
+            assertEquals(5, readAll(log).get(1).nanos);
+        }
+    }
+
+    @Test
+    public void testRingDropsOldestAndWraps() throws IOException {
+        try (HistoryLog log = HistoryLog.open(file, 1000)) {
+            for (int i = 0; i < 500; i++) {
+                assertTrue(log.append("https://example.com/" + i, "out" + i, Arrays.asList("t" + (i % 3)), i));
+                assertTrue(log.getBytesUsed() <= log.getCapacity());
+            }
+            List<HistoryLog.Record> records = readAll(log);
+            assertEquals(log.getCount(), records.size());
+            assertTrue(records.size() > 5 && records.size() < 500);
+            // Contiguous, ending with the newest
+            for (int i = 0; i < records.size(); i++) {
+                int expected = 500 - records.size() + i;
+                assertEquals("https://example.com/" + expected, records.get(i).input);
+                assertEquals(expected, records.get(i).nanos);
+                assertEquals(Arrays.asList("t" + (expected % 3)), records.get(i).fired);
+            }
+        }
+    }
+
+    @Test
+    public void testOversizedRecordIsRejected() throws IOException {
+        try (HistoryLog log = HistoryLog.open(file, 256)) {
+            assertTrue(log.append("a", "b", Collections.<String>emptyList(), 1));
+            char[] big = new char[300];
+            Arrays.fill(big, 'x');
+            assertFalse(log.append(new String(big), "", Collections.<String>emptyList(), 1));
+            assertEquals(1, log.getCount());
+        }
+    }
+
+    @Test
+    public void testCursorBatchesAndSkipsOverwritten() throws IOException {
+        try (HistoryLog log = HistoryLog.open(file, 2048)) {
+            for (int i = 0; i < 10; i++) {
+                log.append("in" + i, "out" + i, Collections.<String>emptyList(), i);
+            }
+            HistoryLog.Cursor cursor = log.iterator();
+            assertEquals(4, cursor.nextBatch(4).size());
+            // Overwrite everything the cursor has not read yet
+            for (int i = 10; i < 300; i++) {
+                log.append("in" + i, "out" + i, Collections.<String>emptyList(), i);
+            }
+            List<HistoryLog.Record> rest = cursor.nextBatch(Integer.MAX_VALUE);
+            assertEquals(log.getCount(), rest.size());
+            assertEquals("in299", rest.get(rest.size() - 1).input);
+            assertTrue(cursor.nextBatch(10).isEmpty());
+            log.append("late", "late", Collections.<String>emptyList(), 0);
+            assertEquals("late", cursor.next().input);
+        }
+    }
+
+    @Test
+    public void testBadHeaderResets() throws IOException {
+        try (HistoryLog log = HistoryLog.open(file, 1024)) {
+            log.append("a", "b", Collections.<String>emptyList(), 1);
+        }
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.writeInt(0); // Clobber the magic
+        }
+        try (HistoryLog log = HistoryLog.open(file, 1024)) {
+            assertEquals(0, log.getCount());
+            assertFalse(log.iterator().hasNext());
+        }
+        // A different capacity also starts afresh
+        try (HistoryLog log = HistoryLog.open(file, 1024)) {
+            log.append("a", "b", Collections.<String>emptyList(), 1);
+        }
+        try (HistoryLog log = HistoryLog.open(file, 2048)) {
+            assertEquals(0, log.getCount());
+        }
+    }
+
+    @Test
+    public void testInputUrlsAreDistinctMostRecentLast() throws IOException {
+        List<String> none = Collections.emptyList();
+        try (HistoryLog log = HistoryLog.open(file, 4096)) {
+            log.append("https://a.example/", "https://a.example/", none, 1);
+            log.append("Look: https://b.example/?utm_source=x", "https://b.example/", none, 1);
+            log.append("https://a.example/", "https://a.example/", none, 1); // Moves to most recent
+            log.append("https://c.example/ and https://d.example/", "both", none, 1);
+            log.append("no link here", "no link here", none, 1);
+            assertEquals(Arrays.asList("https://b.example/?utm_source=x", "https://a.example/"), log.inputUrls());
+        }
+    }
+
+    @Test
+    public void testAppendCost() throws IOException {
+        TestRules.assumeBenchmarks();
+        List<String> fired = Arrays.asList("Remove UTM parameters", "Remove click ids");
+        try (HistoryLog log = HistoryLog.open(file, HistoryLog.DEFAULT_CAPACITY)) {
+            long start = System.nanoTime();
+            for (int i = 0; i < RECORDS; i++) {
+                log.append("https://www.example.com/article/" + i + "?id=" + i + "&utm_source=feed",
+                    "https://www.example.com/article/" + i + "?id=" + i, fired, 25000);
+            }
+            long appendNanos = (System.nanoTime() - start) / RECORDS;
+            start = System.nanoTime();
+            int read = 0;
+            HistoryLog.Cursor cursor = log.iterator();
+            for (List<HistoryLog.Record> batch = cursor.nextBatch(1024); !batch.isEmpty();
+                    batch = cursor.nextBatch(1024)) {
+                read += batch.size();
+            }
+            long readNanos = (System.nanoTime() - start) / Math.max(1, read);
+            System.out.println("HistoryLog: " + RECORDS + " appends, " + appendNanos + " ns/append, "
+                + read + " held, " + readNanos + " ns/read");
+            assertEquals(log.getCount(), read);
+            assertTrue("append should cost microseconds", appendNanos < 100000);
+        }
+    }
+}
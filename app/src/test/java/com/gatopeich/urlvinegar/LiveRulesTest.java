@@ -0,0 +1,181 @@
+package com.gatopeich.urlvinegar;
+
+import com.gatopeich.urlvinegar.data.Transform;
+import com.gatopeich.urlvinegar.util.CompiledRules;
+import com.gatopeich.urlvinegar.util.LiveRules;
+import com.gatopeich.urlvinegar.util.RuleChange;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests and a benchmark for incremental recompilation: single-rule changes derived
+ * from saved lists, applied to live snapshots that readers swap to atomically.
+ * Benchmark size is tunable with -Durlvinegar.live.rules=N.
+ */
+public class LiveRulesTest {
+
+    private static final int RULES = Integer.getInteger("urlvinegar.live.rules", 2000);
+    private static final int ROUNDS = 5;
+
+    private static List<Transform> rules(String suffix, int count) {
+        List<Transform> transforms = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            transforms.add(TestRules.removal("Remove p" + i + suffix, "p" + i));
+        }
+        TestRules.addCleanup(transforms, suffix);
+        return transforms;
+    }
+
+    @Test
+    public void testBetweenFindsSingleEdits() {
+        List<Transform> before = rules(" between", 5);
+
+        List<Transform> after = new ArrayList<>(before);
+        after.add(2, TestRules.removal("New", "x"));
+        assertEquals("ADD 2", String.valueOf(RuleChange.between(before, after)));
+        after.add(TestRules.removal("Newer", "y"));
+        assertNull(RuleChange.between(before, after));
+
+        after = new ArrayList<>(before);
+        after.remove(5);
+        assertEquals("REMOVE 5", String.valueOf(RuleChange.between(before, after)));
+
+        // Content counts, not identity
+        after = new ArrayList<>();
+        for (Transform t : before) {
+            after.add(t.copy());
+        }
+        assertNull(RuleChange.between(before, after));
+        after.get(1).setEnabled(false);
+        RuleChange change = RuleChange.between(before, after);
+        assertEquals("REPLACE 1", String.valueOf(change));
+        assertFalse(change.transform.isEnabled());
+
+        after = new ArrayList<>(before);
+        after.add(4, after.remove(0));
+        assertEquals("MOVE 0 -> 4", String.valueOf(RuleChange.between(before, after)));
+        after = new ArrayList<>(before);
+        after.add(1, after.remove(4));
+        assertEquals("MOVE 4 -> 1", String.valueOf(RuleChange.between(before, after)));
+
+        // Two rules swapped far apart take two edits
+        after = new ArrayList<>(before);
+        after.set(0, before.get(3));
+        after.set(3, before.get(0));
+        assertNull(RuleChange.between(before, after));
+    }
+
+    @Test
+    public void testUpdatesRecompileOneRule() {
+        List<Transform> transforms = rules(" live", 10);
+        LiveRules live = new LiveRules(transforms);
+        CompiledRules first = live.get();
+        assertTrue(first.sameContent(transforms));
+
+        live.update(new ArrayList<>(transforms));
+        assertSame(first, live.get());
+
+        List<Transform> edited = new ArrayList<>(transforms);
+        edited.set(4, TestRules.removal("Remove q" + " live", "q"));
+        live.update(edited);
+        edited.remove(0);
+        live.update(edited);
+        edited.add(3, edited.remove(7));
+        live.update(edited);
+        edited.add(0, TestRules.removal("Remove r" + " live", "r"));
+        live.update(edited);
+        assertEquals(4, live.getIncrementalUpdates());
+        assertEquals(0, live.getFullUpdates());
+        assertTrue(live.get().sameContent(edited));
+        assertEquals(CompiledRules.unrecorded(edited).contentHash(), live.get().contentHash());
+        // Published for the code that compiles the same list itself
+        assertSame(live.get(), CompiledRules.of(edited));
+
+        edited.clear();
+        live.update(edited);
+        assertEquals(1, live.getFullUpdates());
+        assertEquals(0, live.get().size());
+    }
+
+    @Test
+    public void testChangeNotMatchingListFallsBackToFullCompile() {
+        List<Transform> transforms = rules(" mismatch", 3);
+        LiveRules live = new LiveRules(transforms);
+        List<Transform> edited = new ArrayList<>(transforms);
+        edited.remove(1);
+        // A stale or mistaken change must not leave the snapshot out of step with the list
+        live.onRulesChanged(RuleChange.removed(2), edited);
+        live.onRulesChanged(RuleChange.removed(9), transforms);
+        assertEquals(0, live.getIncrementalUpdates());
+        assertEquals(2, live.getFullUpdates());
+        assertTrue(live.get().sameContent(transforms));
+    }
+
+    @Test
+    public void testReadersSeeWholeSnapshots() throws InterruptedException {
+        final List<Transform> a = rules(" readers", 200);
+        final List<Transform> b = new ArrayList<>(a);
+        b.set(100, TestRules.removal("Remove z readers", "z"));
+        final long hashA = CompiledRules.unrecorded(a).contentHash();
+        final long hashB = CompiledRules.unrecorded(b).contentHash();
+        final LiveRules live = new LiveRules(a);
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<String> failure = new AtomicReference<>();
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (!done.get()) {
+                        CompiledRules rules = live.get();
+                        long hash = rules.contentHash();
+                        boolean replaced = rules.getName(100).startsWith("Remove z");
+                        if (hash != hashA && hash != hashB || replaced != (hash == hashB)) {
+                            failure.set("Mixed snapshot: " + rules.getName(100));
+                        }
+                    }
+                }
+            });
+            readers[t].start();
+        }
+        for (int i = 0; i < 200; i++) {
+            live.update(i % 2 == 0 ? b : a);
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+        assertEquals(200, live.getIncrementalUpdates());
+    }
+
+    @Test
+    public void testBenchmark() {
+        TestRules.assumeBenchmarks();
+        List<Transform> transforms = rules(" bench", RULES);
+        LiveRules live = new LiveRules(transforms);
+        long full = Long.MAX_VALUE;
+        long delta = Long.MAX_VALUE;
+        List<Transform> edited = new ArrayList<>(transforms);
+        for (int round = 0; round < ROUNDS; round++) {
+            edited.set(RULES / 2, TestRules.removal("Remove edited " + round, "e" + round));
+            long start = System.nanoTime();
+            CompiledRules.unrecorded(edited);
+            long t1 = System.nanoTime();
+            live.update(edited);
+            long t2 = System.nanoTime();
+            full = Math.min(full, t1 - start);
+            delta = Math.min(delta, t2 - t1);
+        }
+        assertEquals(ROUNDS, live.getIncrementalUpdates());
+        System.out.println("LiveRules: " + RULES + " rules, full compile " + full / 1000
+            + " us, single-rule update " + delta / 1000 + " us");
+    }
+}
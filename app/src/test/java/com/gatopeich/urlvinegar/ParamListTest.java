@@ -0,0 +1,143 @@
+package com.gatopeich.urlvinegar;
+
+import com.gatopeich.urlvinegar.util.CompiledRules;
+import com.gatopeich.urlvinegar.util.ParamList;
+import com.gatopeich.urlvinegar.util.UrlProcessor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests and a microbenchmark for the offset-based param list: lazily created params
+ * must read, filter and rebuild exactly like eagerly built ones.
+ * Benchmark size is tunable with -Durlvinegar.paramlist.urls=N.
+ */
+public class ParamListTest {
+
+    private static final int URLS = Integer.getInteger("urlvinegar.paramlist.urls", 2000);
+    private static final int ROUNDS = 20;
+    private static final Set<String> NONE = Collections.emptySet();
+
+    @Test
+    public void testParsedListReadsWithoutCreatingParams() {
+        String url = "https://h.com/p?id=1&flag&utm_source=x&blob=QUJD%3D#top";
+        List<UrlProcessor.QueryParam> params = UrlProcessor.parseQueryParams(url, Collections.singleton("id"));
+        assertTrue(params instanceof ParamList);
+        ParamList list = (ParamList) params;
+        assertEquals(4, list.size());
+        assertEquals("flag", list.getName(1));
+        assertTrue(list.isKept(0));
+        assertFalse(list.isKept(3));
+        assertNull(list.getRemovedBy(0));
+
+        UrlProcessor.QueryParam blob = list.get(3);
+        assertSame(blob, list.get(3));
+        assertEquals("blob", blob.getName());
+        assertEquals("QUJD%3D", blob.getValue());
+        assertEquals("QUJD%3D".hashCode(), blob.valueHashCode());
+        assertEquals("", list.get(1).getValue());
+        assertTrue(blob.sameValue(new UrlProcessor.QueryParam("other", "QUJD%3D", true)));
+        assertFalse(blob.sameValue(list.get(0)));
+    }
+
+    @Test
+    public void testKeepFlagsFollowCreatedParams() {
+        String url = "https://h.com/p?a=1&b=2&c=3";
+        ParamList list = (ParamList) UrlProcessor.parseQueryParams(url, NONE);
+        list.setKept(0, true);
+        assertEquals("https://h.com/p?a=1", UrlProcessor.reconstructUrl(url, list));
+
+        // A created param is the param from then on
+        list.get(2).keep = true;
+        assertTrue(list.isKept(2));
+        assertEquals("https://h.com/p?a=1&c=3", UrlProcessor.reconstructUrl(url, list));
+        list.setKept(2, false);
+        assertFalse(list.get(2).keep);
+
+        list.add(new UrlProcessor.QueryParam("d", "4%", true));
+        assertEquals(4, list.size());
+        assertEquals("https://h.com/p?a=1&d=4%25", UrlProcessor.reconstructUrl(url, list));
+        try {
+            list.add(0, new UrlProcessor.QueryParam("e", "5", true));
+            fail("Only appends");
+        } catch (UnsupportedOperationException expected) {
+            // ParamList only appends
+        }
+    }
+
+    @Test
+    public void testTrackingCopiesAreIndependent() {
+        CompiledRules rules = CompiledRules.of(TestRules.tracking());
+        String url = "https://h.com/p?utm_source=x&id=1&fbclid=y&id=2";
+        Set<String> removed = new HashSet<>(Collections.singleton("id"));
+        List<UrlProcessor.QueryParam> first = UrlProcessor.parseParamsWithTracking(url, rules, null, NONE);
+        List<UrlProcessor.QueryParam> second = UrlProcessor.parseParamsWithTracking(url, rules, null, removed);
+        assertEquals(4, first.size());
+        assertEquals("id", first.get(0).getName());
+        assertEquals("2", first.get(1).getValue());
+        assertTrue(first.get(0).keep);
+        assertEquals("Remove UTM parameters", first.get(2).removedBy);
+        assertEquals("Remove click ids", first.get(3).removedBy);
+        assertFalse(second.get(0).keep);
+        assertFalse(second.get(1).keep);
+
+        first.get(2).keep = true;
+        ((ParamList) second).setKept(0, true);
+        assertEquals("https://h.com/p?id=1&id=2&utm_source=x", UrlProcessor.reconstructUrl(url, first));
+        assertEquals("https://h.com/p?id=1", UrlProcessor.reconstructUrl(url, second));
+        assertFalse(UrlProcessor.parseParamsWithTracking(url, rules, null, NONE).get(2).keep);
+    }
+
+    @Test
+    public void testMatchesEagerParams() {
+        CompiledRules rules = CompiledRules.of(TestRules.tracking());
+        for (String url : TestRules.sampleCorpus(URLS / 4, 49)) {
+            List<UrlProcessor.QueryParam> lazy = UrlProcessor.parseParamsWithTracking(url, rules, null, NONE);
+            List<UrlProcessor.QueryParam> eager = new ArrayList<>();
+            for (UrlProcessor.QueryParam p : lazy) {
+                eager.add(new UrlProcessor.QueryParam(p.getName(), p.getValue(), p.keep, p.removedBy));
+            }
+            assertEquals(url, UrlProcessor.reconstructUrl(url, eager),
+                UrlProcessor.reconstructUrl(url, UrlProcessor.parseParamsWithTracking(url, rules, null, NONE)));
+        }
+    }
+
+    @Test
+    public void testBenchmark() {
+        TestRules.assumeBenchmarks();
+        List<String> urls = TestRules.sampleCorpus(URLS, 49);
+        CompiledRules rules = CompiledRules.of(TestRules.tracking());
+        long lazy = Long.MAX_VALUE;
+        long eager = Long.MAX_VALUE;
+        long sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String url : urls) {
+                List<UrlProcessor.QueryParam> params = UrlProcessor.parseParamsWithTracking(url, rules, null, NONE);
+                sink += UrlProcessor.reconstructUrl(url, params).length();
+            }
+            long t1 = System.nanoTime();
+            for (String url : urls) {
+                // What every pass did before: one object and one value substring per param
+                List<UrlProcessor.QueryParam> params = new ArrayList<>(
+                    UrlProcessor.parseParamsWithTracking(url, rules, null, NONE));
+                for (UrlProcessor.QueryParam p : params) {
+                    sink += p.getValue().length();
+                }
+                sink += UrlProcessor.reconstructUrl(url, params).length();
+            }
+            long t2 = System.nanoTime();
+            lazy = Math.min(lazy, t1 - start);
+            eager = Math.min(eager, t2 - t1);
+        }
+        System.out.println("ParamList: track and rebuild " + lazy / URLS + " ns lazy, "
+            + eager / URLS + " ns with every param created (" + sink + ")");
+    }
+}
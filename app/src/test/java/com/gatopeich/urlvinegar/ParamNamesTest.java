@@ -0,0 +1,153 @@
+package com.gatopeich.urlvinegar;
+
+import com.gatopeich.urlvinegar.util.ParamNames;
+import com.gatopeich.urlvinegar.util.UrlProcessor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the parameter name symbol table, and for QueryParam names resolved
+ * through it. Benchmark size is tunable with -Durlvinegar.names.urls=N.
+ */
+public class ParamNamesTest {
+
+    private static final int URLS = Integer.getInteger("urlvinegar.names.urls", 2000);
+    private static final int ROUNDS = 20;
+    private static final int THREADS = 4;
+
+    @Test
+    public void testInternIsStable() {
+        int id = ParamNames.intern("utm_source");
+        assertTrue(id != ParamNames.NONE);
+        assertEquals(id, ParamNames.intern(new String("utm_source")));
+        assertSame(ParamNames.name(id), ParamNames.name(ParamNames.intern("utm_source")));
+        assertEquals("utm_source", ParamNames.name(id));
+        assertFalse(id == ParamNames.intern("utm_medium"));
+    }
+
+    @Test
+    public void testInternRegion() {
+        String url = "https://h.com/?fbclid=1&id=2";
+        assertEquals(ParamNames.intern("fbclid"), ParamNames.intern(url, 15, 21));
+        assertEquals(ParamNames.intern("id"), ParamNames.intern(url, 24, 26));
+        assertEquals(ParamNames.intern(""), ParamNames.intern(url, 3, 3));
+    }
+
+    @Test
+    public void testLongNamesAreNotInterned() {
+        char[] chars = new char[ParamNames.MAX_LENGTH + 1];
+        Arrays.fill(chars, 'x');
+        String name = new String(chars);
+        int size = ParamNames.size();
+        assertEquals(ParamNames.NONE, ParamNames.intern(name));
+        assertEquals(size, ParamNames.size());
+        assertTrue(ParamNames.intern(name.substring(1)) != ParamNames.NONE);
+
+        // QueryParam keeps its own String instead
+        UrlProcessor.QueryParam param = new UrlProcessor.QueryParam(name, "1", true);
+        assertEquals(name, param.getName());
+        assertEquals(ParamNames.NONE, param.getNameId());
+        assertTrue(param.sameName(new UrlProcessor.QueryParam(name, "2", false)));
+        assertFalse(param.sameName(new UrlProcessor.QueryParam("x", "1", true)));
+    }
+
+    @Test
+    public void testConcurrentIntern() throws InterruptedException {
+        final List<String> names = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            names.add("concurrent_" + i);
+        }
+        final int[][] ids = new int[THREADS][names.size()];
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        // Each thread walks the names from a different start, to race on inserts
+                        for (int k = 0; k < names.size(); k++) {
+                            int i = (k + thread * 97) % names.size();
+                            ids[thread][i] = ParamNames.intern(names.get(i));
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+        Set<Integer> distinct = new HashSet<>();
+        for (int i = 0; i < names.size(); i++) {
+            for (int t = 1; t < THREADS; t++) {
+                assertEquals(names.get(i), ids[0][i], ids[t][i]);
+            }
+            assertEquals(names.get(i), ParamNames.name(ids[0][i]));
+            distinct.add(ids[0][i]);
+        }
+        assertEquals(names.size(), distinct.size());
+    }
+
+    @Test
+    public void testParsedParamsShareNames() {
+        String url = "https://h.com/p?id=1&utm_source=x&id=2";
+        List<UrlProcessor.QueryParam> params = UrlProcessor.parseQueryParams(url,
+            Collections.singleton("id"));
+        assertEquals(3, params.size());
+        assertSame(params.get(0).getName(), params.get(2).getName());
+        assertEquals(ParamNames.intern("id"), params.get(0).getNameId());
+        assertTrue(params.get(0).sameName(params.get(2)));
+        assertFalse(params.get(0).sameName(params.get(1)));
+        assertTrue(params.get(0).keep);
+        assertFalse(params.get(1).keep);
+        assertEquals("https://h.com/p?id=1&id=2", UrlProcessor.reconstructUrl(url, params));
+    }
+
+    @Test
+    public void testBenchmark() {
+        TestRules.assumeBenchmarks();
+        List<String> urls = TestRules.sampleCorpus(URLS, 48);
+        Set<String> allowed = Collections.emptySet();
+        List<List<UrlProcessor.QueryParam>> parsed = new ArrayList<>();
+        for (String url : urls) {
+            parsed.add(UrlProcessor.parseQueryParams(url, allowed));
+        }
+        long interned = Long.MAX_VALUE;
+        long strings = Long.MAX_VALUE;
+        long sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (List<UrlProcessor.QueryParam> params : parsed) {
+                for (int i = 1; i < params.size(); i++) {
+                    sink += params.get(i).sameName(params.get(i - 1)) ? 1 : 0;
+                }
+            }
+            long t1 = System.nanoTime();
+            for (List<UrlProcessor.QueryParam> params : parsed) {
+                for (int i = 1; i < params.size(); i++) {
+                    sink += params.get(i).getName().equals(params.get(i - 1).getName()) ? 1 : 0;
+                }
+            }
+            long t2 = System.nanoTime();
+            interned = Math.min(interned, t1 - start);
+            strings = Math.min(strings, t2 - t1);
+        }
+        System.out.println("ParamNames: " + ParamNames.size() + " names; sameName " + interned / URLS
+            + " ns, String.equals " + strings / URLS + " ns per URL (" + sink + ")");
+    }
+}
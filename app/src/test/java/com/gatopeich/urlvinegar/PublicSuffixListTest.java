@@ -0,0 +1,226 @@
+package com.gatopeich.urlvinegar;
+
+import com.gatopeich.urlvinegar.util.PublicSuffixList;
+import com.gatopeich.urlvinegar.util.UrlProcessor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the compiled public suffix list and registrable-domain lookup.
+ */
+public class PublicSuffixListTest {
+
+    private static final PublicSuffixList PSL = PublicSuffixList.getDefault();
+
+    private static void checkRegistrable(String host, String expected) {
+        assertEquals(host, expected, PSL.registrableDomain(host));
+    }
+
+    @Test
+    public void testOfficialVectors() {
+        // From publicsuffix.org test_psl.txt
+        checkRegistrable("com", null);
+        checkRegistrable("example.com", "example.com");
+        checkRegistrable("b.example.com", "example.com");
+        checkRegistrable("a.b.example.com", "example.com");
+        checkRegistrable("uk.com", null);
+        checkRegistrable("b.example.uk.com", "example.uk.com");
+        checkRegistrable("example", null);
+        checkRegistrable("b.example.example", "example.example");
+        checkRegistrable("test.ac", "test.ac");
+        checkRegistrable("jp", null);
+        checkRegistrable("www.test.jp", "test.jp");
+        checkRegistrable("ac.jp", null);
+        checkRegistrable("www.test.ac.jp", "test.ac.jp");
+        checkRegistrable("kyoto.jp", null);
+        checkRegistrable("ide.kyoto.jp", null);
+        checkRegistrable("a.b.ide.kyoto.jp", "b.ide.kyoto.jp");
+        checkRegistrable("c.kobe.jp", null);
+        checkRegistrable("a.b.c.kobe.jp", "b.c.kobe.jp");
+        checkRegistrable("city.kobe.jp", "city.kobe.jp");
+        checkRegistrable("www.city.kobe.jp", "city.kobe.jp");
+        checkRegistrable("ck", null);
+        checkRegistrable("test.ck", null);
+        checkRegistrable("b.test.ck", "b.test.ck");
+        checkRegistrable("www.ck", "www.ck");
+        checkRegistrable("www.www.ck", "www.ck");
+        checkRegistrable("us", null);
+        checkRegistrable("www.test.us", "test.us");
+        checkRegistrable("ak.us", null);
+        checkRegistrable("k12.ak.us", null);
+        checkRegistrable("www.test.k12.ak.us", "test.k12.ak.us");
+        checkRegistrable("食狮.com.cn", "食狮.com.cn");
+        checkRegistrable("www.食狮.公司.cn", "食狮.公司.cn");
+        checkRegistrable("公司.cn", null);
+        checkRegistrable("xn--85x722f.com.cn", "xn--85x722f.com.cn");
+        checkRegistrable("www.xn--85x722f.xn--55qx5d.cn", "xn--85x722f.xn--55qx5d.cn");
+        checkRegistrable("xn--55qx5d.cn", null);
+    }
+
+    @Test
+    public void testCaseAndTrailingDot() {
+        checkRegistrable("News.BBC.co.UK", "BBC.co.UK");
+        checkRegistrable("www.example.com.", "example.com");
+        checkRegistrable("", null);
+        assertEquals(-1, PSL.registrableDomainStart("co.uk"));
+        assertEquals(5, PSL.registrableDomainStart("news.bbc.co.uk"));
+    }
+
+    @Test
+    public void testUrlProcessorHelpers() {
+        assertEquals("bbc.co.uk", UrlProcessor.registrableDomain("www.bbc.co.uk"));
+        assertEquals("192.168.0.1", UrlProcessor.registrableDomain("192.168.0.1"));
+        assertEquals("co.uk", UrlProcessor.registrableDomain("co.uk"));
+        assertNull(UrlProcessor.registrableDomain(null));
+        assertTrue(UrlProcessor.isSameSite("m.shop.example.co.uk", "example.co.uk"));
+        assertFalse(UrlProcessor.isSameSite("example.co.uk", "other.co.uk"));
+    }
+
+    @Test
+    public void testCompileRoundTrip() throws Exception {
+        List<String> rules = Arrays.asList("// comment", "", "com", "*.ck", "!www.ck", "co.uk", "公司.cn");
+        PublicSuffixList small = PublicSuffixList.compile(rules);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        small.write(out);
+        PublicSuffixList read = PublicSuffixList.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(new HashSet<>(small.toRules()), new HashSet<>(read.toRules()));
+        assertTrue(read.toRules().contains("xn--55qx5d.cn"));
+        assertEquals("www.ck", read.registrableDomain("a.www.ck"));
+        assertEquals("b.a.ck", read.registrableDomain("c.b.a.ck"));
+        assertEquals("bbc.co.uk", read.registrableDomain("news.bbc.co.uk"));
+
+        // The bundled list decompiles and recompiles to the same automaton
+        PublicSuffixList recompiled = PublicSuffixList.compile(PSL.toRules());
+        assertEquals(PSL.getNodeCount(), recompiled.getNodeCount());
+        assertEquals(PSL.getSizeBytes(), recompiled.getSizeBytes());
+    }
+
+    /**
+     * Naive reference: HashSet of rules, one substring per candidate suffix.
+     */
+    private static class NaiveSuffixList {
+        final Set<String> rules = new HashSet<>();
+        final Set<String> exceptions = new HashSet<>();
+
+        NaiveSuffixList(List<String> list) {
+            for (String rule : list) {
+                if (rule.startsWith("!")) {
+                    exceptions.add(rule.substring(1));
+                } else {
+                    rules.add(rule);
+                }
+            }
+        }
+
+        String registrableDomain(String host) {
+            String[] labels = host.toLowerCase(Locale.ROOT).split("\\.");
+            int n = labels.length;
+            int suffixLabels = 1;
+            for (int i = 0; i < n; i++) {
+                String candidate = join(labels, i);
+                if (exceptions.contains(candidate)) {
+                    suffixLabels = n - i - 1;
+                    break;
+                }
+                if (rules.contains(candidate) || (i + 1 < n && rules.contains("*." + join(labels, i + 1)))) {
+                    suffixLabels = n - i;
+                    break;
+                }
+            }
+            return suffixLabels >= n ? null : join(labels, n - suffixLabels - 1);
+        }
+
+        private static String join(String[] labels, int from) {
+            StringBuilder sb = new StringBuilder(labels[from]);
+            for (int i = from + 1; i < labels.length; i++) {
+                sb.append('.').append(labels[i]);
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Rough heap footprint: String (24) + char array (16 + 2 per char) + HashMap node (32) + table slot (4).
+         */
+        long estimatedBytes() {
+            long bytes = 0;
+            for (Set<String> set : Arrays.asList(rules, exceptions)) {
+                for (String s : set) {
+                    bytes += 24 + 16 + 2L * s.length() + 32 + 4;
+                }
+            }
+            return bytes;
+        }
+    }
+
+    private static List<String> sampleHosts(List<String> rules, int count, long seed) {
+        Random random = new Random(seed);
+        String[] labels = {"www", "a", "shop", "news", "m", "example", "test-1", "city", "b"};
+        List<String> hosts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String rule = rules.get(random.nextInt(rules.size()));
+            if (rule.startsWith("!")) {
+                rule = rule.substring(1);
+            }
+            rule = rule.replace("*", labels[random.nextInt(labels.length)]);
+            StringBuilder host = new StringBuilder();
+            for (int k = random.nextInt(4); k > 0; k--) {
+                host.append(labels[random.nextInt(labels.length)]).append('.');
+            }
+            hosts.add(host.append(rule).toString());
+        }
+        return hosts;
+    }
+
+    @Test
+    public void testMatchesNaive() {
+        List<String> rules = PSL.toRules();
+        NaiveSuffixList naive = new NaiveSuffixList(rules);
+        for (String host : sampleHosts(rules, 20_000, 33)) {
+            assertEquals(host, naive.registrableDomain(host), PSL.registrableDomain(host));
+        }
+        assertTrue(PSL.getSizeBytes() < naive.estimatedBytes() / 2);
+    }
+
+    @Test
+    public void testBenchmark() {
+        TestRules.assumeBenchmarks();
+        List<String> rules = PSL.toRules();
+        NaiveSuffixList naive = new NaiveSuffixList(rules);
+        List<String> hosts = sampleHosts(rules, 20_000, 33);
+        int rounds = Integer.getInteger("urlvinegar.psl.rounds", 10);
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (String host : hosts) {
+                sink += PSL.registrableDomainStart(host);
+            }
+        }
+        double dafsaNs = (System.nanoTime() - start) / (double) (rounds * hosts.size());
+        start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (String host : hosts) {
+                String domain = naive.registrableDomain(host);
+                sink += domain != null ? domain.length() : 0;
+            }
+        }
+        double naiveNs = (System.nanoTime() - start) / (double) (rounds * hosts.size());
+
+        System.out.println(String.format(Locale.US,
+            "PublicSuffixList: %d rules, DAFSA %d KB %.0f ns/lookup, HashSet ~%d KB %.0f ns/lookup (%d)",
+            rules.size(), PSL.getSizeBytes() / 1024, dafsaNs,
+            naive.estimatedBytes() / 1024, naiveNs, sink));
+    }
+}
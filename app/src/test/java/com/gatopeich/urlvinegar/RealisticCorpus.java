@@ -0,0 +1,210 @@
+package com.gatopeich.urlvinegar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic generator of realistic shared links: social, search, shop and video URLs
+ * with the tracking parameters those sites actually add, some wrapped in redirects,
+ * shared bare, inside a message, or several to a message.
+ * The same seed always gives the same corpus, and a longer corpus starts with a shorter one.
+ */
+final class RealisticCorpus {
+    private static final String ALNUM = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+    private static final String[] WORDS = {"best", "cheap", "how", "to", "fix", "android", "phone", "recipe",
+        "news", "review", "vs", "2024", "guide", "free", "music", "video", "live", "match", "weather", "deal"};
+    private static final String[] SUBREDDITS = {"android", "programming", "pics", "news", "cooking"};
+    private static final String[] USERS = {"jane.doe", "some_user", "NewsDesk", "the.shop", "dev_42"};
+
+    private final Random random;
+
+    private RealisticCorpus(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Shared texts: about 60% bare URLs, 20% a URL inside a message, 20% messages with 2-4 URLs.
+     */
+    static List<String> shares(int count, long seed) {
+        RealisticCorpus corpus = new RealisticCorpus(seed);
+        List<String> shares = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            shares.add(corpus.share());
+        }
+        return shares;
+    }
+
+    /**
+     * Number of URLs in a share, counting a redirect with its target as one.
+     */
+    static int countUrls(String share) {
+        int n = 0;
+        for (int i = share.indexOf("://"); i >= 0; i = share.indexOf("://", i + 3)) {
+            n++;
+        }
+        return n;
+    }
+
+    private String share() {
+        int kind = random.nextInt(10);
+        if (kind < 6) {
+            return url();
+        }
+        if (kind < 8) {
+            return pick("Check this out: ", "Look ", "You have to see this ", "") + url()
+                + pick("", " via the app", " :)");
+        }
+        StringBuilder sb = new StringBuilder(pick("Links from today: ", "Compare ", "Sources: "));
+        int n = 2 + random.nextInt(3);
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                sb.append(pick(" and ", ", ", " vs "));
+            }
+            sb.append(url());
+        }
+        return sb.toString();
+    }
+
+    private String url() {
+        int kind = random.nextInt(100);
+        if (kind < 30) {
+            return social();
+        }
+        if (kind < 50) {
+            return search();
+        }
+        if (kind < 70) {
+            return shop();
+        }
+        if (kind < 90) {
+            return video();
+        }
+        return article();
+    }
+
+    private String social() {
+        switch (random.nextInt(5)) {
+            case 0:
+                return "https://www.facebook.com/story.php?story_fbid=" + digits(15) + "&id=" + digits(12)
+                    + maybe("&mibextid=" + token(6)) + "&fbclid=" + token(40);
+            case 1:
+                return "https://" + pick("twitter.com", "x.com") + "/" + pick(USERS) + "/status/" + digits(19)
+                    + maybe("?s=" + (random.nextInt(30) + 1) + maybe("&t=" + token(22)));
+            case 2:
+                return "https://www.instagram.com/" + pick("p", "reel") + "/" + token(11) + "/?igshid=" + token(16)
+                    + maybe("&utm_source=ig_web_copy_link");
+            case 3:
+                return "https://www.reddit.com/r/" + pick(SUBREDDITS) + "/comments/" + token(6).toLowerCase()
+                    + "/" + slug() + "/?utm_source=share&utm_medium=" + pick("android_app", "web2x", "ios_app")
+                    + "&utm_name=androidcss&utm_term=1&utm_content=share_button";
+            default:
+                return "https://www.linkedin.com/posts/" + slug() + "-activity-" + digits(19) + "-" + token(4)
+                    + "?utm_source=share&utm_medium=member_android";
+        }
+    }
+
+    private String search() {
+        String q = query();
+        switch (random.nextInt(4)) {
+            case 0:
+            case 1:
+                return "https://www.google.com/search?q=" + q + "&client=ms-android-google&sca_esv=" + token(16)
+                    + "&sxsrf=" + token(30) + "&ei=" + token(22) + maybe("&oq=" + q) + "&ved=0ah" + token(30)
+                    + maybe("&gclid=" + token(30));
+            case 2:
+                // Search result link wrapped in Google's redirect
+                return "https://www.google.com/url?sa=t&rct=j&q=&esrc=s&source=web&cd=&ved=2ah" + token(20)
+                    + "&url=https%3A%2F%2F" + pick("en.wikipedia.org%2Fwiki%2F", "www.example.com%2Fguide%2F")
+                    + slug() + "&usg=AOvVaw" + token(22);
+            default:
+                return "https://www.bing.com/search?q=" + q + "&form=" + pick("QBLH", "ANNTH1", "APMCS1")
+                    + "&pc=" + pick("U531", "MOZI") + maybe("&cvid=" + token(32));
+        }
+    }
+
+    private String shop() {
+        switch (random.nextInt(4)) {
+            case 0:
+            case 1:
+                return "https://www.amazon." + pick("com", "co.uk", "de") + "/" + slug()
+                    + "/dp/B0" + token(8).toUpperCase() + "/ref=sr_1_" + (random.nextInt(20) + 1)
+                    + "?crid=" + token(13).toUpperCase() + "&keywords=" + query() + "&qid=" + digits(10) + "&sr=8-" + (random.nextInt(20) + 1)
+                    + maybe("&tag=" + token(8).toLowerCase() + "-20") + maybe("&th=1") + maybe("&psc=1");
+            case 2:
+                return "https://www.ebay.com/itm/" + digits(12) + "?hash=item" + token(10)
+                    + maybe("&campid=" + digits(10) + "&customid=&toolid=10001")
+                    + "&mkevt=1&mkcid=1&mkrid=711-53200-19255-0";
+            default:
+                return "https://shop.example.com/products/" + slug() + "?variant=" + digits(14)
+                    + maybe("&utm_source=" + pick("newsletter", "facebook", "google") + "&utm_medium="
+                        + pick("email", "cpc", "social") + "&utm_campaign=" + slug())
+                    + maybe("&ref=" + pick("homepage", "partner")) + maybe("&aff=" + digits(5));
+        }
+    }
+
+    private String video() {
+        String id = token(11);
+        switch (random.nextInt(4)) {
+            case 0:
+            case 1:
+                return "https://" + pick("www.", "m.", "") + "youtube.com/watch?v=" + id
+                    + maybe("&t=" + random.nextInt(3600) + "s") + maybe("&si=" + token(16))
+                    + maybe("&feature=shared") + maybe("&list=PL" + token(32));
+            case 2:
+                return "https://youtu.be/" + id + "?si=" + token(16) + maybe("&t=" + random.nextInt(600));
+            default:
+                return "https://vimeo.com/" + digits(9) + maybe("?share=copy");
+        }
+    }
+
+    private String article() {
+        return "https://" + pick("www.bbc.co.uk/news/", "news.example.org/", "blog.example.net/20")
+            + slug() + "-" + digits(8)
+            + maybe("?utm_source=" + pick("twitter", "whatsapp", "feedly") + "&utm_medium=social"
+                + maybe("&utm_campaign=" + slug()))
+            + maybe("#comments");
+    }
+
+    private String query() {
+        StringBuilder sb = new StringBuilder(pick(WORDS));
+        int n = random.nextInt(4);
+        for (int i = 0; i < n; i++) {
+            sb.append('+').append(pick(WORDS));
+        }
+        return sb.toString();
+    }
+
+    private String slug() {
+        StringBuilder sb = new StringBuilder(pick(WORDS));
+        int n = 1 + random.nextInt(4);
+        for (int i = 0; i < n; i++) {
+            sb.append('-').append(pick(WORDS));
+        }
+        return sb.toString();
+    }
+
+    private String token(int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = ALNUM.charAt(random.nextInt(ALNUM.length()));
+        }
+        return new String(chars);
+    }
+
+    private String digits(int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('0' + (i == 0 ? 1 + random.nextInt(9) : random.nextInt(10)));
+        }
+        return new String(chars);
+    }
+
+    private String maybe(String part) {
+        return random.nextBoolean() ? part : "";
+    }
+
+    private String pick(String... options) {
+        return options[random.nextInt(options.length)];
+    }
+}
@@ -0,0 +1,199 @@
+package com.gatopeich.urlvinegar;
+
+import com.gatopeich.urlvinegar.data.Transform;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Reference implementation of the URL pipeline: the original straightforward
+ * regex code, kept verbatim in behavior so optimized engines in UrlProcessor
+ * can be checked against it. Do not optimize this class.
+ */
+public class ReferenceUrlProcessor {
+
+    /**
+     * Plain query parameter, independent of UrlProcessor.QueryParam.
+     */
+    public static class Param {
+        public final String name;
+        public final String value;
+        public boolean keep;
+        public String removedBy;
+
+        public Param(String name, String value, boolean keep, String removedBy) {
+            this.name = name;
+            this.value = value;
+            this.keep = keep;
+            this.removedBy = removedBy;
+        }
+
+        @Override
+        public String toString() {
+            return name + "=" + value + (keep ? " keep" : " drop") + (removedBy != null ? " by " + removedBy : "");
+        }
+    }
+
+    private ReferenceUrlProcessor() {}
+
+    /**
+     * Returns "valid:url" or "invalid:url" like ProcessResult.
+     */
+    public static String applyTransforms(String url, List<Transform> transforms, Set<Integer> disabledIndices) {
+        String result = applyAll(url, transforms, disabledIndices);
+        boolean valid = result.startsWith("http://") || result.startsWith("https://");
+        return (valid ? "valid:" : "invalid:") + result;
+    }
+
+    public static String applyTextTransforms(String text, List<Transform> transforms, Set<Integer> disabledIndices) {
+        if (text == null) {
+            return null;
+        }
+        return applyAll(text, transforms, disabledIndices).trim();
+    }
+
+    private static String applyAll(String input, List<Transform> transforms, Set<Integer> disabledIndices) {
+        String result = input;
+        for (int i = 0; i < transforms.size(); i++) {
+            Transform transform = transforms.get(i);
+            if (!transform.isEnabled() || (disabledIndices != null && disabledIndices.contains(i))) {
+                continue;
+            }
+            try {
+                Matcher matcher = Pattern.compile(transform.getPattern()).matcher(result);
+                if (matcher.find()) {
+                    result = matcher.replaceAll(transform.getReplacement());
+                }
+            } catch (PatternSyntaxException e) {
+                continue;
+            }
+        }
+        return result;
+    }
+
+    public static List<Param> parseQueryParams(String url, Set<String> allowedParams) {
+        List<Param> params = new ArrayList<>();
+        try {
+            String query = new URI(url).getRawQuery();
+            if (query == null || query.isEmpty()) {
+                return params;
+            }
+            for (String pair : query.split("&")) {
+                String[] keyValue = pair.split("=", 2);
+                String name = keyValue[0];
+                String value = keyValue.length > 1 ? keyValue[1] : "";
+                params.add(new Param(name, value, allowedParams.contains(name), null));
+            }
+        } catch (URISyntaxException e) {
+            // Malformed URLs yield no params
+        }
+        return params;
+    }
+
+    public static String reconstructUrl(String url, List<Param> params) {
+        try {
+            URI uri = new URI(url);
+            StringBuilder queryBuilder = new StringBuilder();
+            for (Param param : params) {
+                if (param.keep) {
+                    if (queryBuilder.length() > 0) {
+                        queryBuilder.append("&");
+                    }
+                    queryBuilder.append(param.name);
+                    if (param.value != null && !param.value.isEmpty()) {
+                        queryBuilder.append("=").append(param.value);
+                    }
+                }
+            }
+            String query = queryBuilder.length() > 0 ? queryBuilder.toString() : null;
+            return new URI(uri.getScheme(), uri.getAuthority(), uri.getPath(), query, uri.getFragment()).toString();
+        } catch (URISyntaxException e) {
+            return url;
+        }
+    }
+
+    public static List<Param> parseParamsWithTracking(
+            String originalUrl, List<Transform> transforms, Set<Integer> disabledIndices,
+            Set<String> userRemovedParams) {
+        List<Param> originalParams = parseQueryParams(originalUrl, new java.util.HashSet<String>());
+        if (originalParams.isEmpty()) {
+            return originalParams;
+        }
+        Map<String, String> removedByMap = new LinkedHashMap<>();
+        String currentUrl = originalUrl;
+        for (int i = 0; i < transforms.size(); i++) {
+            Transform transform = transforms.get(i);
+            if (!transform.isEnabled() || (disabledIndices != null && disabledIndices.contains(i))) {
+                continue;
+            }
+            try {
+                Matcher matcher = Pattern.compile(transform.getPattern()).matcher(currentUrl);
+                if (matcher.find()) {
+                    String afterUrl = matcher.replaceAll(transform.getReplacement());
+                    for (Param origParam : originalParams) {
+                        if (removedByMap.containsKey(origParam.name)) continue;
+                        String paramStr = origParam.name + "=" + origParam.value;
+                        if (currentUrl.contains(paramStr) && !afterUrl.contains(paramStr)) {
+                            removedByMap.put(origParam.name, transform.getName());
+                        }
+                    }
+                    currentUrl = afterUrl;
+                }
+            } catch (PatternSyntaxException e) {
+                continue;
+            }
+        }
+        List<Param> kept = new ArrayList<>();
+        List<Param> removed = new ArrayList<>();
+        for (Param origParam : originalParams) {
+            if (removedByMap.containsKey(origParam.name)) {
+                removed.add(new Param(origParam.name, origParam.value, false, removedByMap.get(origParam.name)));
+            } else {
+                kept.add(new Param(origParam.name, origParam.value, !userRemovedParams.contains(origParam.name), null));
+            }
+        }
+        List<Param> result = new ArrayList<>(kept);
+        result.addAll(removed);
+        return result;
+    }
+
+    public static String extractUrl(String text) {
+        if (text == null) {
+            return null;
+        }
+        Matcher matcher = Pattern.compile("https?://[\\w\\-._~:/?#\\[\\]@!$&'()*+,;=%]+").matcher(text);
+        if (matcher.find()) {
+            return matcher.group();
+        }
+        String trimmed = text.trim();
+        if (trimmed.startsWith("http://") || trimmed.startsWith("https://")) {
+            return trimmed;
+        }
+        return null;
+    }
+
+    /**
+     * Clean every URL span in a text, one at a time, with the dialog's default pipeline.
+     */
+    public static String cleanText(String text, List<Transform> transforms, Set<Integer> disabledIndices) {
+        Matcher matcher = Pattern.compile("https?://[\\w\\-._~:/?#\\[\\]@!$&'()*+,;=%]+").matcher(text);
+        StringBuilder out = new StringBuilder();
+        int last = 0;
+        while (matcher.find()) {
+            String url = matcher.group();
+            out.append(text, last, matcher.start());
+            out.append(reconstructUrl(url, parseParamsWithTracking(
+                url, transforms, disabledIndices, new java.util.HashSet<String>())));
+            last = matcher.end();
+        }
+        return out.append(text, last, text.length()).toString();
+    }
+}
@@ -0,0 +1,113 @@
+package com.gatopeich.urlvinegar;
+
+import com.gatopeich.urlvinegar.data.Transform;
+import com.gatopeich.urlvinegar.util.RuleAnalyzer;
+import com.gatopeich.urlvinegar.util.UrlProcessor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the dead and redundant rule analyzer.
+ */
+public class RuleAnalyzerTest {
+
+    /**
+     * The removal rules of TestRules.tracking(), without its cleanup.
+     */
+    private static List<Transform> baseRules() {
+        return new ArrayList<>(TestRules.tracking().subList(0, 2));
+    }
+
+    private static RuleAnalyzer.Finding find(RuleAnalyzer.Report report, String name) {
+        for (RuleAnalyzer.Finding finding : report.findings) {
+            if (finding.name.equals(name)) {
+                return finding;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testStaticShadowAndDuplicateWithoutCorpus() {
+        List<Transform> transforms = baseRules();
+        transforms.add(new Transform("Remove gclid", "[?&]gclid=[^&]*", "", true));
+        transforms.add(new Transform("Click ids again", "[?&](fbclid|gclid)=[^&]*", "", true));
+        transforms.add(new Transform("Remove utm_source", "[?&]utm_source=[^&]*", "", true));
+        transforms.add(new Transform("Remove ref", "[?&]ref=[^&]*", "", true));
+        transforms.add(new Transform("Disabled twin", "[?&]gclid=[^&]*", "", false));
+        TestRules.addCleanup(transforms, "");
+
+        RuleAnalyzer.Report report = RuleAnalyzer.analyze(transforms, Collections.<String>emptyList());
+        assertEquals(0, report.corpusSize);
+        assertEquals(3, report.findings.size());
+
+        RuleAnalyzer.Finding gclid = find(report, "Remove gclid");
+        assertEquals(RuleAnalyzer.Kind.SHADOWED, gclid.kind);
+        assertEquals("Remove click ids", gclid.coveringName);
+        assertEquals(1, gclid.coveringIndex);
+        assertTrue(gclid.isSafeToPrune());
+
+        assertEquals(RuleAnalyzer.Kind.DUPLICATE, find(report, "Click ids again").kind);
+        assertTrue(find(report, "Click ids again").isSafeToPrune());
+        // Literal covered by a prefixed name
+        assertEquals("Remove UTM parameters", find(report, "Remove utm_source").coveringName);
+        assertNull(find(report, "Remove ref"));
+        assertNull(find(report, "Disabled twin"));
+    }
+
+    @Test
+    public void testReplayFindsNeverFiringAndShadowedRules() {
+        List<Transform> transforms = baseRules();
+        // Not a plain removal rule, so only replay can tell it never gets to act
+        transforms.add(new Transform("Strip gclid value", "([?&]gclid=)[^&]+", "$1", true));
+        transforms.add(new Transform("Mobile to desktop", "://m\\.example\\.invalid/", "://example.invalid/", true));
+        TestRules.addCleanup(transforms, "");
+        List<String> corpus = TestRules.sampleCorpus(RuleAnalyzer.MIN_NEVER_FIRES_CORPUS, 11);
+
+        RuleAnalyzer.Report report = RuleAnalyzer.analyze(transforms, corpus);
+        assertEquals(corpus.size(), report.corpusSize);
+
+        RuleAnalyzer.Finding strip = find(report, "Strip gclid value");
+        assertEquals(RuleAnalyzer.Kind.SHADOWED, strip.kind);
+        assertEquals("Remove click ids", strip.coveringName);
+        assertFalse(strip.isSafeToPrune());
+
+        RuleAnalyzer.Finding mobile = find(report, "Mobile to desktop");
+        assertEquals(RuleAnalyzer.Kind.NEVER_FIRES, mobile.kind);
+        assertEquals(-1, mobile.coveringIndex);
+        assertFalse(mobile.isSafeToPrune());
+        assertNull(find(report, "Remove UTM parameters"));
+        assertTrue(report.getSavedNanosPerUrl() >= strip.nanosPerUrl + mobile.nanosPerUrl);
+
+        // Pruning the findings keeps every output the same
+        List<Transform> pruned = new ArrayList<>(transforms);
+        for (RuleAnalyzer.Finding finding : report.findings) {
+            pruned.remove(transforms.get(finding.index));
+        }
+        for (String url : corpus) {
+            assertEquals(UrlProcessor.cleanUrl(url, transforms, null), UrlProcessor.cleanUrl(url, pruned, null));
+        }
+    }
+
+    @Test
+    public void testSmallCorpusSkipsReplay() {
+        List<Transform> transforms = baseRules();
+        transforms.add(new Transform("Mobile to desktop", "://m\\.example\\.invalid/", "://example.invalid/", true));
+        RuleAnalyzer.Report report = RuleAnalyzer.analyze(transforms,
+            TestRules.sampleCorpus(RuleAnalyzer.MIN_CORPUS - 1, 3));
+        assertEquals(0, report.corpusSize);
+        assertTrue(report.findings.isEmpty());
+
+        // Enough to replay, not enough to call a rule dead
+        List<String> corpus = TestRules.sampleCorpus(RuleAnalyzer.MIN_NEVER_FIRES_CORPUS - 1, 3);
+        report = RuleAnalyzer.analyze(transforms, corpus);
+        assertEquals(corpus.size(), report.corpusSize);
+        assertTrue(report.findings.isEmpty());
+    }
+}
@@ -0,0 +1,102 @@
+package com.gatopeich.urlvinegar;
+
+import com.gatopeich.urlvinegar.data.Transform;
+import com.gatopeich.urlvinegar.util.RuleRegression;
+import com.gatopeich.urlvinegar.util.TransformStats;
+import com.gatopeich.urlvinegar.util.UrlProcessor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for regression runs of edited rules and the URL corpus they use.
+ * Corpus size is tunable with -Durlvinegar.regression.urls=N.
+ */
+public class RuleRegressionTest {
+
+    private static final int URLS = Integer.getInteger("urlvinegar.regression.urls", 10000);
+    private static final int THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private ExecutorService pool;
+
+    @Before
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    private static List<Transform> rules(String clickIdPattern) {
+        List<Transform> transforms = TestRules.tracking();
+        transforms.set(1, new Transform("Remove click ids", clickIdPattern, "", true));
+        return transforms;
+    }
+
+    @Test
+    public void testUnchangedRulesReportNoChanges() {
+        List<String> corpus = TestRules.sampleCorpus(1000, 5);
+        RuleRegression.Report report = new RuleRegression(rules("[?&](fbclid|gclid)=[^&]*"),
+            rules("[?&](fbclid|gclid)=[^&]*"), corpus).run(pool, THREADS);
+        assertFalse(report.cancelled);
+        assertEquals(corpus.size(), report.total);
+        assertEquals(corpus.size(), report.checked);
+        assertEquals(0, report.changed);
+        assertTrue(report.samples.isEmpty());
+    }
+
+    @Test
+    public void testEditedRuleChangesAreCountedAndSampled() {
+        List<Transform> before = rules("[?&](fbclid|gclid)=[^&]*");
+        List<Transform> after = rules("[?&](fbclid)=[^&]*"); // Stops removing gclid
+        List<String> corpus = TestRules.sampleCorpus(URLS, 5);
+        int expected = 0;
+        for (String url : corpus) {
+            if (!UrlProcessor.cleanUrl(url, before, null).equals(UrlProcessor.cleanUrl(url, after, null))) {
+                expected++;
+            }
+        }
+        assertTrue(expected > 0);
+
+        RuleRegression.Report report = new RuleRegression(before, after, corpus).run(pool, THREADS);
+        assertEquals(expected, report.changed);
+        assertEquals(RuleRegression.MAX_SAMPLES, report.samples.size());
+        int previous = -1;
+        for (RuleRegression.Change change : report.samples) {
+            assertTrue(change.after.contains("gclid="));
+            assertFalse(change.before.contains("gclid="));
+            int index = corpus.indexOf(change.input);
+            assertTrue("Samples in corpus order", index > previous);
+            previous = index;
+        }
+    }
+
+    @Test
+    public void testCancelStopsEarly() {
+        RuleRegression regression = new RuleRegression(rules("[?&](fbclid|gclid)=[^&]*"),
+            rules("[?&]gclid=[^&]*"), TestRules.sampleCorpus(URLS, 6));
+        regression.cancel();
+        RuleRegression.Report report = regression.run(pool, THREADS);
+        assertTrue(report.cancelled);
+        assertEquals(0, report.checked);
+    }
+
+    @Test
+    public void testRegressionDoesNotRecordStats() {
+        List<Transform> before = rules("[?&](fbclid|gclid)=[^&]*");
+        TransformStats.Entry entry = TransformStats.peek(before.get(0).getName());
+        long evaluations = entry == null ? 0 : entry.getEvaluations();
+        new RuleRegression(before, rules("[?&]gclid=[^&]*"), TestRules.sampleCorpus(100, 7)).run(pool, THREADS);
+        entry = TransformStats.peek(before.get(0).getName());
+        assertEquals(evaluations, entry == null ? 0 : entry.getEvaluations());
+    }
+}
@@ -0,0 +1,121 @@
+package com.gatopeich.urlvinegar;
+
+import com.gatopeich.urlvinegar.util.LatencyHistogram;
+import com.gatopeich.urlvinegar.util.Spans;
+import com.gatopeich.urlvinegar.util.UrlProcessor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for span instrumentation and Chrome-trace export.
+ */
+public class SpansTest {
+
+    private static final Pattern EVENT = Pattern.compile(
+        "\\{\"name\":\"([^\"]+)\",\"cat\":\"urlvinegar\",\"ph\":\"X\",\"pid\":1,\"tid\":\\d+,"
+            + "\"ts\":(\\d+\\.\\d{3}),\"dur\":(\\d+\\.\\d{3})\\}");
+
+    @Before
+    public void setUp() {
+        Spans.clear();
+    }
+
+    @After
+    public void tearDown() {
+        Spans.setTracer(null);
+        Spans.clear();
+    }
+
+    private static int countEvents(String json, String name) {
+        Matcher m = EVENT.matcher(json);
+        int n = 0;
+        while (m.find()) {
+            if (name == null || m.group(1).equals(name)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Test
+    public void testSpansFeedHistogramsAndTracer() {
+        List<String> sections = new ArrayList<>();
+        Spans.setTracer(new Spans.Tracer() {
+            @Override
+            public void beginSection(String name) {
+                sections.add("begin " + name);
+            }
+
+            @Override
+            public void endSection() {
+                sections.add("end");
+            }
+        });
+        long outer = Spans.begin("test.outer");
+        long inner = Spans.begin("test.inner");
+        Spans.end("test.inner", inner);
+        Spans.end("test.outer", outer);
+        Spans.record("test.async", 1000, 251000);
+
+        assertEquals(4, sections.size()); // Recorded spans have no section
+        assertEquals("begin test.outer", sections.get(0));
+        assertEquals("begin test.inner", sections.get(1));
+
+        LatencyHistogram async = Spans.snapshot().get("test.async");
+        assertEquals(1, async.getCount());
+        assertEquals(250000, async.getMaxNanos());
+        assertTrue(Spans.histogram("test.outer").getMaxNanos() >= Spans.histogram("test.inner").getMaxNanos());
+
+        String json = Spans.chromeTraceJson();
+        assertTrue(json.startsWith("{\"displayTimeUnit\":\"ns\",\"traceEvents\":["));
+        assertEquals(3, countEvents(json, null));
+        assertTrue(json.contains("\"name\":\"test.async\",\"cat\":\"urlvinegar\",\"ph\":\"X\""));
+        assertTrue(json.contains("\"ts\":1.000,\"dur\":250.000}"));
+    }
+
+    @Test
+    public void testTraceKeepsLatestEvents() {
+        for (int i = 0; i < Spans.MAX_EVENTS + 100; i++) {
+            Spans.record(i < 100 ? "test.old" : "test.new", i, i + 10);
+        }
+        String json = Spans.chromeTraceJson();
+        assertEquals(Spans.MAX_EVENTS, countEvents(json, null));
+        assertEquals(0, countEvents(json, "test.old"));
+        assertEquals(Spans.MAX_EVENTS + 100, Spans.histogram("test.old").getCount()
+            + Spans.histogram("test.new").getCount());
+
+        Spans.clear();
+        assertEquals(0, countEvents(Spans.chromeTraceJson(), null));
+        assertEquals(0, Spans.histogram("test.new").getCount());
+    }
+
+    @Test
+    public void testPipelineRecordsNothing() {
+        // Server, provider and regression runs call it by the thousand: spans belong to the dialog
+        final int[] sections = new int[1];
+        Spans.setTracer(new Spans.Tracer() {
+            @Override
+            public void beginSection(String name) {
+                sections[0]++;
+            }
+
+            @Override
+            public void endSection() {
+            }
+        });
+        String url = "https://example.com/a?id=1&utm_source=x";
+        UrlProcessor.applyTransforms(url, TestRules.tracking(), null);
+        assertEquals("https://example.com/a?id=1", UrlProcessor.cleanUrl(url, TestRules.tracking(), null));
+        assertEquals(0, sections[0]);
+        assertEquals(0, countEvents(Spans.chromeTraceJson(), null));
+    }
+}
@@ -0,0 +1,162 @@
+package com.gatopeich.urlvinegar;
+
+import com.gatopeich.urlvinegar.util.StreamCleaner;
+import com.gatopeich.urlvinegar.util.UrlProcessor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for chunked cleaning of large text streams.
+ * The large stream is 24 MB, or 100 MB with benchmarks; -Durlvinegar.stream.mb=N sets it.
+ */
+public class StreamCleanerTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static String clean(String text, int chunkBytes) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamCleaner cleaner = new StreamCleaner(TestRules.tracking(), null, chunkBytes);
+        cleaner.clean(Channels.newChannel(new java.io.ByteArrayInputStream(text.getBytes(UTF_8))),
+            Channels.newChannel(out), null);
+        return new String(out.toByteArray(), UTF_8);
+    }
+
+    @Test
+    public void testSmallChunksMatchInMemoryCleaning() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("Línea ").append(i).append(" 😀 ver https://example.com/p/")
+                .append(i).append("?id=").append(i).append("&utm_source=x&fbclid=abc ")
+                .append("größe 日本語\n");
+        }
+        String expected = UrlProcessor.cleanText(text.toString(), TestRules.tracking(), null);
+        // Odd chunk sizes split URLs, multibyte sequences and surrogate pairs
+        for (int chunk : new int[] {7, 64, 1000, StreamCleaner.DEFAULT_CHUNK_BYTES}) {
+            assertEquals("chunk " + chunk, expected, clean(text.toString(), chunk));
+        }
+        assertFalse(expected.contains("utm_source"));
+    }
+
+    @Test
+    public void testUrlLongerThanCarryDoesNotFail() throws Exception {
+        StringBuilder text = new StringBuilder("see https://example.com/");
+        for (int i = 0; i < 40_000; i++) {
+            text.append('a');
+        }
+        text.append(" end");
+        String result = clean(text.toString(), 4096);
+        assertEquals(text.length(), result.length());
+        assertTrue(result.endsWith(" end"));
+    }
+
+    @Test
+    public void testEmptyStream() throws Exception {
+        assertEquals("", clean("", 64));
+    }
+
+    @Test
+    public void testLargeStreamBoundedMemory() throws Exception {
+        long megabytes = Long.getLong("urlvinegar.stream.mb", TestRules.BENCHMARKS ? 100 : 24);
+        final long total = megabytes * 1024 * 1024;
+        byte[] line = "Shared https://example.com/a?id=7&utm_source=feed&fbclid=zz ünïcödé text\n"
+            .getBytes(UTF_8);
+        long lines = total / line.length;
+        CountingChannel sink = new CountingChannel();
+        StreamCleaner cleaner = new StreamCleaner(TestRules.tracking(), null);
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        long start = System.nanoTime();
+        cleaner.clean(new RepeatingChannel(line, lines), sink, null);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.gc();
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+
+        assertEquals(lines * line.length, cleaner.getBytesRead());
+        assertEquals(lines, cleaner.getUrlsCleaned());
+        // Each line loses "&utm_source=feed&fbclid=zz"
+        assertEquals(lines * (line.length - 26), sink.count);
+        assertTrue(cleaner.getBufferCapacityChars() < 256 * 1024);
+        assertTrue("retained " + (heapAfter - heapBefore), heapAfter - heapBefore < 16L * 1024 * 1024);
+        if (TestRules.BENCHMARKS) {
+            System.out.println(String.format(Locale.US, "StreamCleaner: %d MB in %.2f s, %.1f MB/s",
+                megabytes, seconds, megabytes / seconds));
+        }
+    }
+
+    /**
+     * Generates a line repeatedly without materializing the whole input.
+     */
+    private static class RepeatingChannel implements ReadableByteChannel {
+        private final byte[] line;
+        private long remaining;
+        private int offset;
+
+        RepeatingChannel(byte[] line, long count) {
+            this.line = line;
+            this.remaining = count;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (remaining == 0) {
+                return -1;
+            }
+            int n = 0;
+            while (dst.hasRemaining() && remaining > 0) {
+                int len = Math.min(dst.remaining(), line.length - offset);
+                dst.put(line, offset, len);
+                n += len;
+                offset += len;
+                if (offset == line.length) {
+                    offset = 0;
+                    remaining--;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    /**
+     * Discards output, counting bytes.
+     */
+    private static class CountingChannel implements WritableByteChannel {
+        long count;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            count += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {}
+    }
+}
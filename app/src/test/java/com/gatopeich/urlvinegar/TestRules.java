@@ -0,0 +1,111 @@
+package com.gatopeich.urlvinegar;
+
+import com.gatopeich.urlvinegar.data.DefaultTransforms;
+import com.gatopeich.urlvinegar.data.Transform;
+
+import org.junit.Assume;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Rule lists and a URL corpus shared by the unit tests, and the switch for the benchmarks
+ * among them.
+ * Benchmarks print timings and take seconds each, so they only run with
+ * -Durlvinegar.benchmarks=true.
+ */
+final class TestRules {
+
+    static final boolean BENCHMARKS = Boolean.getBoolean("urlvinegar.benchmarks");
+
+    private TestRules() {
+    }
+
+    /**
+     * Skip the calling test unless benchmarks are enabled.
+     */
+    static void assumeBenchmarks() {
+        Assume.assumeTrue("benchmark, run with -Durlvinegar.benchmarks=true", BENCHMARKS);
+    }
+
+    /**
+     * The app's default transforms, as a fresh list.
+     */
+    static List<Transform> defaults() {
+        return DefaultTransforms.create();
+    }
+
+    /**
+     * The defaults with a name suffix, so stats and snapshots do not leak between tests.
+     */
+    static List<Transform> defaults(String suffix) {
+        List<Transform> transforms = new ArrayList<>();
+        for (Transform t : DefaultTransforms.create()) {
+            transforms.add(new Transform(t.getName() + suffix, t.getPattern(), t.getReplacement(), t.isEnabled()));
+        }
+        return transforms;
+    }
+
+    /**
+     * UTM parameters and click ids removal, followed by the query string cleanup.
+     */
+    static List<Transform> tracking() {
+        List<Transform> transforms = new ArrayList<>();
+        transforms.add(new Transform("Remove UTM parameters", "[?&](utm_[a-z_]+)=[^&]*", "", true));
+        transforms.add(new Transform("Remove click ids", "[?&](fbclid|gclid)=[^&]*", "", true));
+        addCleanup(transforms, "");
+        return transforms;
+    }
+
+    /**
+     * A rule removing one parameter.
+     */
+    static Transform removal(String name, String param) {
+        return new Transform(name, "[?&]" + param + "=[^&]*", "", true);
+    }
+
+    /**
+     * Append the two rules the defaults end with: tidy up separators, drop an empty query.
+     */
+    static void addCleanup(List<Transform> transforms, String suffix) {
+        transforms.add(new Transform("Clean up query string" + suffix, "(\\?)&+|&+(?=&)|&+$", "$1", true));
+        transforms.add(new Transform("Remove empty query string" + suffix, "\\?$", "", true));
+    }
+
+    /**
+     * Deterministic sample of shared URLs: tracking params, redirect wrappers,
+     * YouTube links and plain URLs, for benchmarks and tests.
+     */
+    static List<String> sampleCorpus(int count, long seed) {
+        Random random = new Random(seed);
+        String[] hosts = {"www.example.com", "news.example.co.uk", "shop.example.org", "blog.example.net"};
+        String[] params = {"id", "page", "q", "lang", "sort", "utm_source", "utm_medium", "utm_campaign",
+            "fbclid", "gclid", "ref", "tag", "source"};
+        List<String> corpus = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String url;
+            switch (random.nextInt(8)) {
+                case 0:
+                    url = "https://www.youtube.com/watch?v=vid" + random.nextInt(100000)
+                        + (random.nextBoolean() ? "&t=" + random.nextInt(600) + "s" : "");
+                    break;
+                case 1:
+                    url = "https://www.google.com/url?q=https%3A%2F%2F" + hosts[random.nextInt(hosts.length)]
+                        + "%2Fa%3Futm_source%3Dg&sa=D&usg=x" + random.nextInt(1000);
+                    break;
+                default:
+                    StringBuilder sb = new StringBuilder("https://").append(hosts[random.nextInt(hosts.length)])
+                        .append("/article/").append(random.nextInt(100000));
+                    int n = random.nextInt(6);
+                    for (int p = 0; p < n; p++) {
+                        sb.append(p == 0 ? '?' : '&').append(params[random.nextInt(params.length)])
+                            .append('=').append(Integer.toHexString(random.nextInt()));
+                    }
+                    url = sb.toString();
+            }
+            corpus.add(url);
+        }
+        return corpus;
+    }
+}
@@ -0,0 +1,200 @@
+package com.gatopeich.urlvinegar;
+
+import com.gatopeich.urlvinegar.data.Transform;
+import com.gatopeich.urlvinegar.util.CompiledRules;
+import com.gatopeich.urlvinegar.util.UrlProcessor;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+/**
+ * End-to-end throughput regression gate. Pushes a realistic corpus of shared texts through
+ * the same steps as ProcessingActivity (extract, apply transforms, unwrap, track params,
+ * reconstruct) and checks the results against throughput-golden.txt. The URLs per second
+ * only vary with the machine and its load, so they are checked against
+ * throughput-baseline.properties, minus its tolerance, only with -Durlvinegar.benchmarks=true.
+ * Corpus size and tolerance are tunable with -Durlvinegar.throughput.shares=N and
+ * -Durlvinegar.throughput.tolerance=F; -Durlvinegar.throughput.update=true rewrites both
+ * files under src/test/resources, for when outputs change on purpose or on new reference hardware.
+ */
+public class ThroughputRegressionTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final long SEED = 46;
+    private static final int GOLDEN_SHARES = 300;
+    private static final int SHARES = Integer.getInteger("urlvinegar.throughput.shares", 2000);
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+    private static final boolean UPDATE = Boolean.getBoolean("urlvinegar.throughput.update");
+    private static final String RESOURCES = "src/test/resources/com/gatopeich/urlvinegar/";
+
+    private static List<Transform> transforms;
+    private static boolean cacheWasEnabled;
+
+    static volatile Object blackhole;
+
+    @BeforeClass
+    public static void setUpClass() {
+        transforms = TestRules.defaults();
+        // Every round must do the work, not hit the cache
+        cacheWasEnabled = UrlProcessor.getResultCache().isEnabled();
+        UrlProcessor.getResultCache().setEnabled(false);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        UrlProcessor.getResultCache().setEnabled(cacheWasEnabled);
+    }
+
+    /**
+     * What ProcessingActivity shows for a shared text, before any user override.
+     */
+    private static String process(String text) {
+        if (UrlProcessor.hasMultipleUrls(text)) {
+            return UrlProcessor.cleanEachUrl(text, transforms, null);
+        }
+        String url = UrlProcessor.extractUrl(text);
+        return url != null ? processSingleUrl(url) : null;
+    }
+
+    private static String processSingleUrl(String url) {
+        UrlProcessor.Unwrapped unwrapped = UrlProcessor.unwrapRedirects(url);
+        String target = unwrapped != null ? unwrapped.url : url;
+        List<UrlProcessor.QueryParam> params = UrlProcessor.parseParamsWithTracking(
+            target, CompiledRules.of(transforms), null, Collections.<String>emptySet());
+        return UrlProcessor.reconstructUrl(target, params);
+    }
+
+    private static List<String> readGolden() throws IOException {
+        InputStream in = ThroughputRegressionTest.class.getResourceAsStream("throughput-golden.txt");
+        assertNotNull("throughput-golden.txt not found; run with -Durlvinegar.throughput.update=true", in);
+        List<String> lines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    private static void write(String name, String content) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(new File(RESOURCES + name)), UTF_8);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+        System.out.println("Throughput: updated " + RESOURCES + name);
+    }
+
+    @Test
+    public void testGoldenOutputs() throws IOException {
+        List<String> shares = RealisticCorpus.shares(GOLDEN_SHARES, SEED);
+        StringBuilder golden = new StringBuilder();
+        for (String share : shares) {
+            String result = process(share);
+            // The activity-equivalent path agrees with the batch entry point
+            assertEquals(share, UrlProcessor.cleanShared(share, true, transforms), result);
+            golden.append(share).append('\t').append(result).append('\n');
+        }
+        if (UPDATE) {
+            write("throughput-golden.txt", golden.toString());
+            return;
+        }
+        List<String> expected = readGolden();
+        assertEquals(GOLDEN_SHARES, expected.size());
+        String[] actual = golden.toString().split("\n");
+        for (int i = 0; i < GOLDEN_SHARES; i++) {
+            assertEquals("Share " + i, expected.get(i), actual[i]);
+        }
+    }
+
+    @Test
+    public void testGoldenCorpusIsRealistic() throws IOException {
+        List<String> shares = RealisticCorpus.shares(GOLDEN_SHARES, SEED);
+        int urls = 0;
+        int multi = 0;
+        int changed = 0;
+        for (String share : shares) {
+            int n = RealisticCorpus.countUrls(share);
+            urls += n;
+            multi += n > 1 ? 1 : 0;
+            changed += share.equals(process(share)) ? 0 : 1;
+        }
+        assertTrue(multi > GOLDEN_SHARES / 10);
+        assertTrue(urls > GOLDEN_SHARES * 5 / 4);
+        // Most real shares carry some tracking to remove
+        assertTrue(changed > GOLDEN_SHARES / 2);
+        assertEquals(shares.get(0), RealisticCorpus.shares(1, SEED).get(0));
+    }
+
+    @Test
+    public void testThroughputAboveBaseline() throws IOException {
+        if (!UPDATE) {
+            TestRules.assumeBenchmarks();
+        }
+        List<String> shares = RealisticCorpus.shares(SHARES, SEED);
+        long urls = 0;
+        for (String share : shares) {
+            urls += RealisticCorpus.countUrls(share);
+        }
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (String share : shares) {
+                blackhole = process(share);
+            }
+        }
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String share : shares) {
+                blackhole = process(share);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        long urlsPerSecond = urls * 1_000_000_000L / best;
+
+        Properties baseline = new Properties();
+        InputStream in = ThroughputRegressionTest.class.getResourceAsStream("throughput-baseline.properties");
+        assertNotNull("throughput-baseline.properties not found", in);
+        try {
+            baseline.load(in);
+        } finally {
+            in.close();
+        }
+        long expected = Long.parseLong(baseline.getProperty("urlsPerSecond").trim());
+        double tolerance = Double.parseDouble(System.getProperty("urlvinegar.throughput.tolerance",
+            baseline.getProperty("tolerance").trim()));
+        long floor = (long) (expected * (1 - tolerance));
+        System.out.println(String.format(Locale.US, "Throughput: %d URLs/s over %d shares (%d URLs),"
+            + " baseline %d, floor %d", urlsPerSecond, SHARES, urls, expected, floor));
+        if (UPDATE) {
+            write("throughput-baseline.properties", "# URLs per second of ThroughputRegressionTest on the reference"
+                + " machine, and the\n# fraction below it that still passes.\nurlsPerSecond=" + urlsPerSecond
+                + "\ntolerance=" + baseline.getProperty("tolerance").trim() + "\n");
+            return;
+        }
+        assertTrue("Throughput regressed: " + urlsPerSecond + " URLs/s, below " + floor
+            + " (baseline " + expected + " minus " + tolerance + ")", urlsPerSecond >= floor);
+    }
+}
@@ -0,0 +1,81 @@
+package com.gatopeich.urlvinegar;
+
+import com.gatopeich.urlvinegar.data.Transform;
+import com.gatopeich.urlvinegar.util.UrlBatch;
+import com.gatopeich.urlvinegar.util.UrlProcessor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for batch cleaning and Binder-sized chunking.
+ */
+public class UrlBatchTest {
+
+    private static List<String> urls(int count) {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            urls.add("https://example.com/article/" + i + "?id=" + i + "&utm_source=feed&utm_medium=rss");
+        }
+        return urls;
+    }
+
+    @Test
+    public void testParcelSize() {
+        assertEquals(4, UrlBatch.parcelSize((String) null));
+        assertEquals(8, UrlBatch.parcelSize(""));   // Terminator padded to 4
+        assertEquals(8, UrlBatch.parcelSize("a"));
+        assertEquals(12, UrlBatch.parcelSize("ab"));
+        assertEquals(4 + 8 + 12, UrlBatch.parcelSize(new String[]{"a", "ab"}));
+    }
+
+    @Test
+    public void testCleanMatchesCleanUrl() {
+        List<Transform> rules = TestRules.tracking();
+        String[] batch = {
+            "https://example.com/?utm_source=x",
+            null,
+            "https://www.google.com/url?q=https%3A%2F%2Fexample.org%2F%3Futm_medium%3Dy&sa=D",
+            "not a url",
+        };
+        String[] cleaned = UrlBatch.clean(batch, rules);
+        assertEquals(batch.length, cleaned.length);
+        assertEquals("https://example.com/", cleaned[0]);
+        assertNull(cleaned[1]);
+        assertEquals(UrlProcessor.cleanUrl(batch[2], rules, null), cleaned[2]);
+        assertEquals(UrlProcessor.cleanUrl(batch[3], rules, null), cleaned[3]);
+    }
+
+    @Test
+    public void testSplitKeepsOrderWithinBudget() {
+        List<String> urls = urls(20_000);
+        List<String[]> chunks = UrlBatch.split(urls, UrlBatch.MAX_BATCH_BYTES);
+        assertTrue(chunks.size() > 1);
+        List<String> joined = new ArrayList<>();
+        for (String[] chunk : chunks) {
+            assertTrue(UrlBatch.parcelSize(chunk) <= UrlBatch.MAX_BATCH_BYTES);
+            joined.addAll(Arrays.asList(chunk));
+        }
+        assertEquals(urls, joined);
+    }
+
+    @Test
+    public void testSplitOversizedUrlAlone() {
+        StringBuilder huge = new StringBuilder("https://example.com/?q=");
+        while (huge.length() < 1000) {
+            huge.append("x");
+        }
+        List<String> urls = Arrays.asList("https://a.com/", huge.toString(), "https://b.com/");
+        List<String[]> chunks = UrlBatch.split(urls, 1024);
+        assertEquals(3, chunks.size());
+        assertArrayEquals(new String[]{huge.toString()}, chunks.get(1));
+
+        assertTrue(UrlBatch.split(Collections.<String>emptyList(), 1024).isEmpty());
+    }
+}
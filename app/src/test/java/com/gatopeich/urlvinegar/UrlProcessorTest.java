@@ -1,6 +1,8 @@
 package com.gatopeich.urlvinegar;
 
 import com.gatopeich.urlvinegar.data.Transform;
+import com.gatopeich.urlvinegar.util.ResultCache;
+import com.gatopeich.urlvinegar.util.TransformStats;
 import com.gatopeich.urlvinegar.util.UrlProcessor;
 
 import org.junit.Test;
@@ -134,10 +136,10 @@ public class UrlProcessorTest {
         List<UrlProcessor.QueryParam> params = UrlProcessor.parseQueryParams(url, allowed);
         
         assertEquals(2, params.size());
-        assertEquals("id", params.get(0).name);
-        assertEquals("123", params.get(0).value);
+        assertEquals("id", params.get(0).getName());
+        assertEquals("123", params.get(0).getValue());
         assertTrue(params.get(0).keep);
-        assertEquals("utm_source", params.get(1).name);
+        assertEquals("utm_source", params.get(1).getName());
         assertFalse(params.get(1).keep);
     }
 
@@ -258,17 +260,17 @@ public class UrlProcessorTest {
         assertEquals(3, params.size());
 
         // id should be kept (first, since kept comes first)
-        assertEquals("id", params.get(0).name);
+        assertEquals("id", params.get(0).getName());
         assertTrue(params.get(0).keep);
         assertNull(params.get(0).removedBy);
 
         // utm_source should be removed by "Remove UTM"
-        assertEquals("utm_source", params.get(1).name);
+        assertEquals("utm_source", params.get(1).getName());
         assertFalse(params.get(1).keep);
         assertEquals("Remove UTM", params.get(1).removedBy);
 
         // utm_medium should be removed by "Remove UTM"
-        assertEquals("utm_medium", params.get(2).name);
+        assertEquals("utm_medium", params.get(2).getName());
         assertFalse(params.get(2).keep);
         assertEquals("Remove UTM", params.get(2).removedBy);
     }
@@ -286,10 +288,10 @@ public class UrlProcessorTest {
 
         assertEquals(2, params.size());
         // id kept
-        assertEquals("id", params.get(0).name);
+        assertEquals("id", params.get(0).getName());
         assertTrue(params.get(0).keep);
         // ref removed by user (no transform)
-        assertEquals("ref", params.get(1).name);
+        assertEquals("ref", params.get(1).getName());
         assertFalse(params.get(1).keep);
         assertNull(params.get(1).removedBy); // no transform, removed by user
     }
@@ -330,10 +332,10 @@ public class UrlProcessorTest {
         UrlProcessor.QueryParam utmParam = null;
         UrlProcessor.QueryParam refParam = null;
         for (UrlProcessor.QueryParam p : params) {
-            if ("goal".equals(p.name)) goalParam = p;
-            else if ("id".equals(p.name)) idParam = p;
-            else if ("utm_source".equals(p.name)) utmParam = p;
-            else if ("ref".equals(p.name)) refParam = p;
+            if ("goal".equals(p.getName())) goalParam = p;
+            else if ("id".equals(p.getName())) idParam = p;
+            else if ("utm_source".equals(p.getName())) utmParam = p;
+            else if ("ref".equals(p.getName())) refParam = p;
         }
 
         // "goal" should be kept, NOT removed
@@ -402,8 +404,8 @@ public class UrlProcessorTest {
         UrlProcessor.QueryParam goalParam = null;
         UrlProcessor.QueryParam mcParam = null;
         for (UrlProcessor.QueryParam p : params) {
-            if ("goal".equals(p.name)) goalParam = p;
-            if ("mc_cid".equals(p.name)) mcParam = p;
+            if ("goal".equals(p.getName())) goalParam = p;
+            if ("mc_cid".equals(p.getName())) mcParam = p;
         }
         assertNotNull(goalParam);
         assertTrue(goalParam.keep);
@@ -583,4 +585,326 @@ public class UrlProcessorTest {
         String result = UrlProcessor.applyTextTransforms("hello foo", transforms, disabled);
         assertEquals("bye foo", result);
     }
+
+    // --- Tests for TransformStats ---
+
+    @Test
+    public void testTransformStats_recordsEvaluationsAndMatches() {
+        TransformStats.reset();
+        List<Transform> transforms = new ArrayList<>();
+        transforms.add(new Transform("Stats UTM", "[?&]utm_source=[^&]*", "", true));
+        transforms.add(new Transform("Stats never", "neverpresent", "", true));
+
+        UrlProcessor.applyTransforms("https://example.com?utm_source=a", transforms, null);
+        UrlProcessor.applyTransforms("https://example.com?id=1", transforms, null);
+
+        TransformStats.Entry utm = TransformStats.peek("Stats UTM");
+        assertNotNull(utm);
+        assertEquals(2, utm.getEvaluations());
+        assertEquals(1, utm.getMatches());
+        assertTrue(utm.getMaxNanos() > 0);
+        assertTrue(utm.getTotalNanos() >= utm.getMaxNanos());
+
+        TransformStats.Entry never = TransformStats.peek("Stats never");
+        assertEquals(2, never.getEvaluations());
+        assertEquals(0, never.getMatches());
+    }
+
+    @Test
+    public void testTransformStats_invalidRegexNotRecorded() {
+        TransformStats.reset();
+        List<Transform> transforms = new ArrayList<>();
+        transforms.add(new Transform("Stats invalid", "[bad(", "", true));
+
+        UrlProcessor.applyTransforms("https://example.com", transforms, null);
+        assertNull(TransformStats.peek("Stats invalid"));
+    }
+
+    @Test
+    public void testTransformStats_restoreKeepsMax() {
+        TransformStats.reset();
+        TransformStats.Entry entry = TransformStats.get("Restored");
+        entry.restore(10, 4, 5000, 900);
+        entry.restore(1, 1, 100, 100);
+        assertEquals(11, entry.getEvaluations());
+        assertEquals(5, entry.getMatches());
+        assertEquals(900, entry.getMaxNanos());
+        assertEquals(5100 / 11, entry.getMeanNanos());
+    }
+
+    // --- Tests for the result cache ---
+
+    @Test
+    public void testResultCache_repeatedUrlHitsCache() {
+        ResultCache cache = UrlProcessor.getResultCache();
+        cache.setEnabled(true);
+        List<Transform> transforms = new ArrayList<>();
+        transforms.add(new Transform("Cache UTM", "[?&]utm_source=[^&]*", "", true));
+
+        String url = "https://example.com/cache?utm_source=a";
+        long hits = cache.getHits();
+        String first = UrlProcessor.applyTransforms(url, transforms, null).url;
+        String second = UrlProcessor.applyTransforms(url, transforms, null).url;
+
+        assertEquals("https://example.com/cache", first);
+        assertEquals(first, second);
+        assertEquals(hits + 1, cache.getHits());
+    }
+
+    @Test
+    public void testResultCache_ruleChangeNotServedStale() {
+        UrlProcessor.getResultCache().setEnabled(true);
+        List<Transform> transforms = new ArrayList<>();
+        transforms.add(new Transform("Cache toggle", "[?&]gclid=[^&]*", "", true));
+
+        String url = "https://example.com/stale?gclid=1";
+        assertEquals("https://example.com/stale", UrlProcessor.applyTransforms(url, transforms, null).url);
+        transforms.get(0).setEnabled(false);
+        assertEquals(url, UrlProcessor.applyTransforms(url, transforms, null).url);
+    }
+
+    @Test
+    public void testResultCache_trackedParamsAreCopies() {
+        UrlProcessor.getResultCache().setEnabled(true);
+        List<Transform> transforms = new ArrayList<>();
+        transforms.add(new Transform("Cache ref", "[?&]ref=[^&]*", "", true));
+        String url = "https://example.com/copies?id=1&ref=x";
+
+        List<UrlProcessor.QueryParam> first = UrlProcessor.parseParamsWithTracking(
+            url, transforms, null, new HashSet<String>());
+        first.get(0).keep = false;
+        first.get(1).keep = true;
+
+        Set<String> userRemoved = new HashSet<>();
+        userRemoved.add("id");
+        List<UrlProcessor.QueryParam> second = UrlProcessor.parseParamsWithTracking(
+            url, transforms, null, userRemoved);
+        assertFalse(second.get(0).keep); // removed by user on this call
+        assertFalse(second.get(1).keep);
+        assertEquals("Cache ref", second.get(1).removedBy);
+
+        List<UrlProcessor.QueryParam> third = UrlProcessor.parseParamsWithTracking(
+            url, transforms, null, new HashSet<String>());
+        assertTrue(third.get(0).keep);
+    }
+
+    @Test
+    public void testResultCache_hitsCountInStats() {
+        UrlProcessor.getResultCache().setEnabled(true);
+        List<Transform> transforms = new ArrayList<>();
+        transforms.add(new Transform("Cache stats hit", "[?&]gclid=[^&]*", "", true));
+        transforms.add(new Transform("Cache stats miss", "[?&]nothing=[^&]*", "", true));
+        TransformStats.Entry hit = TransformStats.get("Cache stats hit");
+        TransformStats.Entry miss = TransformStats.get("Cache stats miss");
+
+        String url = "https://example.com/stats?id=1&gclid=2";
+        for (int i = 0; i < 3; i++) {
+            UrlProcessor.applyTransforms(url, transforms, null);
+            UrlProcessor.parseParamsWithTracking(url, transforms, null, new HashSet<String>());
+        }
+        // Two cached runs of each for every path, counted but not timed
+        assertEquals(6, hit.getEvaluations());
+        assertEquals(6, hit.getMatches());
+        assertEquals(4, hit.getCachedEvaluations());
+        assertEquals(6, miss.getEvaluations());
+        assertEquals(0, miss.getMatches());
+        assertEquals(hit.getTotalNanos() / 2, hit.getMeanNanos());
+
+        // A URL without params runs no transform for tracking, cached or not
+        UrlProcessor.parseParamsWithTracking("https://example.com/stats", transforms, null, new HashSet<String>());
+        UrlProcessor.parseParamsWithTracking("https://example.com/stats", transforms, null, new HashSet<String>());
+        assertEquals(6, hit.getEvaluations());
+    }
+
+    @Test
+    public void testResultCache_disabledNeverHits() {
+        ResultCache cache = UrlProcessor.getResultCache();
+        cache.setEnabled(false);
+        try {
+            List<Transform> transforms = new ArrayList<>();
+            transforms.add(new Transform("Cache off", "x", "y", true));
+            long hits = cache.getHits();
+            UrlProcessor.applyTextTransforms("xx", transforms, null);
+            UrlProcessor.applyTextTransforms("xx", transforms, null);
+            assertEquals(hits, cache.getHits());
+            assertEquals(0, cache.size());
+        } finally {
+            cache.setEnabled(true);
+        }
+    }
+
+    @Test
+    public void testResultCache_boundedLru() {
+        ResultCache cache = new ResultCache(2);
+        ResultCache.Key a = new ResultCache.Key(1, 7L, "", "a");
+        ResultCache.Key b = new ResultCache.Key(1, 7L, "", "b");
+        ResultCache.Key c = new ResultCache.Key(1, 7L, "", "c");
+        cache.put(a, "A");
+        cache.put(b, "B");
+        assertEquals("A", cache.get(a)); // a is now most recent
+        cache.put(c, "C");
+        assertNull(cache.get(b));
+        assertEquals("A", cache.get(a));
+        assertEquals(2, cache.size());
+        assertEquals(2.0 / 3, cache.getHitRate(), 1e-9);
+    }
+
+    // --- Tests for multi-URL text cleaning ---
+
+    @Test
+    public void testHasMultipleUrls() {
+        assertFalse(UrlProcessor.hasMultipleUrls(null));
+        assertFalse(UrlProcessor.hasMultipleUrls("see https://example.com"));
+        assertTrue(UrlProcessor.hasMultipleUrls("https://a.com and http://b.com"));
+    }
+
+    @Test
+    public void testCleanText_cleansEveryUrl() {
+        String text = "First https://a.com/x?utm_source=n&id=1 then\nhttps://b.com/?fbclid=z and done.";
+        String result = UrlProcessor.cleanText(text, TestRules.tracking(), null);
+        assertEquals("First https://a.com/x?id=1 then\nhttps://b.com/ and done.", result);
+    }
+
+    @Test
+    public void testCleanText_noUrls() {
+        assertEquals("nothing here", UrlProcessor.cleanText("nothing here", TestRules.tracking(), null));
+        assertNull(UrlProcessor.cleanText(null, TestRules.tracking(), null));
+    }
+
+    @Test
+    public void testCleanText_parallelMatchesSequential() {
+        StringBuilder text = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("link ").append(i).append(": https://example.com/").append(i)
+                .append("?utm_medium=m&page=").append(i).append("&fbclid=f\n");
+            expected.append("link ").append(i).append(": https://example.com/").append(i)
+                .append("?page=").append(i).append("\n");
+        }
+        assertEquals(expected.toString(), UrlProcessor.cleanText(text.toString(), TestRules.tracking(), null));
+    }
+
+    @Test
+    public void testUnwrapRedirects_google() {
+        String url = "https://www.google.com/url?sa=t&url=https%3A%2F%2Fexample.com%2Fa%3Fid%3D1%26utm_source%3Dg&usg=X";
+        UrlProcessor.Unwrapped unwrapped = UrlProcessor.unwrapRedirects(url);
+        assertNotNull(unwrapped);
+        assertEquals("https://example.com/a?id=1&utm_source=g", unwrapped.url);
+        assertEquals(1, unwrapped.depth);
+        assertEquals(3, unwrapped.wrapperParams.size());
+        for (UrlProcessor.QueryParam p : unwrapped.wrapperParams) {
+            assertFalse(p.keep);
+            assertEquals("Redirect (google.com)", p.removedBy);
+        }
+    }
+
+    @Test
+    public void testUnwrapRedirects_nestedAndDepthLimited() {
+        String inner = "https://example.com/?fbclid=x&id=2";
+        String url = "https://l.facebook.com/l.php?u=" + encode(
+            "https://www.google.com/url?q=" + encode(inner)) + "&h=AT";
+        UrlProcessor.Unwrapped unwrapped = UrlProcessor.unwrapRedirects(url);
+        assertEquals(inner, unwrapped.url);
+        assertEquals(2, unwrapped.depth);
+
+        String deep = inner;
+        for (int i = 0; i < 6; i++) {
+            deep = "https://www.google.com/url?q=" + encode(deep);
+        }
+        assertEquals(4, UrlProcessor.unwrapRedirects(deep).depth);
+        assertTrue(UrlProcessor.unwrapRedirects(deep).url.startsWith("https://www.google.com/url?q="));
+    }
+
+    @Test
+    public void testUnwrapRedirects_decodesOnce() {
+        UrlProcessor.Unwrapped unwrapped = UrlProcessor.unwrapRedirects(
+            "https://out.reddit.com/t3_x?url=https%3A%2F%2Fexample.com%2Fa%252Fb%3Fq%3D%E2%82%AC%zz");
+        assertEquals("https://example.com/a%2Fb?q=\u20ac%zz", unwrapped.url);
+    }
+
+    @Test
+    public void testUnwrapRedirects_notWrapper() {
+        assertNull(UrlProcessor.unwrapRedirects("https://example.com/url?q=https%3A%2F%2Fa.com"));
+        // Wrapper whose target is not a web URL is left alone
+        assertNull(UrlProcessor.unwrapRedirects("https://www.google.com/url?q=javascript%3Aalert(1)"));
+        assertNull(UrlProcessor.unwrapRedirects(null));
+    }
+
+    @Test
+    public void testCleanUrl_cleansEmbeddedTarget() {
+        String url = "https://l.facebook.com/l.php?u=" + encode("https://example.com/p?utm_source=fb&id=3") + "&h=AT";
+        assertEquals("https://example.com/p?id=3", UrlProcessor.cleanUrl(url, TestRules.tracking(), null));
+
+        List<UrlProcessor.QueryParam> params = UrlProcessor.parseParamsWithTracking(
+            UrlProcessor.unwrapRedirects(url).url, TestRules.tracking(), null, new HashSet<String>());
+        UrlProcessor.QueryParam utm = params.get(params.size() - 1);
+        assertEquals("utm_source", utm.getName());
+        assertNotNull(utm.removedBy);
+    }
+
+    @Test
+    public void testCleanShared_matchesDialogDefaults() {
+        List<Transform> rules = TestRules.tracking();
+        // Single URL in shared text: extracted and cleaned, surrounding text dropped as in the dialog
+        assertEquals("https://a.com/x?id=1",
+            UrlProcessor.cleanShared("Look: https://a.com/x?utm_source=n&id=1", true, rules));
+        // Several URLs: the whole text is kept and cleaned URL by URL
+        String text = "https://a.com/?fbclid=1 and https://b.com/?q=1&utm_medium=x";
+        assertEquals(ReferenceUrlProcessor.cleanText(text, rules, null),
+            UrlProcessor.cleanShared(text, true, rules));
+        // Nothing to clean
+        assertNull(UrlProcessor.cleanShared("no links here", true, rules));
+        assertNull(UrlProcessor.cleanShared(null, true, rules));
+    }
+
+    @Test
+    public void testCleanShared_multipleUrlsKeepProse() {
+        // A whole-text pass of the UTM rule would match on from "utm_source" up to the next
+        // '&', taking " and also https://b.com/y?id=1" with it
+        String text = "Read https://a.com/x?utm_source=s and also https://b.com/y?id=1&fbclid=2 thanks";
+        assertEquals("Read https://a.com/x and also https://b.com/y?id=1 thanks",
+            UrlProcessor.cleanShared(text, true, TestRules.tracking()));
+        assertEquals("Read https://a.com/x and also https://b.com/y?id=1 thanks",
+            UrlProcessor.cleanShared(text, false, TestRules.tracking()));
+    }
+
+    @Test
+    public void testCleanShared_rewritesEachUrlOnce() {
+        List<Transform> rules = new ArrayList<>();
+        rules.add(new Transform("Shorten YouTube URL",
+            "https?://(?:www\\.)?youtube\\.com/watch\\?v=([a-zA-Z0-9_-]+)(?:&t=([0-9]+)s?)?.*",
+            "https://youtu.be/$1?t=$2", true));
+        rules.add(new Transform("Clean YouTube timestamp", "(https://youtu\\.be/[a-zA-Z0-9_-]+)\\?t=$", "$1", true));
+        rules.add(new Transform("Use x.com", "https://twitter\\.com/", "https://x.com/", true));
+        rules.addAll(TestRules.tracking());
+        assertEquals("See https://x.com/a and https://youtu.be/abc",
+            UrlProcessor.cleanShared("See https://twitter.com/a and https://youtube.com/watch?v=abc&si=z", true, rules));
+
+        // Not idempotent: running it again on its own output would add a second "en/"
+        rules.add(new Transform("English pages", "example\\.com/", "example.com/en/", true));
+        assertEquals("see https://example.com/en/x?a=1 now",
+            UrlProcessor.cleanShared("see https://example.com/x?a=1 now", false, rules));
+        assertEquals("https://example.com/en/x?a=1 and https://example.com/en/y",
+            UrlProcessor.cleanShared("https://example.com/x?a=1&utm_source=s and https://example.com/y", true, rules));
+        // URL mode rebuilds from the original URL, so host and path rewrites do not apply
+        assertEquals("https://example.com/x?a=1", UrlProcessor.cleanUrl("https://example.com/x?a=1", rules, null));
+    }
+
+    @Test
+    public void testCleanShared_processTextNeedsLeadingUrl() {
+        List<Transform> rules = new ArrayList<>(TestRules.tracking());
+        rules.add(new Transform("Shout", "hello", "HELLO", true));
+        assertEquals("https://a.com/", UrlProcessor.cleanShared("https://a.com/?fbclid=1", false, rules));
+        // Selection with an embedded URL is text mode, accepted only if a transform matches
+        assertNull(UrlProcessor.cleanShared("see https://a.com/?id=1", false, TestRules.tracking()));
+        assertEquals("HELLO https://a.com/", UrlProcessor.cleanShared("hello https://a.com/?fbclid=1", false, rules));
+    }
+
+    private static String encode(String s) {
+        try {
+            return java.net.URLEncoder.encode(s, "UTF-8");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
 }